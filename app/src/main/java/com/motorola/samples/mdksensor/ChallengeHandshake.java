@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * A class to run the challenge handshake off the UI thread.
+ *
+ * The CHALLENGE payload is answered on a worker thread with a ChallengeSession,
+ * whose ciphers are initialised on the worker when the handshake is created,
+ * and the CHLGE_RESP command is queued to the RAW interface from there. The
+ * time from CHALLENGE received to its result received is measured.
+ */
+public class ChallengeHandshake {
+    private final Personality.Raw raw;
+    private final ChallengeSession session = new ChallengeSession(Constants.AES_ECB_KEY);
+    private final HandlerThread workerThread;
+    private final Handler worker;
+
+    /** Time the pending CHALLENGE arrived, 0 if none */
+    private long challengeNanos;
+
+    /**
+     * Handshake statistics
+     */
+    private long handshakeCount;
+    private long lastHandshakeNanos;
+    private long maxHandshakeNanos;
+
+    /**
+     * Constructor
+     */
+    public ChallengeHandshake(Personality.Raw raw) {
+        this.raw = raw;
+        workerThread = new HandlerThread("challengeHandshake");
+        workerThread.start();
+        worker = new Handler(workerThread.getLooper());
+
+        /** Look up the JCE provider before the mod asks */
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                session.warmUp();
+            }
+        });
+    }
+
+    /**
+     * Got CHALLENGE from mod device. The cipher text is copied, so the frame
+     * can be released once this returns.
+     */
+    public void onChallenge(final int rawInterface, ChallengeFrame frame) {
+        synchronized (this) {
+            challengeNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        final byte[] challenge = new byte[frame.getPayloadSize()];
+        frame.getChallenge(challenge, 0);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                byte[] cmd = session.answer(challenge, 0, challenge.length);
+                if (null == cmd) {
+                    Log.e(Constants.TAG, "AES challenge answer failed.");
+                    return;
+                }
+
+                /** Send challenge response back to mod device */
+                if (!raw.executeRaw(rawInterface, cmd)) {
+                    Log.e(Constants.TAG, "AES challenge answer not sent, RAW queue full.");
+                }
+            }
+        });
+    }
+
+    /** Got the CHLGE_RESP result from mod device, returns whether passed */
+    public boolean onResult(ChallengeRespFrame frame) {
+        long elapsed = -1;
+        synchronized (this) {
+            if (challengeNanos != 0) {
+                elapsed = SystemClock.elapsedRealtimeNanos() - challengeNanos;
+                challengeNanos = 0;
+                handshakeCount++;
+                lastHandshakeNanos = elapsed;
+                if (elapsed > maxHandshakeNanos) {
+                    maxHandshakeNanos = elapsed;
+                }
+            }
+        }
+
+        if (elapsed >= 0) {
+            Log.i(Constants.TAG, "Challenge handshake: " + elapsed / 1000 + "us, answer: "
+                    + session.getAverageAnswerNanos() / 1000 + "us");
+        }
+        return frame.isPassed();
+    }
+
+    public synchronized long getHandshakeCount() {
+        return handshakeCount;
+    }
+
+    /** Time from CHALLENGE to its result of the last handshake */
+    public synchronized long getLastHandshakeNanos() {
+        return lastHandshakeNanos;
+    }
+
+    public synchronized long getMaxHandshakeNanos() {
+        return maxHandshakeNanos;
+    }
+
+    public ChallengeSession getSession() {
+        return session;
+    }
+
+    /** Stop the worker, pending answers are dropped */
+    public void release() {
+        workerThread.quitSafely();
+    }
+}
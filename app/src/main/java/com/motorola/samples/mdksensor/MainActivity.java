@@ -39,6 +39,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -55,17 +56,8 @@ import android.widget.Toolbar;
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModManager;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
-
-import lecho.lib.hellocharts.model.Axis;
-import lecho.lib.hellocharts.model.Line;
-import lecho.lib.hellocharts.model.LineChartData;
-import lecho.lib.hellocharts.model.PointValue;
-import lecho.lib.hellocharts.model.Viewport;
-import lecho.lib.hellocharts.view.LineChartView;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * A class to represent main activity.
@@ -79,15 +71,92 @@ public class MainActivity extends Activity implements View.OnClickListener {
      * Instance of MDK Personality Card interface
      */
     private Personality personality;
+    private ChallengeHandshake handshake;
+
+    /** Value of the adaptive entry in sensor_interval_values */
+    private static final int ADAPTIVE_INTERVAL = 0;
+
+    /** Adapts the interval to the UI lag when the adaptive entry is selected */
+    private final SamplingController samplingController = new SamplingController(
+            new SamplingController.Callback() {
+                @Override
+                public void onIntervalChanged(int intervalMs) {
+                    Log.i(Constants.TAG, "Adaptive interval " + intervalMs
+                            + " ms, decision: " + samplingController.getLastDecision()
+                            + " lag: " + samplingController.getAverageLagMs()
+                            + "/" + samplingController.getMaxLagMs() + " ms");
+                    sendSensorOn(intervalMs);
+                }
+            });
+
+    /** Evaluate the adaptive interval once a window */
+    private final Runnable samplingEvaluator = new Runnable() {
+        @Override
+        public void run() {
+            samplingController.setOverflowTotal(getOverflowTotal());
+            samplingController.evaluate();
+            if (samplingController.isRunning()) {
+                handler.postDelayed(this, SamplingController.DEFAULT_WINDOW_MS);
+            }
+        }
+    };
+
+    /** max_latency of the attached firmware, from INFO */
+    private int modMaxLatency;
 
     /**
      * Line chart to draw temperature values
      */
-    private static int count;
-    private static float maxTop = 80f;
-    private static float minTop = 70f;
-    private LineChartView chart;
-    private Viewport viewPort;
+    private SampleChartView chart;
+
+    /** Sample history, the chart shows all of it decimated. Lives as long as the activity */
+    private TimeSeriesBuffer history;
+    /** All samples, on disk, appended by sampleProcessor */
+    private SessionLog sessionLog;
+    /** Rollups of all samples at 1 s to 10 min, next to sessionLog */
+    private RollupPyramid rollups;
+    /** Wall clock of sessionLog and rollups less the host clock of the readings */
+    private long logTimeBaseUs;
+
+    /** Views of the received frames, reused for every frame */
+    private final InfoFrame infoFrame = new InfoFrame();
+    private final ChallengeFrame challengeFrame = new ChallengeFrame();
+    private final ChallengeRespFrame challengeRespFrame = new ChallengeRespFrame();
+
+    /** Whether the attached firmware can send DATA_BATCH or DATA_PACKED, from INFO version */
+    private boolean dataBatchSupported;
+    private boolean dataPackedSupported;
+
+    /** Decodes the readings off the UI thread, in front of handler */
+    private SampleProcessor sampleProcessor;
+
+    /**
+     * Snapshot waiting for the next frame, and since when. The chart is
+     * updated once a frame at most, with all readings of the snapshot.
+     */
+    private SampleProcessor.Snapshot pendingSnapshot;
+    private long pendingSinceNanos;
+    private boolean framePosted;
+    private FrameMetrics frameMetrics;
+    private final Choreographer.FrameCallback chartFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            framePosted = false;
+            SampleProcessor.Snapshot snapshot = pendingSnapshot;
+            pendingSnapshot = null;
+            if (null == snapshot) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            int count = snapshot.count;
+            onSamples(snapshot);
+            if (null != sampleProcessor) {
+                sampleProcessor.recycle(snapshot);
+            }
+            frameMetrics.onFrame(pendingSinceNanos, frameTimeNanos, start, System.nanoTime(), count);
+        }
+    };
 
     /** Handler for events from mod device */
     private Handler handler = new Handler() {
@@ -99,10 +168,22 @@ public class MainActivity extends Activity implements View.OnClickListener {
                     onModDevice(device);
                     break;
                 case Personality.MSG_RAW_DATA:
-                    /** Mod raw data */
-                    byte[] buff = (byte[]) msg.obj;
-                    int length = msg.arg1;
-                    onRawData(buff, length);
+                    /** Mod raw data, give the buffer back to pool once parsed */
+                    FramePool.Frame frame = (FramePool.Frame) msg.obj;
+                    try {
+                        onRawData(frame.data, msg.arg1, msg.arg2);
+                    } finally {
+                        frame.release();
+                    }
+                    break;
+                case SampleProcessor.MSG_SAMPLES:
+                    /** Readings decoded by the processor, drawn and handed back on next frame */
+                    pendingSnapshot = (SampleProcessor.Snapshot) msg.obj;
+                    pendingSinceNanos = System.nanoTime();
+                    if (!framePosted) {
+                        framePosted = true;
+                        Choreographer.getInstance().postFrameCallback(chartFrame);
+                    }
                     break;
                 case Personality.MSG_RAW_IO_READY:
                     /** Mod RAW I/O ready to use */
@@ -126,6 +207,11 @@ public class MainActivity extends Activity implements View.OnClickListener {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        frameMetrics = new FrameMetrics(refreshRate > 0 ? (long) (1000000000L / refreshRate)
+                : FrameMetrics.DEFAULT_REFRESH_PERIOD_NANOS);
+        openSessionLog();
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setActionBar(toolbar);
 
@@ -188,16 +274,18 @@ public class MainActivity extends Activity implements View.OnClickListener {
                     if (isChecked) {
                         String[] values = getResources().getStringArray(R.array.sensor_interval_values);
                         int interval = Integer.valueOf(values[spinner.getSelectedItemPosition()]);
-                        byte intervalLow = (byte) (interval & 0x00FF);
-                        byte intervalHigh = (byte) (interval >> 8);
-                        byte[] cmd = {Constants.TEMP_RAW_COMMAND_ON, Constants.SENSOR_COMMAND_SIZE,
-                                intervalLow, intervalHigh};
-                        personality.getRaw().executeRaw(cmd);
+                        if (interval == ADAPTIVE_INTERVAL) {
+                            interval = samplingController.start(modMaxLatency, getOverflowTotal());
+                            handler.removeCallbacks(samplingEvaluator);
+                            handler.postDelayed(samplingEvaluator, SamplingController.DEFAULT_WINDOW_MS);
+                        }
+                        sendSensorOn(interval);
 
                         Toast.makeText(MainActivity.this, getString(R.string.sensor_start),
                                 Toast.LENGTH_SHORT).show();
                     } else {
-                        personality.getRaw().executeRaw(Constants.RAW_CMD_STOP);
+                        stopAdaptiveSampling();
+                        sendRawCommand(Constants.RAW_CMD_STOP);
 
                         Toast.makeText(MainActivity.this, getString(R.string.sensor_stop),
                                 Toast.LENGTH_SHORT).show();
@@ -211,31 +299,10 @@ public class MainActivity extends Activity implements View.OnClickListener {
         }
 
         /** Prepare chart graph */
-        chart = (LineChartView) findViewById(R.id.air_quality_chart);
+        history = new TimeSeriesBuffer(Constants.HISTORY_CAPACITY);
+        chart = (SampleChartView) findViewById(R.id.air_quality_chart);
         if (null != chart) {
-            List<PointValue> values = new ArrayList<>();
-            Line line = new Line(values).setColor(getColor(R.color.colorPrimary))
-                    .setCubic(false)
-                    .setHasLines(true)
-                    .setHasLabels(true)
-                    .setHasLabelsOnlyForSelected(true)
-                    .setFilled(false);
-
-            List<Line> lines = new ArrayList<>();
-            lines.add(line);
-            LineChartData data = new LineChartData(lines);
-            data.setAxisYLeft(new Axis().setAutoGenerated(true)
-                    .setName(getString(R.string.y_axis_name))
-                    .setHasLines(true)
-                    .setHasTiltedLabels(false));
-            data.setAxisXBottom(new Axis()
-                    .setName(getString(R.string.x_axis_name))
-                    .setAutoGenerated(true)
-                    .setHasTiltedLabels(false)
-                    .setHasLines(true)
-                    .setHasSeparationLine(false)
-                    .setInside(false));
-            chart.setLineChartData(data);
+            chart.setHistory(history);
         }
 
         TextView textView = (TextView)findViewById(R.id.mod_external_dev_portal);
@@ -258,12 +325,44 @@ public class MainActivity extends Activity implements View.OnClickListener {
     public void onDestroy() {
         super.onDestroy();
 
+        Choreographer.getInstance().removeFrameCallback(chartFrame);
+        framePosted = false;
         releasePersonality();
+        closeSessionLog();
+
+        /** Release the history arrays with the activity */
+        if (null != chart) {
+            chart.setHistory(null);
+        }
+        history = null;
     }
 
     @Override
     public void onPause() {
         super.onPause();
+
+        Log.i(Constants.TAG, "Chart frames: " + frameMetrics.getFrameCount()
+                + ", samples/frame " + frameMetrics.getAverageSamplesPerFrame()
+                + ", dropped " + frameMetrics.getDroppedFrames()
+                + ", slow " + frameMetrics.getSlowFrames()
+                + ", draw " + frameMetrics.getAverageWorkNanos() / 1000
+                + "/" + frameMetrics.getMaxWorkNanos() / 1000 + " us");
+
+        /** Keep the samples if the app is killed in background */
+        if (null != sessionLog) {
+            try {
+                sessionLog.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (null != rollups) {
+            try {
+                rollups.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
@@ -286,11 +385,71 @@ public class MainActivity extends Activity implements View.OnClickListener {
         super.onConfigurationChanged(newConfig);
     }
 
+    /** Write RAW command to turn on the sensor with the best data format the firmware has */
+    private void sendSensorOn(int interval) {
+        if (null == personality) {
+            return;
+        }
+
+        /** The mod takes 0 as no interval, only SamplingController picks the adaptive one */
+        if (interval <= ADAPTIVE_INTERVAL || interval > 0xFFFF) {
+            Log.e(Constants.TAG, "Invalid sensor interval " + interval);
+            return;
+        }
+
+        byte[] cmd;
+        if (dataPackedSupported) {
+            /** Batched and compressed readings, the fewest bytes on RAW */
+            cmd = new byte[FrameEncoder.ON_FLAGS_LENGTH];
+            FrameEncoder.encodeOn(cmd, 0, interval, Constants.SENSOR_FLAG_DATA_BATCH
+                    | Constants.SENSOR_FLAG_DATA_PACKED);
+        } else if (dataBatchSupported) {
+            /** Let the firmware batch readings up to its max_latency */
+            cmd = new byte[FrameEncoder.ON_FLAGS_LENGTH];
+            FrameEncoder.encodeOn(cmd, 0, interval, Constants.SENSOR_FLAG_DATA_BATCH);
+        } else {
+            cmd = new byte[FrameEncoder.ON_LENGTH];
+            FrameEncoder.encodeOn(cmd, 0, interval);
+        }
+        sendRawCommand(cmd);
+    }
+
+    /**
+     * Queue a RAW command from the UI thread without waiting, telling the
+     * user when it or an older command is lost to a full send queue
+     */
+    private void sendRawCommand(byte[] cmd) {
+        int result = personality.getRaw().offerRaw(0, cmd);
+        if (result == SendQueue.RESULT_REJECTED || result == SendQueue.RESULT_DROPPED_OLDEST) {
+            Log.e(Constants.TAG, "RAW command " + cmd[Constants.CMD_OFFSET]
+                    + (result == SendQueue.RESULT_REJECTED
+                    ? " rejected" : " queued, an older one dropped")
+                    + ", " + personality.getRaw().getSendQueueDroppedCount() + " dropped in all");
+            Toast.makeText(this, getString(R.string.sensor_command_lost), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void stopAdaptiveSampling() {
+        samplingController.stop();
+        handler.removeCallbacks(samplingEvaluator);
+    }
+
+    /** Receive buffers allocated beyond the pool, the UI thread is behind the reader */
+    private long getOverflowTotal() {
+        if (personality instanceof RawPersonality) {
+            return ((RawPersonality) personality).getPoolMissCount();
+        }
+        return 0;
+    }
+
     /** Initial MDK Personality interface */
     private void initPersonality() {
         if (null == personality) {
             personality = new RawPersonality(this, Constants.VID_MDK, Constants.PID_TEMPERATURE);
-            personality.registerListener(handler);
+            sampleProcessor = new SampleProcessor(handler, samplingController);
+            sampleProcessor.setSessionLog(sessionLog, rollups, logTimeBaseUs);
+            personality.registerListener(sampleProcessor.getHandler());
+            handshake = new ChallengeHandshake(personality.getRaw());
         }
     }
 
@@ -305,11 +464,22 @@ public class MainActivity extends Activity implements View.OnClickListener {
         preference.edit().putBoolean("recordingRaw", false).commit();
 
         /** Clean up MDK Personality interface */
+        stopAdaptiveSampling();
         if (null != personality) {
-            personality.getRaw().executeRaw(Constants.RAW_CMD_STOP);
+            sendRawCommand(Constants.RAW_CMD_STOP);
             personality.onDestroy();
             personality = null;
         }
+        if (null != handshake) {
+            handshake.release();
+            handshake = null;
+        }
+        if (null != sampleProcessor) {
+            /** Pending frames are dropped, the log and rollups can be closed */
+            sampleProcessor.setSessionLog(null, null, 0);
+            sampleProcessor.release();
+            sampleProcessor = null;
+        }
     }
 
     @Override
@@ -364,11 +534,11 @@ public class MainActivity extends Activity implements View.OnClickListener {
                 break;
             case R.id.status_clear_history:
                 /** The Clear History button is clicked */
-                count = 0;
-                Line line = chart.getLineChartData().getLines().get(0);
-                if (null != line) {
-                    line.getValues().clear();
-                    chart.animationDataUpdate(1);
+                if (null != history) {
+                    history.clear();
+                }
+                if (null != chart) {
+                    chart.showAll();
                 }
                 break;
             default:
@@ -379,6 +549,11 @@ public class MainActivity extends Activity implements View.OnClickListener {
 
     /** Mod device attach/detach */
     public void onModDevice(ModDevice device) {
+        /** Capability of the attached firmware is known from its INFO again */
+        dataBatchSupported = false;
+        dataPackedSupported = false;
+        modMaxLatency = 0;
+
         /** Moto Mods Status */
         /**
          * Get mod device's Product String, which should correspond to
@@ -533,21 +708,18 @@ public class MainActivity extends Activity implements View.OnClickListener {
         }
     }
 
-    /** Got data from mod device RAW I/O */
-    public void onRawData(byte[] buffer, int length) {
-        /** Parse raw data to header and payload */
-        int cmd = buffer[Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
-        int payloadLength = buffer[Constants.SIZE_OFFSET];
-
+    /**
+     * Got data from mod device RAW I/O. RawPersonality has reassembled the
+     * stream, so the buffer holds exactly one frame.
+     */
+    public void onRawData(byte[] buffer, int length, int rawInterface) {
         /** Checking the size of buffer we got to ensure sufficient bytes */
-        if (payloadLength + Constants.CMD_LENGTH + Constants.SIZE_LENGTH != length) {
+        if (length < Constants.PAYLOAD_OFFSET) {
             return;
         }
 
-        /** Parser payload data */
-        byte[] payload = new byte[payloadLength];
-        System.arraycopy(buffer, Constants.PAYLOAD_OFFSET, payload, 0, payloadLength);
-        parseResponse(cmd, payloadLength, payload);
+        /** Parse the frame in place, the flyweight views validate the size */
+        parseResponse(RawFrame.getCommand(buffer, 0), buffer, length, rawInterface);
     }
 
     /** RAW I/O of attached mod device is ready to use */
@@ -556,12 +728,50 @@ public class MainActivity extends Activity implements View.OnClickListener {
          *  Personality has the RAW interface, query the information data via RAW command, the data
          *  will send back from MDK with flag TEMP_RAW_COMMAND_INFO and TEMP_RAW_COMMAND_CHALLENGE.
          */
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                personality.getRaw().executeRaw(Constants.RAW_CMD_INFO);
-            }
-        }, 500);
+        requestInfo(Constants.INFO_REQUEST_RETRIES);
+    }
+
+    /**
+     * Query the information data, and query again if the mod is not ready to
+     * answer yet. The response itself is handled by parseResponse().
+     */
+    private void requestInfo(final int retries) {
+        if (null == personality) {
+            return;
+        }
+
+        personality.getRaw().requestRaw(Constants.RAW_CMD_INFO, Constants.INFO_REQUEST_TIMEOUT_MS,
+                new RawRequest.Callback() {
+                    @Override
+                    public void onResponse(RawRequest request, byte[] frame) {
+                        Log.i(Constants.TAG, "INFO round trip: "
+                                + request.getRoundTripNanos() / 1000 + "us");
+                    }
+
+                    @Override
+                    public void onTimeout(RawRequest request) {
+                        if (retries > 0) {
+                            requestInfo(retries - 1);
+                        } else {
+                            Log.e(Constants.TAG, "No INFO response from mod device.");
+                        }
+                    }
+
+                    @Override
+                    public void onError(RawRequest request) {
+                        /** Not queued, e.g. RAW I/O not ready yet, try again a bit later */
+                        if (retries > 0) {
+                            handler.postDelayed(new Runnable() {
+                                @Override
+                                public void run() {
+                                    requestInfo(retries - 1);
+                                }
+                            }, Constants.INFO_REQUEST_TIMEOUT_MS);
+                        } else {
+                            Log.e(Constants.TAG, "Failed to send INFO to mod device.");
+                        }
+                    }
+                }, handler);
     }
 
     /** Handle the IO issue when write / read */
@@ -595,128 +805,45 @@ public class MainActivity extends Activity implements View.OnClickListener {
     }
 
     /** Parse the data from mod device */
-    private void parseResponse(int cmd, int size, byte[] payload) {
+    private void parseResponse(int cmd, byte[] buffer, int length, int rawInterface) {
         if (cmd == Constants.TEMP_RAW_COMMAND_INFO) {
             /** Got information data from personality board */
 
             /**
              * Checking the size of payload before parse it to ensure sufficient bytes.
-             * Payload array shall at least include the command head data, and exactly
+             * Payload shall at least include the command head data, and exactly
              * same as expected size.
              */
-            if (payload == null
-                    || payload.length != size
-                    || payload.length < Constants.CMD_INFO_HEAD_SIZE) {
+            if (!infoFrame.wrap(buffer, 0, length)) {
                 return;
             }
 
-            int version = payload[Constants.CMD_INFO_VERSION_OFFSET];
-            int reserved = payload[Constants.CMD_INFO_RESERVED_OFFSET];
-            int latencyLow = payload[Constants.CMD_INFO_LATENCYLOW_OFFSET] & 0xFF;
-            int latencyHigh = payload[Constants.CMD_INFO_LATENCYHIGH_OFFSET] & 0xFF;
-            int max_latency = latencyHigh << 8 | latencyLow;
-
-            StringBuilder name = new StringBuilder();
-            for (int i = Constants.CMD_INFO_NAME_OFFSET; i < size - Constants.CMD_INFO_HEAD_SIZE; i++) {
-                if (payload[i] != 0) {
-                    name.append((char) payload[i]);
-                } else {
-                    break;
-                }
-            }
             Log.i(Constants.TAG, "command: " + cmd
-                    + " size: " + size
-                    + " version: " + version
-                    + " reserved: " + reserved
-                    + " name: " + name.toString()
-                    + " latency: " + max_latency);
-        } else if (cmd == Constants.TEMP_RAW_COMMAND_DATA) {
-            /** Got sensor data from personality board */
-
-            /** Checking the size of payload before parse it to ensure sufficient bytes. */
-            if (payload == null
-                    || payload.length != size
-                    || payload.length != Constants.CMD_DATA_SIZE) {
-                return;
-            }
-
-            int dataLow = payload[Constants.CMD_DATA_LOWDATA_OFFSET] & 0xFF;
-            int dataHigh = payload[Constants.CMD_DATA_HIGHDATA_OFFSET] & 0xFF;
-
-            /** The raw temperature sensor data */
-            int data = dataHigh << 8 | dataLow;
-
-            /** The temperature */
-            double temp = ((0 - 0.03) * data) + 128;
-
-            /** Draw temperature value to line chart */
-            count++;
-            Line line = chart.getLineChartData().getLines().get(0);
-            if (null != line) {
-                if (count > Constants.MAX_SAMPLING_SUM
-                        && line.getValues() != null
-                        && line.getValues().size() > 0) {
-                    line.getValues().remove(0);
-                }
-
-                line.getValues().add(new PointValue(count, (float) temp));
-                chart.animationDataUpdate(1);
-
-                if (temp * 1.01f > maxTop) {
-                    maxTop = (float) temp * 1.01f;
-                }
-                if (temp * 0.99f < minTop) {
-                    minTop = (float) temp * 0.99f;
-                }
-                viewPort = chart.getMaximumViewport();
-                viewPort.top = maxTop; //max value
-                viewPort.bottom = minTop;  //min value
-                chart.setMaximumViewport(viewPort);
-                chart.setCurrentViewport(viewPort);
-            }
+                    + " size: " + infoFrame.getPayloadSize()
+                    + " version: " + infoFrame.getVersion()
+                    + " reserved: " + infoFrame.getReserved()
+                    + " name: " + infoFrame.getName()
+                    + " latency: " + infoFrame.getMaxLatency());
+            dataBatchSupported = infoFrame.getVersion() >= Constants.DATA_BATCH_VERSION;
+            dataPackedSupported = infoFrame.getVersion() >= Constants.DATA_PACKED_VERSION;
+            modMaxLatency = infoFrame.getMaxLatency();
         } else if (cmd == Constants.TEMP_RAW_COMMAND_CHALLENGE) {
             /** Got CHALLENGE command from personality board */
 
             /** Checking the size of payload before parse it to ensure sufficient bytes. */
-            if (payload == null
-                    || payload.length != size
-                    || payload.length != Constants.CMD_CHALLENGE_SIZE) {
+            if (!challengeFrame.wrap(buffer, 0, length)) {
                 return;
             }
 
-            byte[] resp = Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, payload);
-            if (resp != null) {
-                /** Got decoded CHALLENGE payload */
-                ByteBuffer buffer = ByteBuffer.wrap(resp);
-                buffer.order(ByteOrder.LITTLE_ENDIAN); // lsb -> msb
-                long littleLong = buffer.getLong();
-                littleLong += Constants.CHALLENGE_ADDATION;
-
-                ByteBuffer buf = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).order(ByteOrder.LITTLE_ENDIAN);
-                buf.putLong(littleLong);
-                byte[] respData = buf.array();
-
-                /** Send challenge response back to mod device */
-                byte[] aes = Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, respData);
-                if (aes != null) {
-                    byte[] challenge = new byte[aes.length + 2];
-                    challenge[0] = Constants.TEMP_RAW_COMMAND_CHLGE_RESP;
-                    challenge[1] = (byte) aes.length;
-                    System.arraycopy(aes, 0, challenge, 2, aes.length);
-                    personality.getRaw().executeRaw(challenge);
-                } else {
-                    Log.e(Constants.TAG, "AES encrypt failed.");
-                }
-            } else {
-                Log.e(Constants.TAG, "AES decrypt failed.");
+            /** Answer on the worker, the UI thread does not wait for crypto */
+            if (null != handshake) {
+                handshake.onChallenge(rawInterface, challengeFrame);
             }
         } else if (cmd == Constants.TEMP_RAW_COMMAND_CHLGE_RESP) {
             /** Get challenge command response */
 
             /** Checking the size of payload before parse it to ensure sufficient bytes. */
-            if (payload == null
-                    || payload.length != size
-                    || payload.length != Constants.CMD_CHLGE_RESP_SIZE) {
+            if (!challengeRespFrame.wrap(buffer, 0, length)) {
                 return;
             }
 
@@ -724,7 +851,8 @@ public class MainActivity extends Activity implements View.OnClickListener {
              * Check first byte, response from MDK Sensor Card shall be 0
              * if challenge passed
              */
-            boolean challengePassed = payload[Constants.CMD_CHLGE_RESP_OFFSET] == 0;
+            boolean challengePassed = null != handshake
+                    ? handshake.onResult(challengeRespFrame) : challengeRespFrame.isPassed();
 
             Switch switcher = (Switch) findViewById(R.id.sensor_switch);
             if (switcher != null) {
@@ -742,4 +870,160 @@ public class MainActivity extends Activity implements View.OnClickListener {
             }
         }
     }
+
+    /** Draw the readings of a snapshot, updating the chart once */
+    private void onSamples(SampleProcessor.Snapshot snapshot) {
+        if (snapshot.droppedCount > 0) {
+            Log.i(Constants.TAG, "Chart skipped " + snapshot.droppedCount + " samples");
+        }
+        if (null == history) {
+            /** A snapshot posted before onDestroy */
+            return;
+        }
+
+        for (int i = 0; i < snapshot.count; i++) {
+            double temp = snapshot.getTemperature(i);
+            history.append(snapshot.getTimestampUs(i), (float) temp);
+        }
+        showStatistics(snapshot.statistics);
+
+        /** Drawn in this frame, it is a frame callback */
+        if (null != chart) {
+            chart.invalidate();
+        }
+    }
+
+    /**
+     * Open the log and rollups of the samples recorded before, recovering them
+     * after a crash, and read the last samples back for the history. It is all
+     * file work, done off the UI thread; onSessionLogOpened() takes the result.
+     */
+    private void openSessionLog() {
+        final File directory = new File(getFilesDir(), Constants.SESSION_LOG_DIR);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                /** One time base for the read back and all the samples after */
+                final long timeBaseUs = SampleProcessor.getLogTimeBaseUs();
+                SessionLog log = null;
+                TimeSeriesBuffer readBack = null;
+                try {
+                    log = new SessionLog(directory, SessionLog.DEFAULT_SEGMENT_SIZE);
+                    log.setMaxSegments(SessionLog.DEFAULT_MAX_SEGMENTS);
+                    Log.i(Constants.TAG, "Session log: " + log.getSampleCount() + " samples, "
+                            + log.getSegmentCount() + " segments, "
+                            + log.getTruncatedBytes() + " bytes truncated, "
+                            + log.getDeletedSegments() + " segments deleted");
+                    readBack = log.readBack(Constants.SESSION_LOG_READ_BACK_US, timeBaseUs,
+                            Constants.HISTORY_CAPACITY);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    log = null;
+                }
+
+                RollupPyramid pyramid = null;
+                try {
+                    pyramid = new RollupPyramid(directory,
+                            RollupPyramid.DEFAULT_BUCKETS_US, RollupPyramid.DEFAULT_CAPACITY);
+                    Log.i(Constants.TAG, "Rollups: " + pyramid.getBucketCount(0) + " buckets of 1 s, "
+                            + pyramid.getDroppedRecords() + " records dropped");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+
+                final SessionLog openedLog = log;
+                final RollupPyramid openedRollups = pyramid;
+                final TimeSeriesBuffer openedHistory = readBack;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onSessionLogOpened(openedLog, openedRollups, openedHistory, timeBaseUs);
+                    }
+                });
+            }
+        }, "sessionLog").start();
+    }
+
+    /** Start logging to the opened log, with the samples read back at the start of the history */
+    private void onSessionLogOpened(SessionLog log, RollupPyramid pyramid, TimeSeriesBuffer readBack,
+                                    long timeBaseUs) {
+        sessionLog = log;
+        rollups = pyramid;
+        logTimeBaseUs = timeBaseUs;
+        if (isDestroyed()) {
+            closeSessionLog();
+            return;
+        }
+        if (null != sampleProcessor) {
+            sampleProcessor.setSessionLog(sessionLog, rollups, logTimeBaseUs);
+        }
+        if (null != chart) {
+            chart.setRollups(rollups, logTimeBaseUs);
+        }
+
+        if (null == readBack || null == history) {
+            return;
+        }
+        if (history.size() > 0) {
+            /** Samples came before the log was open, they follow the ones read back */
+            TimeSeriesBuffer merged = new TimeSeriesBuffer(Constants.HISTORY_CAPACITY);
+            appendAll(readBack, merged);
+            appendAll(history, merged);
+            history = merged;
+        } else {
+            appendAll(readBack, history);
+        }
+        if (null != chart) {
+            chart.setHistory(history);
+        }
+    }
+
+    private static void appendAll(TimeSeriesBuffer from, final TimeSeriesBuffer to) {
+        from.forEach(from.getFirstSequence(), from.getEndSequence(), new TimeSeriesBuffer.Visitor() {
+            @Override
+            public void onSample(long sequence, long timestampUs, float value) {
+                to.append(timestampUs, value);
+            }
+        });
+    }
+
+    private void closeSessionLog() {
+        if (null != chart) {
+            chart.setRollups(null, 0);
+        }
+        if (null != rollups) {
+            try {
+                rollups.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            rollups = null;
+        }
+
+        if (null == sessionLog) {
+            return;
+        }
+        try {
+            sessionLog.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        sessionLog = null;
+    }
+
+    /**
+     * Show the statistics of the recent readings under the chart, labeled with
+     * the window in effect: STATISTICS_WINDOW readings or STATISTICS_WINDOW_US,
+     * whichever is shorter at the sample rate
+     */
+    private void showStatistics(RollingStatistics.Summary statistics) {
+        TextView tvStatistics = (TextView) findViewById(R.id.sensor_statistics);
+        if (null == tvStatistics || statistics.count == 0) {
+            return;
+        }
+        tvStatistics.setText(String.format(getString(R.string.sensor_statistics_format),
+                statistics.min, statistics.max, statistics.mean, statistics.stdDev,
+                statistics.values[0], statistics.values[1], statistics.count,
+                (statistics.lastTimestampUs - statistics.firstTimestampUs) / 1000000.0));
+    }
 }
@@ -130,6 +130,17 @@ public class Personality {
 
     public interface Raw {
         public boolean executeRaw(byte[] cmd);
+        public boolean executeRaw(int rawInterface, byte[] cmd);
+        public int offerRaw(int rawInterface, byte[] cmd);
+        public RawRequest requestRaw(byte[] cmd, long timeoutMs,
+                                     RawRequest.Callback callback, Handler callbackHandler);
+        public RawRequest requestRaw(int rawInterface, byte[] cmd, long timeoutMs,
+                                     RawRequest.Callback callback, Handler callbackHandler);
+        public int getRawInterfaceCount();
+        public int getSendQueueDepth();
+        public long getSendQueueDroppedCount();
+        public long getSendQueueAverageWaitNanos();
+        public long getSendQueueMaxWaitNanos();
         public void checkRawInterface();
     }
     // Personality RAW Protocol interface - End
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.IOException;
+
+/**
+ * A class to represent RAW transport over a ParcelFileDescriptor, either the
+ * RAW interface opened by ModManager or one end of a Unix socket pair.
+ */
+public class PfdTransport extends FdTransport {
+    private final ParcelFileDescriptor pfd;
+
+    /**
+     * Constructor
+     */
+    public PfdTransport(ParcelFileDescriptor pfd) {
+        super(pfd.getFileDescriptor(), pfd);
+        this.pfd = pfd;
+    }
+
+    public ParcelFileDescriptor getParcelFileDescriptor() {
+        return pfd;
+    }
+
+    /**
+     * Create the two connected ends of a Unix socket pair. For further details,
+     * refer to http://man7.org/linux/man-pages/man2/socketpair.2.html
+     */
+    public static PfdTransport[] createSocketPair() throws IOException {
+        ParcelFileDescriptor[] pair = ParcelFileDescriptor.createSocketPair();
+        return new PfdTransport[]{new PfdTransport(pair[0]), new PfdTransport(pair[1])};
+    }
+}
@@ -26,6 +26,7 @@
  * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+
 package com.motorola.samples.mdksensor;
 
 import android.content.Context;
@@ -36,11 +37,13 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
 import android.system.StructPollfd;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.motorola.mod.ModDevice;
 import com.motorola.mod.ModInterfaceDelegation;
@@ -51,13 +54,21 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A class to represent the Moto Mod RAW protocol interface.
+ *
+ * All RAW interfaces of the attached mod are opened. They share one sending
+ * thread, and one receiving thread which polls on all of them plus the exit
+ * pipe, so that a multi-function mod does not cost a thread pair per interface.
  */
 public class RawPersonality extends Personality implements Personality.Raw {
     private static final int SEND_RAW_CMD = 1;
+    private static final int REQUEST_TIMEOUT = 2;
     private Handler handler;
 
     /**
@@ -65,14 +76,18 @@ public class RawPersonality extends Personality implements Personality.Raw {
      */
     private static final int POLL_TYPE_READ_DATA = 1;
     private static final int POLL_TYPE_EXIT = 2;
+    private static final int POLL_TYPE_NONE = 3;
 
     /**
      * Output stream end indicator
      */
     private static final int EXIT_BYTE = 0xFF;
 
-    /** File descriptor for RAW I/O */
-    private ParcelFileDescriptor parcelFD;
+    /** Invalid file descriptor, Os.poll() ignores it for a hung up interface */
+    private static final FileDescriptor CLOSED_FD = new FileDescriptor();
+
+    /** Opened RAW interfaces, indexed same as the delegation list from ModManager */
+    private RawChannel[] channels;
 
     /**
      * File descriptor pipes for RAW I/O. For further details,
@@ -83,7 +98,47 @@ public class RawPersonality extends Personality implements Personality.Raw {
     /** Work thread for read / write data via RAW I/O */
     private Thread receiveThread = null;
     private HandlerThread sendingThread = null;
-    private FileOutputStream outputStream;
+
+    /**
+     * Commands are queued per interface and written by the sending thread. The
+     * sending thread drains them and writes up to maxBatchSize commands of an
+     * interface in one gathering write. RAW of stock MDK firmware keeps the
+     * message boundaries, one command per write, so coalescing is off unless
+     * the firmware parses concatenated commands and opts in by
+     * setSendBatching(), e.g. with COALESCED_MAX_BATCH_SIZE.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1;
+    public static final int COALESCED_MAX_BATCH_SIZE = 16;
+    private final Object sendLock = new Object();
+    private boolean flushScheduled;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxBatchLatencyMs = 0;
+    private ByteBuffer[] batch = new ByteBuffer[DEFAULT_MAX_BATCH_SIZE];
+
+    /**
+     * The pending commands of each interface are bounded, so a stalled mod does
+     * not pile up commands to be sent late. By default the oldest command is
+     * dropped to make room for the new one.
+     */
+    public static final int DEFAULT_SEND_QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_SEND_BLOCK_TIMEOUT_MS = 1000;
+    private int sendQueueCapacity = DEFAULT_SEND_QUEUE_CAPACITY;
+    private SendQueue.OverflowPolicy sendQueuePolicy = SendQueue.OverflowPolicy.DROP_OLDEST;
+    private long sendBlockTimeoutMs = DEFAULT_SEND_BLOCK_TIMEOUT_MS;
+
+    /**
+     * Send batch statistics, batchSizeCounts[n] is the count of writes carrying
+     * n commands.
+     */
+    private long batchCount;
+    private long batchedCommandCount;
+    private long[] batchSizeCounts = new long[DEFAULT_MAX_BATCH_SIZE + 1];
+
+    /** In-flight requests waiting for their responses */
+    private final RequestTracker requestTracker = new RequestTracker();
+
+    /** Listeners only interested in frames from one RAW interface */
+    private final SparseArray<List<Handler>> interfaceListeners = new SparseArray<>();
 
     /**
      * The expected mod device PID / VID
@@ -109,11 +164,25 @@ public class RawPersonality extends Personality implements Personality.Raw {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        interfaceListeners.clear();
 
         /** Don't forget close the I/O and work threads */
         closeRawDeviceifAvailable();
     }
 
+    /**
+     * Register a listener for the frames from one RAW interface only, the
+     * index is same as the delegation list from ModManager.
+     */
+    public void registerListener(Handler listener, int rawInterface) {
+        List<Handler> list = interfaceListeners.get(rawInterface);
+        if (null == list) {
+            list = new ArrayList<>();
+            interfaceListeners.put(rawInterface, list);
+        }
+        list.add(listener);
+    }
+
     /** Close RAW I/O and work threads */
     private void closeRawDeviceifAvailable() {
         /** Exit write thread */
@@ -139,13 +208,17 @@ public class RawPersonality extends Personality implements Personality.Raw {
             }
         }
 
-        /** Close the file descriptor */
-        if (parcelFD != null) try {
-            parcelFD.close();
-            parcelFD = null;
-        } catch (IOException e) {
-            e.printStackTrace();
+        /** Close the file descriptors */
+        synchronized (sendLock) {
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    channel.close();
+                }
+                channels = null;
+            }
+            flushScheduled = false;
         }
+        requestTracker.cancelAll();
 
         sendingThread = null;
         receiveThread = null;
@@ -174,20 +247,281 @@ public class RawPersonality extends Personality implements Personality.Raw {
         }
     }
 
-    /**  Put the RAW command into event queue to execute */
+    /**  Put the RAW command into pending queue of the first RAW interface */
     @Override
     public boolean executeRaw(byte[] cmd) {
-        if (null != handler) {
-            Message msg = Message.obtain(handler, SEND_RAW_CMD);
-            msg.obj = cmd;
-            handler.sendMessage(msg);
+        return executeRaw(0, cmd);
+    }
 
-            return true;
-        } else {
+    /**
+     * Put the RAW command into pending queue of the RAW interface. With BLOCK
+     * policy a full queue waits up to sendBlockTimeoutMs for space, but never
+     * on the main looper, where it rejects at once. Returns false if the
+     * command is rejected. A command dropped to make room fails its request
+     * and counts in getSendQueueDroppedCount(); offerRaw() tells it at once.
+     */
+    @Override
+    public boolean executeRaw(int rawInterface, byte[] cmd) {
+        RawChannel channel = getChannel(rawInterface);
+        if (null == channel) {
+            return false;
+        }
+
+        long timeoutMs = Looper.myLooper() == Looper.getMainLooper() ? 0 : sendBlockTimeoutMs;
+        try {
+            return enqueue(rawInterface, channel, cmd, timeoutMs) != SendQueue.RESULT_REJECTED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
 
+    /** Queue cmd, and fail the request of the command dropped for it if any */
+    private int enqueue(int rawInterface, RawChannel channel, byte[] cmd, long timeoutMs)
+            throws InterruptedException {
+        int result;
+        byte[] dropped = null;
+        synchronized (channel.sendQueue) {
+            result = channel.sendQueue.put(cmd, timeoutMs);
+            if (result == SendQueue.RESULT_DROPPED_OLDEST) {
+                dropped = channel.sendQueue.takeDropped();
+            }
+        }
+
+        if (null != dropped) {
+            Log.e(Constants.TAG, "RAW command " + (dropped[Constants.CMD_OFFSET] & 0xFF)
+                    + " dropped, send queue of interface " + rawInterface + " full");
+            requestTracker.onCommandDropped(rawInterface, dropped);
+        }
+        if (result != SendQueue.RESULT_REJECTED) {
+            scheduleFlush(channel);
+        }
+        return result;
+    }
+
+    /** Send the RAW command to the first RAW interface and track its response */
+    @Override
+    public RawRequest requestRaw(byte[] cmd, long timeoutMs,
+                                 RawRequest.Callback callback, Handler callbackHandler) {
+        return requestRaw(0, cmd, timeoutMs, callback, callbackHandler);
+    }
+
+    /**
+     * Send the RAW command and track its response. The returned request completes
+     * with the matching response frame, times out after timeoutMs, or fails at
+     * once, calling Callback.onError(), if the command can not be queued.
+     */
+    @Override
+    public RawRequest requestRaw(int rawInterface, byte[] cmd, long timeoutMs,
+                                 RawRequest.Callback callback, final Handler callbackHandler) {
+        Executor callbackExecutor = null == callbackHandler ? null : new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                callbackHandler.post(command);
+            }
+        };
+        RawRequest request = new RawRequest(rawInterface, cmd, timeoutMs,
+                callback, callbackExecutor);
+        requestTracker.add(request);
+
+        if (!executeRaw(rawInterface, cmd)) {
+            requestTracker.onSendFailed(request);
+            return request;
+        }
+
+        synchronized (sendLock) {
+            if (null != handler) {
+                handler.sendMessageDelayed(handler.obtainMessage(REQUEST_TIMEOUT, request),
+                        timeoutMs);
+            }
+        }
+        return request;
+    }
+
+    /** In-flight requests and their round trip statistics */
+    public RequestTracker getRequestTracker() {
+        return requestTracker;
+    }
+
+    /**
+     * Put the RAW command into pending queue of the RAW interface without waiting.
+     * Returns one of SendQueue.RESULT_*, or RESULT_REJECTED if no such interface.
+     */
+    @Override
+    public int offerRaw(int rawInterface, byte[] cmd) {
+        RawChannel channel = getChannel(rawInterface);
+        if (null == channel) {
+            return SendQueue.RESULT_REJECTED;
+        }
+
+        try {
+            /** No wait with a timeout of 0, even with BLOCK policy */
+            return enqueue(rawInterface, channel, cmd, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SendQueue.RESULT_REJECTED;
+        }
+    }
+
+    private RawChannel getChannel(int rawInterface) {
+        synchronized (sendLock) {
+            if (null == handler || null == channels
+                    || rawInterface < 0 || rawInterface >= channels.length) {
+                return null;
+            }
+            return channels[rawInterface];
+        }
+    }
+
+    /**
+     * The write is scheduled after maxBatchLatencyMs at most, or at once if a
+     * whole batch is pending.
+     */
+    private void scheduleFlush(RawChannel channel) {
+        synchronized (sendLock) {
+            if (null == handler) {
+                return;
+            }
+
+            if (channel.sendQueue.size() >= maxBatchSize) {
+                handler.removeMessages(SEND_RAW_CMD);
+                handler.sendEmptyMessage(SEND_RAW_CMD);
+                flushScheduled = true;
+            } else if (!flushScheduled) {
+                handler.sendEmptyMessageDelayed(SEND_RAW_CMD, maxBatchLatencyMs);
+                flushScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Configure the send queue of each RAW interface. blockTimeoutMs is the most
+     * executeRaw() waits for space with BLOCK policy.
+     */
+    public void setSendQueue(int capacity, SendQueue.OverflowPolicy policy, long blockTimeoutMs) {
+        if (capacity < 1 || null == policy || blockTimeoutMs < 0) {
+            throw new IllegalArgumentException("Invalid send queue " + capacity
+                    + " / " + policy + " / " + blockTimeoutMs);
+        }
+
+        synchronized (sendLock) {
+            sendQueueCapacity = capacity;
+            sendQueuePolicy = policy;
+            sendBlockTimeoutMs = blockTimeoutMs;
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    channel.sendQueue.configure(capacity, policy);
+                }
+            }
+        }
+    }
+
+    /** Count of commands waiting to be written, all interfaces */
+    @Override
+    public int getSendQueueDepth() {
+        int depth = 0;
+        synchronized (sendLock) {
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    depth += channel.sendQueue.size();
+                }
+            }
+        }
+        return depth;
+    }
+
+    /** Commands dropped from the send queues before being written, all interfaces */
+    @Override
+    public long getSendQueueDroppedCount() {
+        long dropped = 0;
+        synchronized (sendLock) {
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    dropped += channel.sendQueue.getDroppedCount();
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /** Average time a written command spent in the send queue */
+    @Override
+    public long getSendQueueAverageWaitNanos() {
+        long wait = 0;
+        long count = 0;
+        synchronized (sendLock) {
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    wait += channel.sendQueue.getTotalWaitNanos();
+                    count += channel.sendQueue.getDequeuedCount();
+                }
+            }
+        }
+        return count == 0 ? 0 : wait / count;
+    }
+
+    /** Longest time a written command spent in the send queue */
+    @Override
+    public long getSendQueueMaxWaitNanos() {
+        long wait = 0;
+        synchronized (sendLock) {
+            if (null != channels) {
+                for (RawChannel channel : channels) {
+                    wait = Math.max(wait, channel.sendQueue.getMaxWaitNanos());
+                }
+            }
+        }
+        return wait;
+    }
+
+    /** Count of opened RAW interfaces */
+    @Override
+    public int getRawInterfaceCount() {
+        synchronized (sendLock) {
+            return null == channels ? 0 : channels.length;
+        }
+    }
+
+    /**
+     * Configure the send batching. maxBatchSize is the most commands written at
+     * once, 1 to write each command by its own. maxLatencyMs is how long the
+     * first pending command may wait for others to join the batch.
+     */
+    public void setSendBatching(int maxBatchSize, long maxLatencyMs) {
+        if (maxBatchSize < 1 || maxLatencyMs < 0) {
+            throw new IllegalArgumentException("Invalid batching " + maxBatchSize
+                    + " / " + maxLatencyMs);
+        }
+
+        synchronized (sendLock) {
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchLatencyMs = maxLatencyMs;
+            batch = new ByteBuffer[maxBatchSize];
+            batchSizeCounts = new long[maxBatchSize + 1];
+        }
+    }
+
+    /** Count of writes done by the sending thread */
+    public long getBatchCount() {
+        synchronized (sendLock) {
+            return batchCount;
+        }
+    }
+
+    /** Count of commands written by the sending thread */
+    public long getBatchedCommandCount() {
+        synchronized (sendLock) {
+            return batchedCommandCount;
+        }
+    }
+
+    /** Histogram of batch size, index n is the count of writes with n commands */
+    public long[] getBatchSizeCounts() {
+        synchronized (sendLock) {
+            return batchSizeCounts.clone();
+        }
+    }
+
     /**
      * Check RAW I/O status, open I/O streams if not yet
      */
@@ -219,19 +553,95 @@ public class RawPersonality extends Personality implements Personality.Raw {
                 case SEND_RAW_CMD:
                     try {
                         /** Write data into RAW I/O, which mod device will get */
-                        if (null != outputStream) {
-                            outputStream.write((byte[]) msg.obj);
-                        }
+                        flushPendingCommands();
                     } catch (IOException e) {
                         Log.e(Constants.TAG, "IOException while writing to raw file" + e);
                         onIOException();
                     }
                     return;
+                case REQUEST_TIMEOUT:
+                    /** No-op if the request got its response already */
+                    requestTracker.onTimeout((RawRequest) msg.obj);
+                    return;
             }
             super.handleMessage(msg);
         }
     }
 
+    /**
+     * Write a batch of pending commands of each interface. Commands queued
+     * during the writes see flushScheduled set and schedule nothing, so the
+     * queues are checked again under sendLock before it is cleared.
+     */
+    private void flushPendingCommands() throws IOException {
+        boolean done = false;
+        try {
+            int index = 0;
+            while (true) {
+                RawChannel channel;
+                ByteBuffer[] buffers;
+                int count = 0;
+                long size = 0;
+                synchronized (sendLock) {
+                    if (null == channels || index >= channels.length) {
+                        /** Keep draining while any command is pending */
+                        if (null != handler && hasPendingCommands()) {
+                            handler.sendEmptyMessage(SEND_RAW_CMD);
+                        } else {
+                            flushScheduled = false;
+                        }
+                        done = true;
+                        return;
+                    }
+
+                    channel = channels[index++];
+                    buffers = batch;
+                    while (count < buffers.length && !channel.sendQueue.isEmpty()) {
+                        byte[] cmd = channel.sendQueue.poll();
+                        buffers[count++] = ByteBuffer.wrap(cmd);
+                        size += cmd.length;
+                    }
+
+                    if (count > 0) {
+                        batchCount++;
+                        batchedCommandCount += count;
+                        batchSizeCounts[count]++;
+                    }
+                }
+
+                /** A single gathering write for the batch */
+                try {
+                    while (size > 0) {
+                        size -= channel.transport.write(buffers, 0, count);
+                    }
+                } finally {
+                    for (int i = 0; i < count; i++) {
+                        buffers[i] = null;
+                    }
+                }
+            }
+        } finally {
+            if (!done) {
+                /** A failed write shall not block the commands sent later */
+                synchronized (sendLock) {
+                    flushScheduled = false;
+                }
+            }
+        }
+    }
+
+    /** Whether any interface has commands to write, called with sendLock held */
+    private boolean hasPendingCommands() {
+        if (null != channels) {
+            for (RawChannel channel : channels) {
+                if (!channel.sendQueue.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * I/O exception
      */
@@ -254,15 +664,32 @@ public class RawPersonality extends Personality implements Personality.Raw {
     }
 
     /**
-     * Got data from RAW I/O from mod device
+     * Got a complete frame from RAW I/O from mod device. The ownership of frame is
+     * passed to listeners, each of them shall release the frame after consumed.
+     * Message.arg2 carries the index of RAW interface the frame came from.
      */
-    public void onRawData(byte[] buffer, int length) {
-        Message msg = Message.obtain();
-        msg.what = MSG_RAW_DATA;
-        msg.arg1 = length;
-        msg.obj = buffer;
+    public void onRawData(FramePool.Frame frame) {
+        List<Handler> routed = interfaceListeners.get(frame.rawInterface);
+        int owners = listeners.size() + (null == routed ? 0 : routed.size());
+        if (owners == 0) {
+            frame.release();
+            return;
+        }
+        frame.retain(owners - 1);
 
-        notifyListeners(msg);
+        for (int i = 0; i < listeners.size(); i++) {
+            sendRawData(listeners.get(i), frame);
+        }
+        if (null != routed) {
+            for (int i = 0; i < routed.size(); i++) {
+                sendRawData(routed.get(i), frame);
+            }
+        }
+    }
+
+    private void sendRawData(Handler listener, FramePool.Frame frame) {
+        listener.sendMessage(listener.obtainMessage(MSG_RAW_DATA,
+                frame.length, frame.rawInterface, frame));
     }
 
     /** Create RAW I/O for attached mod device */
@@ -284,16 +711,18 @@ public class RawPersonality extends Personality implements Personality.Raw {
             }
         }
 
+        /** Already opened, nothing more to do */
+        if (isRawInterfaceReady()) {
+            onRawInterfaceReady();
+            return true;
+        }
+
         try {
             /** Query ModManager with RAW protocol */
             List<ModInterfaceDelegation> devices =
                     modManager.getModInterfaceDelegationsByProtocol(modDevice,
                             ModProtocol.Protocol.RAW);
             if (devices != null && !devices.isEmpty()) {
-                // TODO: go through the whole devices list for multi connected devices.
-                // Here simply operate the first device for this example.
-                ModInterfaceDelegation device = devices.get(0);
-
                 /**
                  * Be care to strict follow Android policy, you need visibly asking for
                  * grant permission.
@@ -303,7 +732,7 @@ public class RawPersonality extends Personality implements Personality.Raw {
                     onRequestRawPermission();
                 } else {
                     /** The RAW_PROTOCOL permission already granted, open RAW I/O */
-                    getRawPfd(device);
+                    getRawPfds(devices);
                     return true;
                 }
             }
@@ -313,81 +742,241 @@ public class RawPersonality extends Personality implements Personality.Raw {
         return false;
     }
 
-    /** Get file description via ModManager for attached Moto Mod, to create RAW I/O */
-    private void getRawPfd(ModInterfaceDelegation device) {
+    /** Get file descriptions via ModManager for attached Moto Mod, to create RAW I/O */
+    private void getRawPfds(List<ModInterfaceDelegation> devices) {
+        RawTransport[] transports = new RawTransport[devices.size()];
         try {
-            /** Get file description of this mod device */
-            parcelFD = modManager.openModInterface(device,
-                    ParcelFileDescriptor.MODE_READ_WRITE);
-            if (parcelFD != null) {
-                try {
-                    /**
-                     * Get read / write file descriptor, For further details,
-                     * refer to http://man7.org/linux/man-pages/man2/pipe.2.html
-                     */
-                    syncPipes = Os.pipe();
-                } catch (ErrnoException e) {
-                    e.printStackTrace();
-                } catch (Exception e) {
-                    e.printStackTrace();
+            for (int i = 0; i < transports.length; i++) {
+                /** Get file description of this mod interface */
+                ParcelFileDescriptor pfd = modManager.openModInterface(devices.get(i),
+                        ParcelFileDescriptor.MODE_READ_WRITE);
+                if (pfd == null) {
+                    Log.e(Constants.TAG, "getRawPfd PFD null " + i);
+                    closeTransports(transports);
+                    return;
                 }
+                transports[i] = new PfdTransport(pfd);
+            }
+        } catch (RemoteException e) {
+            Log.e(Constants.TAG, "openRawDevice exception " + e);
+            closeTransports(transports);
+            return;
+        }
 
-                /** Create work threads for read / write data */
-                createSendingThread();
-                createReceivingThread();
+        openTransports(transports);
+    }
 
-                if (null != sendingThread && null != receiveThread) {
-                    /** Notify that RAW I/O is ready to use */
-                    onRawInterfaceReady();
+    private static void closeTransports(RawTransport[] transports) {
+        for (RawTransport transport : transports) {
+            if (null != transport) {
+                try {
+                    transport.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-            } else {
-                Log.e(Constants.TAG, "getRawPfd PFD null ");
             }
-        } catch (RemoteException e) {
-            Log.e(Constants.TAG, "openRawDevice exception " + e);
         }
     }
 
     /**
-     * Create the RAW data write stream based on the file description
+     * Create RAW I/O over the given transports instead of the mod interfaces,
+     * e.g. a socket pair connected to a simulated mod device. The index of each
+     * transport is its RAW interface index.
+     */
+    public boolean openTransports(RawTransport[] transports) {
+        if (isRawInterfaceReady()) {
+            return false;
+        }
+
+        RawChannel[] opened = new RawChannel[transports.length];
+        for (int i = 0; i < transports.length; i++) {
+            opened[i] = new RawChannel(i, transports[i]);
+        }
+
+        try {
+            /**
+             * Get read / write file descriptor, For further details,
+             * refer to http://man7.org/linux/man-pages/man2/pipe.2.html
+             */
+            syncPipes = Os.pipe();
+        } catch (ErrnoException e) {
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        synchronized (sendLock) {
+            channels = opened;
+        }
+
+        /** Create work threads for read / write data */
+        createSendingThread();
+        createReceivingThread();
+
+        if (null != sendingThread && null != receiveThread) {
+            /** Notify that RAW I/O is ready to use */
+            onRawInterfaceReady();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create the RAW data write thread, shared by all RAW interfaces
      * for attached mod device.
      */
     private void createSendingThread() {
         if (sendingThread == null) {
-            FileDescriptor fd = parcelFD.getFileDescriptor();
-            outputStream = new FileOutputStream(fd);
             sendingThread = new HandlerThread("sendingThread");
             sendingThread.start();
-            handler = new SendHandler(sendingThread.getLooper());
+            synchronized (sendLock) {
+                handler = new SendHandler(sendingThread.getLooper());
+            }
         }
     }
 
     /**
-     * Create the RAW data read stream based on the file description
+     * Create the RAW data read thread based on the file descriptions
      * for attached mod device.
      */
-    public static int MAX_BYTES = 1024;
+    public static int MAX_BYTES = 4096;
+
+    /** Count of receive buffers could be held by listeners at the same time */
+    public static int FRAME_POOL_SIZE = 32;
+
+    private final FramePool framePool =
+            new FramePool(FRAME_POOL_SIZE, FrameDecoder.MAX_FRAME_SIZE);
+
+    /**
+     * Count of frames received while the pool was exhausted, each of them
+     * allocated its own buffer. Everything else on the receive path is
+     * created with the channels, see FrameDecodeBenchmark.decodePooled.
+     */
+    public long getPoolMissCount() {
+        return framePool.getExhaustedCount();
+    }
+
+    /**
+     * A RAW interface with its transport, frame decoder and pending commands.
+     * All of them are created once when opened and reused for every I/O.
+     */
+    private class RawChannel {
+        final int index;
+        final RawTransport transport;
+        final FrameDecoder decoder;
+        final SendQueue sendQueue = new SendQueue(sendQueueCapacity, sendQueuePolicy);
+
+        /** Reading thread if the transport can not be polled */
+        TransportReader reader;
+
+        RawChannel(int index, RawTransport transport) {
+            this.index = index;
+            this.transport = transport;
+
+            /** Split the read bytes into frames, each frame is passed to listeners */
+            decoder = new FrameDecoder(new FrameDecoder.Callback() {
+                @Override
+                public void onFrame(byte[] buffer, int offset, int length) {
+                    requestTracker.onFrame(RawChannel.this.index, buffer, offset, length);
+
+                    FramePool.Frame frame = framePool.acquire();
+                    System.arraycopy(buffer, offset, frame.data, 0, length);
+                    frame.length = length;
+                    frame.rawInterface = RawChannel.this.index;
+                    frame.timestampUs = SystemClock.elapsedRealtimeNanos() / 1000;
+                    onRawData(frame);
+                }
+            });
+        }
+
+        boolean isPollable() {
+            return null != transport.getFileDescriptor();
+        }
+
+        void close() {
+            sendQueue.clear();
+            try {
+                transport.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Poll descriptors for all RAW interfaces plus the exit pipe, and the buffers
+     * of receiving thread. Created once with the thread and reused for every read.
+     */
+    private static class PollSet {
+        final RawChannel[] channels;
+        final StructPollfd[] pollfds;
+
+        /** syncFd will watch whether any exit signal */
+        final StructPollfd syncFd = new StructPollfd();
+        final FileInputStream exitStream;
+        final byte[] exitBuffer = new byte[1];
+        final byte[] readBuffer = new byte[MAX_BYTES];
+        int openCount;
+
+        PollSet(RawChannel[] channels, FileDescriptor exitFd) {
+            this.channels = channels;
+            pollfds = new StructPollfd[channels.length + 1];
+
+            /** Watch whether data is available on each raw channel */
+            for (int i = 0; i < channels.length; i++) {
+                StructPollfd readRawFd = new StructPollfd();
+                readRawFd.fd = channels[i].transport.getFileDescriptor();
+                readRawFd.events = (short) (OsConstants.POLLIN | OsConstants.POLLHUP);
+                pollfds[i] = readRawFd;
+            }
+            openCount = channels.length;
+
+            syncFd.fd = exitFd;
+            syncFd.events = (short) OsConstants.POLLIN;
+            pollfds[channels.length] = syncFd;
+            exitStream = new FileInputStream(exitFd);
+        }
+
+        /** Stop polling on a RAW interface which is gone */
+        void closeChannel(int index) {
+            if (pollfds[index].fd != CLOSED_FD) {
+                pollfds[index].fd = CLOSED_FD;
+                openCount--;
+            }
+        }
+
+        /** All the polled RAW interfaces are gone */
+        boolean isAllClosed() {
+            return channels.length > 0 && openCount == 0;
+        }
+    }
 
     private void createReceivingThread() {
         if (receiveThread != null) return;
+
+        /** Transports without file descriptor are read by their own threads */
+        List<RawChannel> pollable = new ArrayList<>();
+        for (RawChannel channel : channels) {
+            if (channel.isPollable()) {
+                pollable.add(channel);
+            } else {
+                startTransportReader(channel);
+            }
+        }
+
+        final PollSet pollSet = new PollSet(pollable.toArray(new RawChannel[pollable.size()]),
+                syncPipes[0]);
+
         receiveThread = new Thread() {
             @Override
             public void run() {
-                byte[] buffer = new byte[MAX_BYTES];
-                FileDescriptor fd = parcelFD.getFileDescriptor();
-                FileInputStream inputStream = new FileInputStream(fd);
-                int ret = 0;
                 synchronized (syncPipes) {
-                    while (ret >= 0) {
+                    while (true) {
                         try {
-                            /** Poll on the exit pipe and the raw channel */
-                            int polltype = blockRead();
+                            /** Poll on the exit pipe and all the raw channels */
+                            int polltype = blockRead(pollSet);
                             if (polltype == POLL_TYPE_READ_DATA) {
-                                ret = inputStream.read(buffer, 0, MAX_BYTES);
-                                if (ret > 0) {
-                                    /**  Got raw data */
-                                    onRawData(buffer, ret);
-                                }
+                                readChannels(pollSet);
                             } else if (polltype == POLL_TYPE_EXIT) {
                                 break;
                             }
@@ -398,6 +987,19 @@ public class RawPersonality extends Personality implements Personality.Raw {
                             Log.e(Constants.TAG, "Exception while reading from raw file" + e);
                             e.printStackTrace();
                         }
+
+                        if (pollSet.isAllClosed()) {
+                            break;
+                        }
+                    }
+
+                    for (RawChannel channel : pollSet.channels) {
+                        FrameDecoder decoder = channel.decoder;
+                        if (decoder.getSkippedBytes() > 0) {
+                            Log.w(Constants.TAG, "RAW frames decoded: " + decoder.getFrameCount()
+                                    + " bytes skipped: " + decoder.getSkippedBytes()
+                                    + " on interface " + channel.index);
+                        }
                     }
                     receiveThread = null;
                 }
@@ -407,44 +1009,80 @@ public class RawPersonality extends Personality implements Personality.Raw {
         receiveThread.start();
     }
 
-    /** Read the RAW I/O input pipe, the data is written by attached mod device */
-    private int blockRead() {
-        /** Poll on the pipe to see whether signal to exit, or any data on raw fd to read */
-        StructPollfd[] pollfds = new StructPollfd[2];
+    /** Read a transport which can not be polled, ends when the transport closed */
+    private void startTransportReader(final RawChannel channel) {
+        channel.reader = new TransportReader("receiveThread-" + channel.index,
+                channel.transport, channel.decoder, MAX_BYTES, new TransportReader.Callback() {
+            @Override
+            public void onReaderStopped(TransportReader reader, IOException exception) {
+                if (null != exception) {
+                    Log.e(Constants.TAG, "IOException while reading from raw transport "
+                            + channel.index + ": " + exception);
+                    onIOException();
+                }
+            }
+        });
+        channel.reader.start();
+    }
+
+    /** Read each raw channel which has data ready, and decode frames */
+    private void readChannels(PollSet pollSet) throws IOException {
+        for (int i = 0; i < pollSet.channels.length; i++) {
+            StructPollfd readRawFd = pollSet.pollfds[i];
+            if (readRawFd.fd == CLOSED_FD || (readRawFd.revents & OsConstants.POLLIN) == 0) {
+                continue;
+            }
 
-        /** readRawFd will watch whether data is available on the raw channel */
-        StructPollfd readRawFd = new StructPollfd();
-        pollfds[0] = readRawFd;
-        readRawFd.fd = parcelFD.getFileDescriptor();
-        readRawFd.events = (short) (OsConstants.POLLIN | OsConstants.POLLHUP);
+            RawChannel channel = pollSet.channels[i];
+            int ret = channel.transport.read(pollSet.readBuffer, 0, MAX_BYTES);
+            if (ret > 0) {
+                /**  Got raw data, may be partial or several frames */
+                channel.decoder.decode(pollSet.readBuffer, 0, ret);
+            } else if (ret < 0) {
+                /** End of stream on this interface */
+                pollSet.closeChannel(i);
+            }
+        }
+    }
 
-        /** syncFd will watch whether any exit signal */
-        StructPollfd syncFd = new StructPollfd();
-        pollfds[1] = syncFd;
-        syncFd.fd = syncPipes[0];
-        syncFd.events = (short) OsConstants.POLLIN;
+    /** Wait the RAW I/O input pipes, the data is written by attached mod device */
+    private int blockRead(PollSet pollSet) {
+        StructPollfd syncFd = pollSet.syncFd;
 
         try {
-            /** Waits for file descriptors pollfds to become ready to perform I/O */
-            int ret = Os.poll(pollfds, -1);
+            /**
+             * Waits for file descriptors pollfds to become ready to perform I/O,
+             * either signal to exit, or any data on raw fds to read.
+             */
+            int ret = Os.poll(pollSet.pollfds, -1);
             if (ret > 0) {
                 if (syncFd.revents == OsConstants.POLLIN) {
                     /** POLLIN on the syncFd as signal to exit */
-                    byte[] buffer = new byte[1];
-                    new FileInputStream(syncPipes[0]).read(buffer, 0, 1);
-                    return POLL_TYPE_EXIT;
-                } else if ((readRawFd.revents & OsConstants.POLLHUP) != 0) {
-                    /** RAW driver existing */
+                    pollSet.exitStream.read(pollSet.exitBuffer, 0, 1);
                     return POLL_TYPE_EXIT;
-                } else if ((readRawFd.revents & OsConstants.POLLIN) != 0) {
-                    /** Finally data ready to read */
-                    return POLL_TYPE_READ_DATA;
-                } else {
-                    /** Unexcpected error */
-                    Log.e(Constants.TAG, "unexpected events in blockRead rawEvents:"
-                            + readRawFd.revents + " syncEvents:" + syncFd.revents);
+                }
+
+                int polltype = POLL_TYPE_NONE;
+                for (int i = 0; i < pollSet.channels.length; i++) {
+                    short revents = pollSet.pollfds[i].revents;
+                    if ((revents & OsConstants.POLLHUP) != 0) {
+                        /** RAW driver existing for this interface */
+                        pollSet.closeChannel(i);
+                    } else if ((revents & OsConstants.POLLIN) != 0) {
+                        /** Finally data ready to read */
+                        polltype = POLL_TYPE_READ_DATA;
+                    } else if (revents != 0) {
+                        /** Unexcpected error */
+                        Log.e(Constants.TAG, "unexpected events in blockRead rawEvents:"
+                                + revents + " interface:" + i + " syncEvents:" + syncFd.revents);
+                        pollSet.closeChannel(i);
+                    }
+                }
+
+                if (pollSet.isAllClosed()) {
                     return POLL_TYPE_EXIT;
                 }
+                return polltype;
             } else {
                 /** Error */
                 Log.e(Constants.TAG, "Error in blockRead: " + ret);
@@ -458,4 +1096,4 @@ public class RawPersonality extends Personality implements Personality.Raw {
         }
         return POLL_TYPE_EXIT;
     }
-}
\ No newline at end of file
+}
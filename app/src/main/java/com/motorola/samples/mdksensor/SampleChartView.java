@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * A line chart of a TimeSeriesBuffer, drawn right from its arrays.
+ *
+ * The shown range is reduced by a Decimator to two points a pixel, which
+ * a ChartProjection turns into one float array of segments for
+ * Canvas.drawLines(). Both are sized with the view, so onDraw() allocates
+ * nothing and takes the same time for any length of history. A range wide
+ * enough for a bucket of the finest rollup a pixel is drawn from the
+ * RollupPyramid instead, from the min and max of its buckets, without
+ * reading the samples.
+ *
+ * The chart follows the newest samples until panned. Drag to pan, pinch
+ * to zoom around the fingers, double tap to show all history again.
+ */
+public class SampleChartView extends View {
+    /** Fewest samples shown when zoomed in */
+    private static final long MIN_SPAN = 16;
+    /** Margin of the line to the top and bottom of the plot */
+    private static final float VALUE_MARGIN = 0.05f;
+
+    private TimeSeriesBuffer history;
+    private Decimator decimator;
+    private ChartProjection projection;
+
+    /** Rollups of the history on the wall clock, two points a bucket */
+    private RollupPyramid rollups;
+    private long rollupTimeBaseUs;
+    private long[] rollupTimes;
+    private float[] rollupValues;
+    private int rollupCount;
+    private final RollupPyramid.Visitor rollupVisitor = new RollupPyramid.Visitor() {
+        @Override
+        public void onBucket(long startUs, long durationUs, int count, float min, float max, double mean) {
+            if (rollupCount + 2 > rollupTimes.length) {
+                return;
+            }
+            long middle = startUs + durationUs / 2;
+            rollupTimes[rollupCount] = middle;
+            rollupValues[rollupCount++] = min;
+            rollupTimes[rollupCount] = middle;
+            rollupValues[rollupCount++] = max;
+        }
+    };
+
+    /** Samples shown, 0 for all, and the end of them when not following */
+    private long span;
+    private long viewEnd;
+    private boolean following = true;
+    /** Range of the last draw, for gestures, and its time if drawn from the rollups */
+    private long drawnFrom;
+    private long drawnEnd;
+    private boolean drawnRollups;
+    private long drawnFromUs;
+    private long drawnToUs;
+
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final char[] label = new char[24];
+    private final String xAxisName;
+    private final String yAxisName;
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    public SampleChartView(Context context) {
+        this(context, null);
+    }
+
+    public SampleChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        float density = getResources().getDisplayMetrics().density;
+        linePaint.setColor(context.getColor(R.color.colorPrimary));
+        linePaint.setStrokeWidth(2 * density);
+        axisPaint.setColor(context.getColor(R.color.mod_na));
+        axisPaint.setStrokeWidth(density);
+        textPaint.setColor(context.getColor(R.color.mod_na));
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 10,
+                getResources().getDisplayMetrics()));
+        xAxisName = context.getString(R.string.x_axis_name);
+        yAxisName = context.getString(R.string.y_axis_name);
+
+        scaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoom(detector.getScaleFactor(), detector.getFocusX());
+                        return true;
+                    }
+                });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                pan(distanceX);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                showAll();
+                return true;
+            }
+        });
+    }
+
+    /** Samples to draw, the caller invalidates the view when it appends */
+    public void setHistory(TimeSeriesBuffer history) {
+        this.history = history;
+        showAll();
+    }
+
+    /**
+     * Rollups of the samples of the history, null to always draw the samples.
+     * timeBaseUs is the one SampleProcessor adds them with.
+     */
+    public void setRollups(RollupPyramid rollups, long timeBaseUs) {
+        this.rollups = rollups;
+        rollupTimeBaseUs = timeBaseUs;
+        invalidate();
+    }
+
+    /** Show all history, following the newest samples */
+    public void showAll() {
+        span = 0;
+        following = true;
+        if (null != decimator) {
+            decimator.reset();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int maxPoints = Math.max(2, 2 * w);
+        decimator = new Decimator(Decimator.Mode.MIN_MAX, maxPoints);
+        projection = new ChartProjection(maxPoints);
+        rollupTimes = new long[maxPoints];
+        rollupValues = new float[maxPoints];
+        float textHeight = textPaint.getTextSize();
+        projection.setBounds(getPaddingLeft(), getPaddingTop() + textHeight,
+                w - getPaddingRight(), h - getPaddingBottom() - textHeight);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        if (handled) {
+            /** Let the chart have the drag, not the scrolling parent */
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (null == history || null == decimator) {
+            return;
+        }
+
+        float left = getPaddingLeft();
+        float right = getWidth() - getPaddingRight();
+        float top = getPaddingTop();
+        float bottom = getHeight() - getPaddingBottom();
+        float textHeight = textPaint.getTextSize();
+        canvas.drawLine(left, bottom - textHeight, right, bottom - textHeight, axisPaint);
+        canvas.drawText(xAxisName, left, bottom, textPaint);
+        canvas.drawText(yAxisName, left, top + textHeight, textPaint);
+
+        long first = history.getFirstSequence();
+        long end = following ? history.getEndSequence()
+                : Math.max(first, Math.min(viewEnd, history.getEndSequence()));
+        long from = span > 0 ? Math.max(first, end - span) : first;
+        drawnFrom = from;
+        drawnEnd = end;
+        drawnRollups = queryRollups(from, end);
+        int count = drawnRollups ? rollupCount : decimator.decimate(history, from, end);
+        if (count == 0) {
+            return;
+        }
+
+        float min = drawnRollups ? rollupValues[0] : decimator.getValue(0);
+        float max = min;
+        for (int i = 1; i < count; i++) {
+            float value = drawnRollups ? rollupValues[i] : decimator.getValue(i);
+            if (value < min) {
+                min = value;
+            } else if (value > max) {
+                max = value;
+            }
+        }
+        float margin = Math.max(max - min, 1f) * VALUE_MARGIN;
+        int length;
+        if (drawnRollups) {
+            projection.setRange(drawnFromUs, drawnToUs, min - margin, max + margin);
+            length = projection.project(rollupTimes, rollupValues, count);
+        } else {
+            projection.setRange(from, end - 1, min - margin, max + margin);
+            length = projection.project(decimator, count);
+        }
+        canvas.drawLines(projection.getLines(), 0, length, linePaint);
+
+        /** Extremes at the right, which the y axis name leaves free */
+        int chars = ChartProjection.formatValue(max, label);
+        float width = textPaint.measureText(label, 0, chars);
+        canvas.drawText(label, 0, chars, right - width, top + textHeight, textPaint);
+        chars = ChartProjection.formatValue(min, label);
+        width = textPaint.measureText(label, 0, chars);
+        canvas.drawText(label, 0, chars, right - width, bottom - 2 * textHeight, textPaint);
+    }
+
+    /**
+     * Query the rollups for the samples [from, end) when they span at least
+     * a bucket of the finest level a pixel, and the rollups go back to from.
+     * Returns false to decimate the samples instead.
+     */
+    private boolean queryRollups(long from, long end) {
+        rollupCount = 0;
+        if (null == rollups || end - from < 2) {
+            return false;
+        }
+        int maxBuckets = rollupTimes.length / 2;
+        drawnFromUs = history.getTimestamp(from) + rollupTimeBaseUs;
+        drawnToUs = history.getTimestamp(end - 1) + rollupTimeBaseUs + 1;
+        if (drawnToUs - drawnFromUs < maxBuckets * rollups.getBucketUs(0)) {
+            return false;
+        }
+        int level = rollups.selectLevel(drawnFromUs, drawnToUs, maxBuckets);
+        if (rollups.getFirstStartUs(level) > drawnFromUs) {
+            /** The history goes back further than the rollups */
+            return false;
+        }
+        rollups.query(drawnFromUs, drawnToUs, maxBuckets, rollupVisitor);
+        return rollupCount > 0;
+    }
+
+    /** Scroll by distanceX pixels, positive to newer samples */
+    private void pan(float distanceX) {
+        if (null == history || null == projection || drawnEnd <= drawnFrom) {
+            return;
+        }
+        long shown = drawnEnd - drawnFrom;
+        long delta = (long) (distanceX * shown / Math.max(1, getWidth()));
+        if (span == 0) {
+            span = shown;
+        }
+        viewEnd = Math.max(history.getFirstSequence() + Math.min(span, history.size()),
+                drawnEnd + delta);
+        following = viewEnd >= history.getEndSequence();
+        invalidate();
+    }
+
+    /** Zoom in by scale, greater than 1, keeping the sample at focusX in place */
+    private void zoom(float scale, float focusX) {
+        if (null == history || null == projection || drawnEnd <= drawnFrom) {
+            return;
+        }
+        long shown = drawnEnd - drawnFrom;
+        long newSpan = Math.max(MIN_SPAN, (long) (shown / scale));
+        if (newSpan >= history.size()) {
+            showAll();
+            return;
+        }
+        span = newSpan;
+        if (!following) {
+            /** Following keeps the newest samples at the right instead */
+            double focus = projection.toDataX(focusX);
+            if (drawnRollups) {
+                /** Drawn on time, back to the sequence of the samples */
+                focus = drawnFrom + (focus - drawnFromUs) * shown
+                        / Math.max(1, drawnToUs - drawnFromUs);
+            }
+            double fraction = (focus - drawnFrom) / shown;
+            viewEnd = (long) (focus - fraction * newSpan) + newSpan;
+        }
+        invalidate();
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * A class to decode the sensor readings off the UI thread.
+ *
+ * It stands between the personality and the UI handler: DATA, DATA_BATCH
+ * and DATA_PACKED frames are decoded and converted to temperature on its own
+ * thread, every other message is passed on to the UI handler unchanged. The
+ * readings are collected in one of two snapshots; the other one is with the
+ * UI. A snapshot is posted as MSG_SAMPLES only when the UI has recycled the
+ * previous one, so a busy UI gets bigger snapshots instead of a longer queue,
+ * and the oldest readings are overwritten if the UI stalls for too long.
+ * Each snapshot also carries the RollingStatistics of the readings so far.
+ * The readings are appended to the SessionLog and RollupPyramid, if set, as
+ * they are decoded, so their blocks and buckets are written on this thread
+ * and never on the UI one. Both are on the wall clock, with the time base
+ * of getLogTimeBaseUs() given with them, so the readings of every run follow
+ * each other in them.
+ */
+public class SampleProcessor {
+    /** Message to UI handler, obj is the Snapshot, to be recycled once drawn */
+    public static final int MSG_SAMPLES = 100;
+    public static final int SNAPSHOT_CAPACITY = 512;
+
+    /**
+     * Render ready readings, in order of time
+     */
+    public static class Snapshot {
+        public final long[] timestampsUs = new long[SNAPSHOT_CAPACITY];
+        public final double[] temperatures = new double[SNAPSHOT_CAPACITY];
+        /** Readings from start, wrapping around */
+        public int start;
+        public int count;
+        /** Readings overwritten before the UI took them */
+        public long droppedCount;
+        /** Statistics of the readings up to the last one, median and 95th percentile */
+        public final RollingStatistics.Summary statistics = new RollingStatistics.Summary(0.5, 0.95);
+        private long publishNanos;
+
+        public long getTimestampUs(int index) {
+            return timestampsUs[(start + index) % SNAPSHOT_CAPACITY];
+        }
+
+        public double getTemperature(int index) {
+            return temperatures[(start + index) % SNAPSHOT_CAPACITY];
+        }
+
+        private void add(long timestampUs, double temperature) {
+            int index = (start + count) % SNAPSHOT_CAPACITY;
+            timestampsUs[index] = timestampUs;
+            temperatures[index] = temperature;
+            if (count < SNAPSHOT_CAPACITY) {
+                count++;
+            } else {
+                start = (start + 1) % SNAPSHOT_CAPACITY;
+                droppedCount++;
+            }
+        }
+
+        private void clear() {
+            start = 0;
+            count = 0;
+            droppedCount = 0;
+        }
+    }
+
+    private final Handler ui;
+    private final SamplingController samplingController;
+    private final HandlerThread processThread;
+    private final Handler processHandler;
+
+    /** Views of the received frames, only used in process thread */
+    private final DataFrame dataFrame = new DataFrame();
+    private final DataBatchFrame dataBatchFrame = new DataBatchFrame();
+    private final DataPackedFrame dataPackedFrame = new DataPackedFrame();
+
+    /** Snapshot being filled, and the one with the UI, null if recycled */
+    private Snapshot filling = new Snapshot();
+    private Snapshot spare = new Snapshot();
+    private boolean published;
+
+    /** Statistics of the recent readings, only used in process thread */
+    private final RollingStatistics statistics = new RollingStatistics(
+            Constants.STATISTICS_WINDOW, Constants.STATISTICS_WINDOW_US, Constants.STATISTICS_EMA_US,
+            Constants.STATISTICS_LOW, Constants.STATISTICS_HIGH, Constants.STATISTICS_BIN);
+
+    /** Log and rollups of the readings, held across a decode so they are not closed in between */
+    private final Object sessionLogLock = new Object();
+    private SessionLog sessionLog;
+    private RollupPyramid rollups;
+    private long logTimeBaseUs;
+
+    /** Timestamp of the last reading, the ones after never go back before it */
+    private long lastTimestampUs = Long.MIN_VALUE;
+
+    private final SampleSink snapshotSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            /** A batch delivered early would overlap the previous one */
+            timestampUs = Math.max(timestampUs, lastTimestampUs);
+            lastTimestampUs = timestampUs;
+            double temperature = DataFrame.toTemperature(rawData);
+            filling.add(timestampUs, temperature);
+            statistics.add(timestampUs, temperature);
+            if (null != sessionLog) {
+                try {
+                    sessionLog.append(timestampUs + logTimeBaseUs, (float) temperature);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (null != rollups) {
+                try {
+                    rollups.add(timestampUs + logTimeBaseUs, (float) temperature);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    };
+
+    /**
+     * Processor statistics
+     */
+    private final Object statsLock = new Object();
+    private int queueDepth;
+    private int maxQueueDepth;
+    private long frameCount;
+    private long snapshotCount;
+    private long totalQueueMs;
+    private long maxQueueMs;
+    private long totalProcessNanos;
+    private long maxProcessNanos;
+    private long totalPublishNanos;
+    private long maxPublishNanos;
+
+    /**
+     * Constructor, samplingController may be null. It is fed with the time
+     * frames wait for the process thread.
+     */
+    public SampleProcessor(Handler ui, SamplingController samplingController) {
+        this.ui = ui;
+        this.samplingController = samplingController;
+        processThread = new HandlerThread("sampleProcessor");
+        processThread.start();
+        processHandler = new Handler(processThread.getLooper()) {
+            @Override
+            public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+                boolean queued = super.sendMessageAtTime(msg, uptimeMillis);
+                if (queued) {
+                    synchronized (statsLock) {
+                        queueDepth++;
+                        if (queueDepth > maxQueueDepth) {
+                            maxQueueDepth = queueDepth;
+                        }
+                    }
+                }
+                return queued;
+            }
+
+            @Override
+            public void handleMessage(Message msg) {
+                synchronized (statsLock) {
+                    queueDepth--;
+                }
+                if (msg.what == Personality.MSG_RAW_DATA) {
+                    onRawData(msg);
+                } else if (msg.what == MSG_SAMPLES) {
+                    onRecycled((Snapshot) msg.obj);
+                } else {
+                    /** Events of mod device are for the UI */
+                    SampleProcessor.this.ui.sendMessage(Message.obtain(msg));
+                }
+            }
+        };
+    }
+
+    /** Handler to register with the personality instead of the UI handler */
+    public Handler getHandler() {
+        return processHandler;
+    }
+
+    /** The UI has drawn the snapshot of MSG_SAMPLES */
+    public void recycle(Snapshot snapshot) {
+        long elapsed = SystemClock.elapsedRealtimeNanos() - snapshot.publishNanos;
+        synchronized (statsLock) {
+            totalPublishNanos += elapsed;
+            if (elapsed > maxPublishNanos) {
+                maxPublishNanos = elapsed;
+            }
+        }
+        processHandler.sendMessage(processHandler.obtainMessage(MSG_SAMPLES, snapshot));
+    }
+
+    /**
+     * Log and rollups to add the readings to, null to stop, at the host
+     * clock plus timeBaseUs. Once it returns, the previous ones are not used
+     * any more and may be closed.
+     */
+    public void setSessionLog(SessionLog sessionLog, RollupPyramid rollups, long timeBaseUs) {
+        synchronized (sessionLogLock) {
+            this.sessionLog = sessionLog;
+            this.rollups = rollups;
+            logTimeBaseUs = timeBaseUs;
+        }
+    }
+
+    /**
+     * Offset from the host clock of the readings, which restarts at boot, to
+     * the wall clock of SessionLog, in microseconds
+     */
+    public static long getLogTimeBaseUs() {
+        return System.currentTimeMillis() * 1000 - SystemClock.elapsedRealtimeNanos() / 1000;
+    }
+
+    /** Stop the process thread, pending frames are dropped */
+    public void release() {
+        processThread.quitSafely();
+    }
+
+    private void onRawData(Message msg) {
+        FramePool.Frame frame = (FramePool.Frame) msg.obj;
+        long queueMs = SystemClock.uptimeMillis() - msg.getWhen();
+        if (null != samplingController && samplingController.isRunning()) {
+            samplingController.onLag(queueMs);
+        }
+
+        int length = msg.arg1;
+        int cmd = length >= Constants.PAYLOAD_OFFSET ? RawFrame.getCommand(frame.data, 0) : 0;
+        if (cmd != Constants.TEMP_RAW_COMMAND_DATA
+                && cmd != Constants.TEMP_RAW_COMMAND_DATA_BATCH
+                && cmd != Constants.TEMP_RAW_COMMAND_DATA_PACKED) {
+            /** Protocol frames are handled by the UI, which releases the frame */
+            ui.sendMessage(ui.obtainMessage(Personality.MSG_RAW_DATA, msg.arg1, msg.arg2, frame));
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            synchronized (sessionLogLock) {
+                /** All readings on the host clock, anchored at the arrival of the frame */
+                if (cmd == Constants.TEMP_RAW_COMMAND_DATA) {
+                    if (dataFrame.wrap(frame.data, 0, length)) {
+                        snapshotSink.onSample(frame.timestampUs, dataFrame.getRawData());
+                    }
+                } else if (cmd == Constants.TEMP_RAW_COMMAND_DATA_BATCH) {
+                    if (dataBatchFrame.wrap(frame.data, 0, length)) {
+                        dataBatchFrame.forEach(snapshotSink, frame.timestampUs);
+                    }
+                } else if (dataPackedFrame.wrap(frame.data, 0, length)) {
+                    if (dataPackedFrame.forEach(snapshotSink, frame.timestampUs) < 0) {
+                        Log.e(Constants.TAG, "Corrupted DATA_PACKED, count "
+                                + dataPackedFrame.getCount());
+                    }
+                }
+            }
+        } finally {
+            frame.release();
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+        synchronized (statsLock) {
+            frameCount++;
+            totalQueueMs += queueMs;
+            if (queueMs > maxQueueMs) {
+                maxQueueMs = queueMs;
+            }
+            totalProcessNanos += elapsed;
+            if (elapsed > maxProcessNanos) {
+                maxProcessNanos = elapsed;
+            }
+        }
+        publish();
+    }
+
+    private void onRecycled(Snapshot snapshot) {
+        snapshot.clear();
+        spare = snapshot;
+        published = false;
+        publish();
+    }
+
+    /** Hand the filled snapshot to UI, unless the UI still has the other one */
+    private void publish() {
+        if (published || filling.count == 0) {
+            return;
+        }
+
+        Snapshot snapshot = filling;
+        filling = spare;
+        spare = null;
+        published = true;
+        statistics.copyTo(snapshot.statistics);
+        snapshot.publishNanos = SystemClock.elapsedRealtimeNanos();
+        synchronized (statsLock) {
+            snapshotCount++;
+        }
+        ui.sendMessage(ui.obtainMessage(MSG_SAMPLES, snapshot));
+    }
+
+    /** Messages waiting for the process thread */
+    public int getQueueDepth() {
+        synchronized (statsLock) {
+            return queueDepth;
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        synchronized (statsLock) {
+            return maxQueueDepth;
+        }
+    }
+
+    public long getFrameCount() {
+        synchronized (statsLock) {
+            return frameCount;
+        }
+    }
+
+    public long getSnapshotCount() {
+        synchronized (statsLock) {
+            return snapshotCount;
+        }
+    }
+
+    /** Time a data frame waited for the process thread */
+    public long getAverageQueueMs() {
+        synchronized (statsLock) {
+            return frameCount > 0 ? totalQueueMs / frameCount : 0;
+        }
+    }
+
+    public long getMaxQueueMs() {
+        synchronized (statsLock) {
+            return maxQueueMs;
+        }
+    }
+
+    /** Time to decode and convert a data frame */
+    public long getAverageProcessNanos() {
+        synchronized (statsLock) {
+            return frameCount > 0 ? totalProcessNanos / frameCount : 0;
+        }
+    }
+
+    public long getMaxProcessNanos() {
+        synchronized (statsLock) {
+            return maxProcessNanos;
+        }
+    }
+
+    /** Time from a snapshot published to drawn by the UI */
+    public long getAveragePublishNanos() {
+        synchronized (statsLock) {
+            return snapshotCount > 0 ? totalPublishNanos / snapshotCount : 0;
+        }
+    }
+
+    public long getMaxPublishNanos() {
+        synchronized (statsLock) {
+            return maxPublishNanos;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jmh.annotations.Mode.AverageTime;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Entry of the benchmark suite. JMH prints one time unit per run, so the
+ * suite runs twice: throughput in ops/s, then average time in ns/op. Both
+ * runs use the GC profiler for the allocation rate.
+ *
+ * Arguments: [output directory] [benchmark regexp...]
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException {
+        File outputDir = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        outputDir.mkdirs();
+
+        ChainedOptionsBuilder throughput = options(args)
+                .mode(Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .result(new File(outputDir, "throughput.json").getPath());
+        new Runner(throughput.build()).run();
+
+        ChainedOptionsBuilder averageTime = options(args)
+                .mode(AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .result(new File(outputDir, "average.json").getPath());
+        new Runner(averageTime.build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(String[] args) {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON);
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                builder.include(args[i]);
+            }
+        } else {
+            builder.include(BenchmarkMain.class.getPackage().getName() + ".*Benchmark");
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.ChallengeSession;
+import com.motorola.samples.mdksensor.Constants;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Challenge handshake crypto with Constants.getAESECBEncryptor() /
+ * getAESECBDecryptor(), which build the key and cipher on every call, and
+ * with ChallengeSession, which keeps initialised ciphers per thread.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChallengeBenchmark {
+    private byte[] plain;
+    private byte[] challenge;
+    private final ChallengeSession session = new ChallengeSession(Constants.AES_ECB_KEY);
+    private final byte[] answer = new byte[64];
+
+    @Setup
+    public void setUp() {
+        plain = ByteBuffer.allocate(Long.SIZE / Byte.SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN).putLong(0x123456789ABCDEFL).array();
+        challenge = Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, plain);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, plain);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, challenge);
+    }
+
+    /** The whole answer to CHALLENGE with the Constants helpers */
+    @Benchmark
+    public byte[] challengeResponse() {
+        byte[] resp = Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, challenge);
+        ByteBuffer buffer = ByteBuffer.wrap(resp);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        long littleLong = buffer.getLong();
+        littleLong += Constants.CHALLENGE_ADDATION;
+
+        ByteBuffer buf = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putLong(littleLong);
+        byte[] aes = Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, buf.array());
+
+        byte[] cmd = new byte[aes.length + 2];
+        cmd[Constants.CMD_OFFSET] = Constants.TEMP_RAW_COMMAND_CHLGE_RESP;
+        cmd[Constants.SIZE_OFFSET] = (byte) aes.length;
+        System.arraycopy(aes, 0, cmd, Constants.PAYLOAD_OFFSET, aes.length);
+        return cmd;
+    }
+
+    /** The same answer with the cached ciphers, into a reused buffer */
+    @Benchmark
+    public int sessionAnswer() {
+        return session.answer(challenge, 0, challenge.length, answer, 0);
+    }
+}
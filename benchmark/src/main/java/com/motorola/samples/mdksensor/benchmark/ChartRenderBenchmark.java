@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.ChartProjection;
+import com.motorola.samples.mdksensor.Decimator;
+import com.motorola.samples.mdksensor.TimeSeriesBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chart update of one frame: append a sample, decimate the history to 2160
+ * points and turn them into pixels. hellocharts is an Android library, so
+ * its path is modelled as the app used it: the points copied to PointValue
+ * objects in the List of its Line, then the renderer computing the pixels
+ * of each point into the lines it draws through the viewport. The
+ * SampleChartView path projects the points of the Decimator directly.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChartRenderBenchmark {
+    static final int MAX_POINTS = 2160;
+    static final float WIDTH = 1080;
+    static final float HEIGHT = 384;
+
+    /**
+     * Same layout as lecho.lib.hellocharts.model.PointValue
+     */
+    private static class Point {
+        float x;
+        float y;
+        float originX;
+        float originY;
+        float diffX;
+        float diffY;
+
+        void set(float x, float y) {
+            this.x = x;
+            this.y = y;
+            this.originX = x;
+            this.originY = y;
+            this.diffX = 0;
+            this.diffY = 0;
+        }
+    }
+
+    /**
+     * Same fields as lecho.lib.hellocharts.model.Viewport
+     */
+    private static class Viewport {
+        float left;
+        float top;
+        float right;
+        float bottom;
+
+        void set(Viewport other) {
+            left = other.left;
+            top = other.top;
+            right = other.right;
+            bottom = other.bottom;
+        }
+    }
+
+    @Param({"16384", "1048576"})
+    public int history;
+
+    private TimeSeriesBuffer buffer;
+    private Decimator decimator;
+    private long sequence;
+
+    private Point[] points;
+    private List<Point> values;
+    private float[] rendererLines;
+    private final Viewport maximumViewport = new Viewport();
+    private final Viewport currentViewport = new Viewport();
+
+    private ChartProjection projection;
+
+    @Setup
+    public void setUp() {
+        buffer = new TimeSeriesBuffer(history);
+        for (sequence = 0; sequence < history; sequence++) {
+            buffer.append(sequence * 1000, value(sequence));
+        }
+        decimator = new Decimator(Decimator.Mode.MIN_MAX, MAX_POINTS);
+        decimator.decimate(buffer, 0, Long.MAX_VALUE);
+
+        points = new Point[MAX_POINTS];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point();
+        }
+        values = new ArrayList<>(MAX_POINTS);
+        rendererLines = new float[4 * MAX_POINTS];
+
+        projection = new ChartProjection(MAX_POINTS);
+        projection.setBounds(0, 0, WIDTH, HEIGHT);
+    }
+
+    /** The former MainActivity.updateChartPoints() and LineChartRenderer of hellocharts */
+    @Benchmark
+    public int hellocharts() {
+        buffer.append(sequence * 1000, value(sequence++));
+        int count = decimator.decimate(buffer, 0, Long.MAX_VALUE);
+
+        values.clear();
+        float top = -Float.MAX_VALUE;
+        float bottom = Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Point point = points[i];
+            point.set(decimator.getSequence(i), decimator.getValue(i));
+            values.add(point);
+            top = Math.max(top, point.y);
+            bottom = Math.min(bottom, point.y);
+        }
+        maximumViewport.left = values.get(0).x;
+        maximumViewport.right = values.get(values.size() - 1).x;
+        maximumViewport.top = top * 1.01f;
+        maximumViewport.bottom = bottom * 0.99f;
+        currentViewport.set(maximumViewport);
+
+        float scaleX = WIDTH / (currentViewport.right - currentViewport.left);
+        float scaleY = HEIGHT / (currentViewport.top - currentViewport.bottom);
+        int length = 0;
+        float lastX = 0;
+        float lastY = 0;
+        int index = 0;
+        for (Point point : values) {
+            float x = (point.x - currentViewport.left) * scaleX;
+            float y = HEIGHT - (point.y - currentViewport.bottom) * scaleY;
+            if (index++ > 0) {
+                rendererLines[length++] = lastX;
+                rendererLines[length++] = lastY;
+                rendererLines[length++] = x;
+                rendererLines[length++] = y;
+            }
+            lastX = x;
+            lastY = y;
+        }
+        return length;
+    }
+
+    /** SampleChartView.onDraw() */
+    @Benchmark
+    public int primitive() {
+        buffer.append(sequence * 1000, value(sequence++));
+        int count = decimator.decimate(buffer, 0, Long.MAX_VALUE);
+
+        float min = decimator.getValue(0);
+        float max = min;
+        for (int i = 1; i < count; i++) {
+            float value = decimator.getValue(i);
+            if (value < min) {
+                min = value;
+            } else if (value > max) {
+                max = value;
+            }
+        }
+        projection.setRange(decimator.getSequence(0), decimator.getSequence(count - 1), min, max);
+        return projection.project(decimator, count);
+    }
+
+    private static float value(long sequence) {
+        return 25f + (float) Math.sin(sequence / 500.0);
+    }
+}
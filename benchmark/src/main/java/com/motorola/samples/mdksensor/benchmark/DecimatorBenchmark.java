@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.Decimator;
+import com.motorola.samples.mdksensor.TimeSeriesBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chart update of MainActivity: append a sample to a full history and
+ * decimate all of it to 2160 points, twice a 1080 pixel screen. One
+ * operation is one sample, incremental against decimating from scratch.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DecimatorBenchmark {
+    static final int MAX_POINTS = 2160;
+
+    @Param({"16384", "1048576"})
+    public int history;
+
+    @Param({"MIN_MAX", "LTTB"})
+    public Decimator.Mode mode;
+
+    private TimeSeriesBuffer buffer;
+    private Decimator decimator;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        buffer = new TimeSeriesBuffer(history);
+        for (sequence = 0; sequence < history; sequence++) {
+            buffer.append(sequence * 1000, value(sequence));
+        }
+        decimator = new Decimator(mode, MAX_POINTS);
+        decimator.decimate(buffer, 0, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int appendIncremental() {
+        buffer.append(sequence * 1000, value(sequence++));
+        return decimator.decimate(buffer, 0, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int appendFromScratch() {
+        buffer.append(sequence * 1000, value(sequence++));
+        decimator.reset();
+        return decimator.decimate(buffer, 0, Long.MAX_VALUE);
+    }
+
+    private static float value(long sequence) {
+        return 25f + (float) Math.sin(sequence / 500.0);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.FrameDecoder;
+import com.motorola.samples.mdksensor.FramePool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener fan-out of a received frame. Handler and Message need a Looper and
+ * can not run on a desktop JVM, so this measures the part RawPersonality
+ * does itself: hand one pooled frame to every listener, with reference
+ * counting, against giving each listener its own copy.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FanOutBenchmark {
+    /**
+     * A listener consuming the frame, as the MSG_RAW_DATA handler does
+     */
+    private static class Listener {
+        long sum;
+
+        void onFrame(byte[] data, int length) {
+            sum += data[length - 1];
+        }
+    }
+
+    @Param({"1", "2", "4", "8"})
+    public int listenerCount;
+
+    private final byte[] received = new byte[FrameDecoder.HEADER_SIZE + 4];
+    private final List<Listener> listeners = new ArrayList<>();
+    private FramePool framePool;
+
+    @Setup
+    public void setUp() {
+        framePool = new FramePool(32, FrameDecoder.MAX_FRAME_SIZE);
+        for (int i = 0; i < listenerCount; i++) {
+            listeners.add(new Listener());
+        }
+    }
+
+    /** One pooled frame shared by all listeners, the last one recycles it */
+    @Benchmark
+    public long sharedPooledFrame() {
+        FramePool.Frame frame = framePool.acquire();
+        System.arraycopy(received, 0, frame.data, 0, received.length);
+        frame.length = received.length;
+        frame.retain(listeners.size() - 1);
+
+        long sum = 0;
+        for (int i = 0; i < listeners.size(); i++) {
+            Listener listener = listeners.get(i);
+            listener.onFrame(frame.data, frame.length);
+            sum += listener.sum;
+            frame.release();
+        }
+        return sum;
+    }
+
+    /** A fresh copy of the frame per listener */
+    @Benchmark
+    public long copyPerListener() {
+        long sum = 0;
+        for (int i = 0; i < listeners.size(); i++) {
+            byte[] copy = new byte[received.length];
+            System.arraycopy(received, 0, copy, 0, received.length);
+            Listener listener = listeners.get(i);
+            listener.onFrame(copy, copy.length);
+            sum += listener.sum;
+        }
+        return sum;
+    }
+}
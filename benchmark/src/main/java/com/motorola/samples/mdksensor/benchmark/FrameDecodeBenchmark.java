@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.Constants;
+import com.motorola.samples.mdksensor.DataFrame;
+import com.motorola.samples.mdksensor.FrameDecoder;
+import com.motorola.samples.mdksensor.FramePool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive path of DATA frames: decode the RAW stream and convert the reading
+ * to temperature. One operation is one frame.
+ *
+ * The stream is fed in chunks of readSize bytes, as read() returns it, so
+ * small sizes exercise the reassembly of frames split between reads.
+ * decodePooled is the receive path of RawPersonality; run with the GC
+ * profiler (-prof gc) its gc.alloc.rate.norm shows it allocates nothing
+ * per frame.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FrameDecodeBenchmark {
+    static final int FRAMES = 1024;
+    static final int FRAME_SIZE = FrameDecoder.HEADER_SIZE + 4;
+
+    @Param({"5", "64", "4096"})
+    public int readSize;
+
+    private byte[] stream;
+    private FrameDecoder inPlaceDecoder;
+    private FrameDecoder appDecoder;
+    private FrameDecoder flyweightDecoder;
+    private FrameDecoder pooledDecoder;
+    private final DataFrame dataFrame = new DataFrame();
+    private FramePool framePool;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        stream = new byte[FRAMES * FRAME_SIZE];
+        for (int i = 0; i < FRAMES; i++) {
+            int offset = i * FRAME_SIZE;
+            int data = 3400 + (i & 0xFF);
+            stream[offset] = (byte) (Constants.TEMP_RAW_COMMAND_DATA
+                    | Constants.TEMP_RAW_COMMAND_RESP_MASK);
+            stream[offset + 1] = (byte) Constants.CMD_DATA_SIZE;
+            stream[offset + 2] = (byte) data;
+            stream[offset + 3] = (byte) (data >> 8);
+        }
+
+        framePool = new FramePool(32, FrameDecoder.MAX_FRAME_SIZE);
+        inPlaceDecoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                FrameDecodeBenchmark.this.blackhole.consume(
+                        temperature(buffer, offset + Constants.PAYLOAD_OFFSET));
+            }
+        });
+        flyweightDecoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                if (dataFrame.wrap(buffer, offset, length)) {
+                    FrameDecodeBenchmark.this.blackhole.consume(dataFrame.getTemperature());
+                }
+            }
+        });
+        pooledDecoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                onPooledFrame(buffer, offset, length);
+            }
+        });
+        appDecoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                onAppFrame(buffer, offset, length);
+            }
+        });
+    }
+
+    /** Parse the reading straight from the read buffer */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeInPlace() {
+        feed(inPlaceDecoder);
+    }
+
+    /** Parse and validate through the DataFrame view */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeFlyweight() {
+        feed(flyweightDecoder);
+    }
+
+    /**
+     * Parse as RawPersonality does: copy the frame to a pooled buffer for
+     * the listener, which reads it through the DataFrame view and releases it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodePooled() {
+        feed(pooledDecoder);
+    }
+
+    /**
+     * Parse as the app did before the frame views: copy the frame to a pooled buffer for the
+     * listener, then copy the payload for parseResponse().
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeAsApp() {
+        feed(appDecoder);
+    }
+
+    private void feed(FrameDecoder decoder) {
+        for (int offset = 0; offset < stream.length; offset += readSize) {
+            decoder.decode(stream, offset, Math.min(readSize, stream.length - offset));
+        }
+    }
+
+    private void onPooledFrame(byte[] buffer, int offset, int length) {
+        FramePool.Frame frame = framePool.acquire();
+        System.arraycopy(buffer, offset, frame.data, 0, length);
+        frame.length = length;
+        if (dataFrame.wrap(frame.data, 0, frame.length)) {
+            blackhole.consume(dataFrame.getTemperature());
+        }
+        frame.release();
+    }
+
+    private void onAppFrame(byte[] buffer, int offset, int length) {
+        FramePool.Frame frame = framePool.acquire();
+        System.arraycopy(buffer, offset, frame.data, 0, length);
+        frame.length = length;
+
+        int payloadLength = frame.data[Constants.SIZE_OFFSET] & 0xFF;
+        byte[] payload = new byte[payloadLength];
+        System.arraycopy(frame.data, Constants.PAYLOAD_OFFSET, payload, 0, payloadLength);
+        frame.release();
+        blackhole.consume(temperature(payload, 0));
+    }
+
+    private static double temperature(byte[] payload, int offset) {
+        int dataLow = payload[offset + Constants.CMD_DATA_LOWDATA_OFFSET] & 0xFF;
+        int dataHigh = payload[offset + Constants.CMD_DATA_HIGHDATA_OFFSET] & 0xFF;
+        int data = dataHigh << 8 | dataLow;
+        return ((0 - 0.03) * data) + 128;
+    }
+}
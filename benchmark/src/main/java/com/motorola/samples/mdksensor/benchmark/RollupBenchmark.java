@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.Decimator;
+import com.motorola.samples.mdksensor.RollupPyramid;
+import com.motorola.samples.mdksensor.TimeSeriesBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Zoom over a long history of readings at 10 Hz: a new range of hours to
+ * show in 1080 points, from the raw samples by a Decimator which can not
+ * reuse its buckets, against the rollups. Adding a sample to the rollups
+ * is measured too, it is paid for each reading.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RollupBenchmark {
+    static final int MAX_POINTS = 1080;
+    static final long PERIOD_US = 100000;
+
+    /** Hours of the range */
+    @Param({"1", "24"})
+    public int hours;
+
+    private TimeSeriesBuffer buffer;
+    private Decimator decimator;
+    private RollupPyramid rollups;
+    private long samples;
+    private long sequence;
+    private long zoom;
+    private long visited;
+    private final RollupPyramid.Visitor visitor = new RollupPyramid.Visitor() {
+        @Override
+        public void onBucket(long startUs, long durationUs, int count, float min, float max, double mean) {
+            visited += count;
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        samples = hours * 3600L * 1000000L / PERIOD_US;
+        buffer = new TimeSeriesBuffer((int) samples);
+        rollups = new RollupPyramid(RollupPyramid.DEFAULT_BUCKETS_US, RollupPyramid.DEFAULT_CAPACITY);
+        for (sequence = 0; sequence < samples; sequence++) {
+            buffer.append(sequence * PERIOD_US, value(sequence));
+            rollups.add(sequence * PERIOD_US, value(sequence));
+        }
+        decimator = new Decimator(Decimator.Mode.MIN_MAX, 2 * MAX_POINTS);
+    }
+
+    /** Show the last 50 to 100 % of the samples */
+    @Benchmark
+    public int zoomRaw() {
+        long from = samples / 2 * (zoom++ % 16) / 16;
+        decimator.reset();
+        return decimator.decimate(buffer, from, samples);
+    }
+
+    @Benchmark
+    public int zoomRollups() {
+        long from = samples / 2 * (zoom++ % 16) / 16;
+        return rollups.query(from * PERIOD_US, samples * PERIOD_US, MAX_POINTS, visitor);
+    }
+
+    @Benchmark
+    public long addToRollups() throws IOException {
+        rollups.add(sequence * PERIOD_US, value(sequence++));
+        return sequence;
+    }
+
+    private static float value(long sequence) {
+        return 25f + (float) Math.sin(sequence / 500.0);
+    }
+}
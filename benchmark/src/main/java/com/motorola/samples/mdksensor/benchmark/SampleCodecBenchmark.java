@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.Constants;
+import com.motorola.samples.mdksensor.DataBatchFrame;
+import com.motorola.samples.mdksensor.DataFrame;
+import com.motorola.samples.mdksensor.DataPackedFrame;
+import com.motorola.samples.mdksensor.DeltaVarintDecoder;
+import com.motorola.samples.mdksensor.DeltaVarintEncoder;
+import com.motorola.samples.mdksensor.FrameEncoder;
+import com.motorola.samples.mdksensor.GorillaDecoder;
+import com.motorola.samples.mdksensor.GorillaEncoder;
+import com.motorola.samples.mdksensor.SampleSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Sample encodings: DATA_BATCH against DATA_PACKED on RAW, the keyframed
+ * DeltaVarintEncoder stream, and the GorillaEncoder block of the SessionLog
+ * with temperatures as float bits. One operation is one sample. The bytes per sample of each encoding are printed at the end of
+ * the trial.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SampleCodecBenchmark {
+    static final int SAMPLES = 4096;
+    static final int KEYFRAME_INTERVAL = 256;
+
+    private final long[] ticks = new long[SAMPLES];
+    private final int[] values = new int[SAMPLES];
+    private final int[] temperatureBits = new int[SAMPLES];
+
+    /** Whole frames back to back, as read from RAW */
+    private byte[] batchStream;
+    private int batchLength;
+    private byte[] packedStream;
+    private int packedLength;
+    private byte[] storage;
+    private int storageLength;
+    private byte[] gorilla;
+    private int gorillaLength;
+
+    private final DataBatchFrame batchFrame = new DataBatchFrame();
+    private final DataPackedFrame packedFrame = new DataPackedFrame();
+    private final DeltaVarintEncoder storageEncoder = new DeltaVarintEncoder(KEYFRAME_INTERVAL);
+    private final DeltaVarintDecoder storageDecoder = new DeltaVarintDecoder(KEYFRAME_INTERVAL, 1);
+    private final GorillaEncoder gorillaEncoder = new GorillaEncoder();
+    private final GorillaDecoder gorillaDecoder = new GorillaDecoder();
+    private final int[] deltas = new int[Constants.CMD_DATA_BATCH_MAX_SAMPLES];
+    private final int[] batchValues = new int[Constants.CMD_DATA_BATCH_MAX_SAMPLES];
+    private SampleSink sink;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        sink = new SampleSink() {
+            @Override
+            public void onSample(long timestampUs, int rawData) {
+                blackhole.consume(timestampUs);
+                blackhole.consume(rawData);
+            }
+        };
+
+        /** 1 kHz with a tick of jitter, a slow wave around 25 degree */
+        Random random = new Random(1);
+        long tick = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            tick += 10 + random.nextInt(3) - 1;
+            ticks[i] = tick;
+            values[i] = DataFrame.toRawData(25 + 2 * Math.sin(i / 100.0));
+            temperatureBits[i] = Float.floatToRawIntBits((float) DataFrame.toTemperature(values[i]));
+        }
+
+        batchStream = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE * 2];
+        packedStream = new byte[batchStream.length];
+        storage = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        batchLength = encodeBatches();
+        packedLength = encodePacked();
+        storageLength = encodeStorage();
+        gorilla = new byte[SAMPLES * GorillaEncoder.MAX_SAMPLE_SIZE];
+        gorillaLength = encodeGorilla();
+    }
+
+    @TearDown(Level.Trial)
+    public void printSizes() {
+        System.out.println();
+        System.out.println("bytes/sample DATA " + (double) FrameEncoder.DATA_LENGTH
+                + " DATA_BATCH " + (double) batchLength / SAMPLES
+                + " DATA_PACKED " + (double) packedLength / SAMPLES
+                + " storage " + (double) storageLength / SAMPLES
+                + " gorilla " + (double) gorillaLength / SAMPLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encodeBatch() {
+        return encodeBatches();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encodePacked() {
+        DeltaVarintEncoder encoder = storageEncoder;
+        int length = 0;
+        int start = 0;
+        int samplesLength = 0;
+        int count = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (count == 0) {
+                encoder.reset();
+                start = length;
+                samplesLength = 0;
+            }
+            samplesLength += encoder.encode(packedStream, start + FrameEncoder.DATA_PACKED_SAMPLES_OFFSET
+                    + samplesLength, ticks[i], values[i]);
+            count++;
+            if (count == Constants.CMD_DATA_PACKED_MAX_SAMPLES || i == SAMPLES - 1
+                    || FrameEncoder.DATA_PACKED_MAX_SAMPLES_LENGTH - samplesLength
+                    < DeltaVarintEncoder.MAX_SAMPLE_SIZE) {
+                length += FrameEncoder.encodeDataPacked(packedStream, start, count, samplesLength);
+                count = 0;
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encodeStorage() {
+        storageEncoder.reset();
+        int length = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            length += storageEncoder.encode(storage, length, ticks[i], values[i]);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encodeGorilla() {
+        gorillaEncoder.reset(gorilla, 0);
+        for (int i = 0; i < SAMPLES; i++) {
+            gorillaEncoder.encode(ticks[i], temperatureBits[i]);
+        }
+        return gorillaEncoder.getLength();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void decodeBatch() {
+        for (int offset = 0; offset < batchLength; ) {
+            int length = frameLength(batchStream, offset);
+            batchFrame.wrap(batchStream, offset, length);
+            batchFrame.forEach(sink, offset);
+            offset += length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void decodePacked() {
+        for (int offset = 0; offset < packedLength; ) {
+            int length = frameLength(packedStream, offset);
+            packedFrame.wrap(packedStream, offset, length);
+            packedFrame.forEach(sink, offset);
+            offset += length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int decodeStorage() {
+        storageDecoder.reset();
+        return storageDecoder.decode(storage, 0, storageLength, sink);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int decodeGorilla() {
+        return gorillaDecoder.decode(gorilla, 0, gorillaLength, SAMPLES, sink);
+    }
+
+    private int encodeBatches() {
+        int length = 0;
+        int count = 0;
+        long baseTicks = 0;
+        long lastTicks = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (count == 0) {
+                baseTicks = ticks[i];
+                lastTicks = ticks[i];
+            }
+            deltas[count] = (int) (ticks[i] - lastTicks);
+            batchValues[count++] = values[i];
+            lastTicks = ticks[i];
+            if (count == Constants.CMD_DATA_BATCH_MAX_SAMPLES || i == SAMPLES - 1) {
+                length += FrameEncoder.encodeDataBatch(batchStream, length, baseTicks,
+                        deltas, batchValues, count);
+                count = 0;
+            }
+        }
+        return length;
+    }
+
+    private static int frameLength(byte[] stream, int offset) {
+        return Constants.PAYLOAD_OFFSET + (stream[offset + Constants.SIZE_OFFSET] & 0xFF);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor.benchmark;
+
+import com.motorola.samples.mdksensor.TimeSeriesBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage of the temperature samples shown by the chart. The app keeps a
+ * sliding window in a List of hellocharts PointValue, removing the oldest
+ * from the head. PointValue is in an Android library, so a plain object
+ * with the same two floats stands in for it. The TimeSeriesBuffer which
+ * replaced it is measured against it.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SampleStorageBenchmark {
+    /**
+     * Same layout as lecho.lib.hellocharts.model.PointValue
+     */
+    private static class Point {
+        final float x;
+        final float y;
+
+        Point(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /** 15 is Constants.MAX_SAMPLING_SUM of the app, 1048576 its HISTORY_CAPACITY */
+    @Param({"15", "1024", "1048576"})
+    public int window;
+
+    private List<Point> values;
+    private TimeSeriesBuffer history;
+    private int count;
+    private float maxTop;
+    private float minTop;
+
+    @Setup
+    public void setUp() {
+        values = new ArrayList<>();
+        for (count = 0; count < window; count++) {
+            values.add(new Point(count, 25f));
+        }
+        history = new TimeSeriesBuffer(window);
+        for (int i = 0; i < window; i++) {
+            history.append(i, 25f);
+        }
+        maxTop = 80f;
+        minTop = 70f;
+    }
+
+    /** Add one sample as MainActivity.parseResponse() does */
+    @Benchmark
+    public int addSample() {
+        double temp = 25 + (count & 0x0F) * 0.03;
+        count++;
+        if (count > window && values.size() > 0) {
+            values.remove(0);
+        }
+        values.add(new Point(count, (float) temp));
+
+        if (temp * 1.01f > maxTop) {
+            maxTop = (float) temp * 1.01f;
+        }
+        if (temp * 0.99f < minTop) {
+            minTop = (float) temp * 0.99f;
+        }
+        return values.size();
+    }
+
+    /** Add one sample as MainActivity.onSamples() does */
+    @Benchmark
+    public int appendToHistory() {
+        double temp = 25 + (count & 0x0F) * 0.03;
+        count++;
+        history.append(count, (float) temp);
+
+        if (temp * 1.01f > maxTop) {
+            maxTop = (float) temp * 1.01f;
+        }
+        if (temp * 0.99f < minTop) {
+            minTop = (float) temp * 0.99f;
+        }
+        return history.size();
+    }
+}
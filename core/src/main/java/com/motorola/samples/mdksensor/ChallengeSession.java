@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A class to answer the challenge of the MDK Temperature Sensor protocol:
+ * decrypt the random number, add CHALLENGE_ADDATION, encrypt it back.
+ *
+ * Unlike Constants.getAESECBEncryptor() / getAESECBDecryptor(), the key is
+ * built once and each thread keeps its own initialised ciphers, so no JCE
+ * provider lookup happens once a thread has warmed up.
+ *
+ * AES-ECB is used for illustrative example only. We do not recommend using
+ * AES-ECB in a real application as it is not semantically secure.
+ */
+public class ChallengeSession {
+    private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    private static final int KEY_SIZE = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final int NUMBER_SIZE = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Ciphers and scratch buffers of one thread
+     */
+    private class CipherState {
+        final Cipher encryptor;
+        final Cipher decryptor;
+        final byte[] plain = new byte[BLOCK_SIZE];
+        final byte[] cipherText = new byte[2 * BLOCK_SIZE];
+
+        CipherState() throws GeneralSecurityException {
+            encryptor = Cipher.getInstance(TRANSFORMATION);
+            encryptor.init(Cipher.ENCRYPT_MODE, key);
+            decryptor = Cipher.getInstance(TRANSFORMATION);
+            decryptor.init(Cipher.DECRYPT_MODE, key);
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<CipherState> states = new ThreadLocal<>();
+
+    /**
+     * Session statistics
+     */
+    private long answerCount;
+    private long failureCount;
+    private long totalAnswerNanos;
+    private long maxAnswerNanos;
+
+    /**
+     * Constructor, the key is padded with zero or cut to 16 bytes
+     */
+    public ChallengeSession(String key) {
+        byte[] keyBytes16 = new byte[KEY_SIZE];
+        try {
+            byte[] keyBytes = key.getBytes("UTF-8");
+            System.arraycopy(keyBytes, 0, keyBytes16, 0, Math.min(keyBytes.length, KEY_SIZE));
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        this.key = new SecretKeySpec(keyBytes16, "AES");
+    }
+
+    /** Initialise the ciphers of calling thread ahead of the first challenge */
+    public boolean warmUp() {
+        return null != getState();
+    }
+
+    /**
+     * Write the CHLGE_RESP command answering the challenge cipher text into out
+     * at outOffset. Returns the command length, or -1 if the crypto failed.
+     */
+    public int answer(byte[] challenge, int offset, int length, byte[] out, int outOffset) {
+        long start = System.nanoTime();
+        int ret = -1;
+        CipherState state = getState();
+        if (null != state) {
+            try {
+                int plainLength = state.decryptor.doFinal(challenge, offset, length, state.plain, 0);
+                if (plainLength >= NUMBER_SIZE) {
+                    putLongLE(state.plain, getLongLE(state.plain) + Constants.CHALLENGE_ADDATION);
+                    int cipherLength = state.encryptor.doFinal(state.plain, 0, NUMBER_SIZE,
+                            state.cipherText, 0);
+                    ret = FrameEncoder.encodeChallengeResp(out, outOffset,
+                            state.cipherText, 0, cipherLength);
+                }
+            } catch (GeneralSecurityException e) {
+                /** The cipher state is unknown after failure, start over next time */
+                states.remove();
+                e.printStackTrace();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            if (ret < 0) {
+                failureCount++;
+            } else {
+                answerCount++;
+                totalAnswerNanos += elapsed;
+                if (elapsed > maxAnswerNanos) {
+                    maxAnswerNanos = elapsed;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** As answer() into a new command buffer of exact length, null if failed */
+    public byte[] answer(byte[] challenge, int offset, int length) {
+        byte[] out = new byte[FrameDecoder.HEADER_SIZE + 2 * BLOCK_SIZE];
+        int ret = answer(challenge, offset, length, out, 0);
+        if (ret < 0) {
+            return null;
+        }
+
+        byte[] cmd = new byte[ret];
+        System.arraycopy(out, 0, cmd, 0, ret);
+        return cmd;
+    }
+
+    public synchronized long getAnswerCount() {
+        return answerCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized long getAverageAnswerNanos() {
+        return answerCount == 0 ? 0 : totalAnswerNanos / answerCount;
+    }
+
+    public synchronized long getMaxAnswerNanos() {
+        return maxAnswerNanos;
+    }
+
+    private CipherState getState() {
+        CipherState state = states.get();
+        if (null == state) {
+            try {
+                state = new CipherState();
+                states.set(state);
+            } catch (GeneralSecurityException e) {
+                e.printStackTrace();
+            }
+        }
+        return state;
+    }
+
+    private static long getLongLE(byte[] buffer) {
+        long value = 0;
+        for (int i = NUMBER_SIZE - 1; i >= 0; i--) {
+            value = value << 8 | (buffer[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void putLongLE(byte[] buffer, long value) {
+        for (int i = 0; i < NUMBER_SIZE; i++) {
+            buffer[i] = (byte) (value >> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to project the points of a Decimator to pixels.
+ *
+ * The points become the segments of a polyline in one float array, four
+ * floats a segment, as Canvas.drawLines() takes them. The array is sized
+ * once for the points of the Decimator and reused, so a chart drawn from
+ * it allocates nothing per frame. x is the sequence number of the points,
+ * or any x given with the points, e.g. the time of RollupPyramid buckets.
+ */
+public class ChartProjection {
+    private final float[] lines;
+
+    /** Pixels of the plot area */
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+
+    /** Data shown in the plot area */
+    private double fromX;
+    private double toX;
+    private double minY;
+    private double maxY;
+
+    /**
+     * Constructor, maxPoints as of the Decimator
+     */
+    public ChartProjection(int maxPoints) {
+        if (maxPoints < 2) {
+            throw new IllegalArgumentException("Invalid max points " + maxPoints);
+        }
+        lines = new float[4 * (maxPoints - 1)];
+    }
+
+    public void setBounds(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /** Data range to fit in the bounds, an empty range is centered */
+    public void setRange(double fromX, double toX, double minY, double maxY) {
+        this.fromX = fromX;
+        this.toX = toX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    public float toPixelX(double x) {
+        if (toX <= fromX) {
+            return (left + right) / 2;
+        }
+        return (float) (left + (x - fromX) * (right - left) / (toX - fromX));
+    }
+
+    public float toPixelY(double y) {
+        if (maxY <= minY) {
+            return (top + bottom) / 2;
+        }
+        return (float) (bottom - (y - minY) * (bottom - top) / (maxY - minY));
+    }
+
+    /** Data x under a pixel, for gestures */
+    public double toDataX(float pixelX) {
+        if (right <= left) {
+            return fromX;
+        }
+        return fromX + (pixelX - left) * (toX - fromX) / (right - left);
+    }
+
+    /**
+     * Project the first count points of decimator to segments, returns the
+     * count of floats of getLines() to draw.
+     */
+    public int project(Decimator decimator, int count) {
+        int length = 0;
+        float x = 0;
+        float y = 0;
+        for (int i = 0; i < count && length < lines.length; i++) {
+            float nextX = toPixelX(decimator.getSequence(i));
+            float nextY = toPixelY(decimator.getValue(i));
+            if (i > 0) {
+                lines[length++] = x;
+                lines[length++] = y;
+                lines[length++] = nextX;
+                lines[length++] = nextY;
+            }
+            x = nextX;
+            y = nextY;
+        }
+        return length;
+    }
+
+    /**
+     * Project the first count points of (xs, ys) to segments, returns the
+     * count of floats of getLines() to draw.
+     */
+    public int project(long[] xs, float[] ys, int count) {
+        int length = 0;
+        float x = 0;
+        float y = 0;
+        for (int i = 0; i < count && length < lines.length; i++) {
+            float nextX = toPixelX(xs[i]);
+            float nextY = toPixelY(ys[i]);
+            if (i > 0) {
+                lines[length++] = x;
+                lines[length++] = y;
+                lines[length++] = nextX;
+                lines[length++] = nextY;
+            }
+            x = nextX;
+            y = nextY;
+        }
+        return length;
+    }
+
+    public float[] getLines() {
+        return lines;
+    }
+
+    /**
+     * Write value with one decimal to chars, for Canvas.drawText() without a
+     * String. Returns the count of chars, chars needs 24 of them at most.
+     */
+    public static int formatValue(double value, char[] chars) {
+        long tenths = Math.round(value * 10);
+        int length = 0;
+        if (tenths < 0) {
+            chars[length++] = '-';
+            tenths = -tenths;
+        }
+        long whole = tenths / 10;
+        int digits = 1;
+        for (long rest = whole / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[length + i] = (char) ('0' + whole % 10);
+            whole /= 10;
+        }
+        length += digits;
+        chars[length++] = '.';
+        chars[length++] = (char) ('0' + tenths % 10);
+        return length;
+    }
+}
@@ -50,6 +50,20 @@ public class Constants {
 
     public static final int INVALID_ID = -1;
     public static final int MAX_SAMPLING_SUM = 15;
+    /** Samples kept in memory, 12 bytes each, over a day at 10 Hz */
+    public static final int HISTORY_CAPACITY = 1 << 20;
+    /** Directory of SessionLog in app files, for samples older than the history */
+    public static final String SESSION_LOG_DIR = "session";
+    /** Samples of SessionLog read back into the history on start, the last hour */
+    public static final long SESSION_LOG_READ_BACK_US = 60 * 60 * 1000 * 1000L;
+    /** Window of RollingStatistics of the readings, the last minute or 4096 readings if shorter */
+    public static final int STATISTICS_WINDOW = 4096;
+    public static final long STATISTICS_WINDOW_US = 60 * 1000 * 1000L;
+    public static final long STATISTICS_EMA_US = 10 * 1000 * 1000L;
+    /** Histogram of the quantiles, over the range of the sensor */
+    public static final double STATISTICS_LOW = -40;
+    public static final double STATISTICS_HIGH = 128;
+    public static final double STATISTICS_BIN = 0.1;
 
     public static final int VID_MDK = 0x00000312;
     public static final int VID_DEVELOPER = 0x00000042;
@@ -77,29 +91,65 @@ public class Constants {
     public static final int SIZE_LENGTH = 1;
     public static final int PAYLOAD_OFFSET = SIZE_OFFSET + SIZE_LENGTH;
 
-    public static int CMD_INFO_VERSION_OFFSET = 0;
-    public static int CMD_INFO_VERSION_SIZE = 1;
-    public static int CMD_INFO_RESERVED_OFFSET = CMD_INFO_VERSION_OFFSET + CMD_INFO_VERSION_SIZE;
-    public static int CMD_INFO_RESERVED_SIZE = 1;
-    public static int CMD_INFO_LATENCYLOW_OFFSET = CMD_INFO_RESERVED_OFFSET + CMD_INFO_RESERVED_SIZE;
-    public static int CMD_INFO_LATENCYLOW_SIZE = 1;
-    public static int CMD_INFO_LATENCYHIGH_OFFSET = CMD_INFO_LATENCYLOW_OFFSET + CMD_INFO_LATENCYLOW_SIZE;
-    public static int CMD_INFO_LATENCYHIGH_SIZE = 1;
-    public static int CMD_INFO_NAME_OFFSET = CMD_INFO_LATENCYHIGH_OFFSET + CMD_INFO_LATENCYHIGH_SIZE;
-    public static int CMD_INFO_HEAD_SIZE = CMD_INFO_VERSION_SIZE + CMD_INFO_RESERVED_SIZE
+    public static final int CMD_INFO_VERSION_OFFSET = 0;
+    public static final int CMD_INFO_VERSION_SIZE = 1;
+    public static final int CMD_INFO_RESERVED_OFFSET = CMD_INFO_VERSION_OFFSET + CMD_INFO_VERSION_SIZE;
+    public static final int CMD_INFO_RESERVED_SIZE = 1;
+    public static final int CMD_INFO_LATENCYLOW_OFFSET = CMD_INFO_RESERVED_OFFSET + CMD_INFO_RESERVED_SIZE;
+    public static final int CMD_INFO_LATENCYLOW_SIZE = 1;
+    public static final int CMD_INFO_LATENCYHIGH_OFFSET = CMD_INFO_LATENCYLOW_OFFSET + CMD_INFO_LATENCYLOW_SIZE;
+    public static final int CMD_INFO_LATENCYHIGH_SIZE = 1;
+    public static final int CMD_INFO_NAME_OFFSET = CMD_INFO_LATENCYHIGH_OFFSET + CMD_INFO_LATENCYHIGH_SIZE;
+    public static final int CMD_INFO_HEAD_SIZE = CMD_INFO_VERSION_SIZE + CMD_INFO_RESERVED_SIZE
             + CMD_INFO_LATENCYLOW_SIZE + CMD_INFO_LATENCYHIGH_SIZE;
 
-    public static int CMD_DATA_LOWDATA_OFFSET = 0;
-    public static int CMD_DATA_LOWDATA_SIZE = 1;
-    public static int CMD_DATA_HIGHDATA_OFFSET = CMD_DATA_LOWDATA_OFFSET + CMD_DATA_LOWDATA_SIZE;
-    public static int CMD_DATA_HIGHDATA_SIZE = 1;
-    public static int CMD_DATA_RESERVED_SIZE = 2;
-    public static int CMD_DATA_SIZE = CMD_DATA_LOWDATA_SIZE + CMD_DATA_HIGHDATA_SIZE + CMD_DATA_RESERVED_SIZE;
+    public static final int CMD_DATA_LOWDATA_OFFSET = 0;
+    public static final int CMD_DATA_LOWDATA_SIZE = 1;
+    public static final int CMD_DATA_HIGHDATA_OFFSET = CMD_DATA_LOWDATA_OFFSET + CMD_DATA_LOWDATA_SIZE;
+    public static final int CMD_DATA_HIGHDATA_SIZE = 1;
+    public static final int CMD_DATA_RESERVED_SIZE = 2;
+    public static final int CMD_DATA_SIZE = CMD_DATA_LOWDATA_SIZE + CMD_DATA_HIGHDATA_SIZE + CMD_DATA_RESERVED_SIZE;
 
-    public static  int CMD_CHALLENGE_SIZE = 16;
+    public static final int CMD_CHALLENGE_SIZE = 16;
 
-    public static int CMD_CHLGE_RESP_OFFSET = 0;
-    public static int CMD_CHLGE_RESP_SIZE = 4;
+    public static final int CMD_CHLGE_RESP_OFFSET = 0;
+    public static final int CMD_CHLGE_RESP_SIZE = 4;
+
+    /**
+     * payload of data batch, from firmware of INFO version DATA_BATCH_VERSION:
+     * struct sensor_batch {
+     * uint8_t     count;
+     * uint8_t     reserved;
+     * uint32_t    base_timestamp;   in CMD_DATA_BATCH_TICK_US
+     * struct {
+     *     uint16_t    delta;        to previous sample, in CMD_DATA_BATCH_TICK_US
+     *     uint16_t    data;
+     * } samples[count];
+     * };
+     */
+    public static final int CMD_DATA_BATCH_COUNT_OFFSET = 0;
+    public static final int CMD_DATA_BATCH_TIMESTAMP_OFFSET = 2;
+    public static final int CMD_DATA_BATCH_HEAD_SIZE = 6;
+    public static final int CMD_DATA_BATCH_DELTA_OFFSET = 0;
+    public static final int CMD_DATA_BATCH_DATA_OFFSET = 2;
+    public static final int CMD_DATA_BATCH_SAMPLE_SIZE = 4;
+    public static final int CMD_DATA_BATCH_MAX_SAMPLES = (0xFF - CMD_DATA_BATCH_HEAD_SIZE)
+            / CMD_DATA_BATCH_SAMPLE_SIZE;
+    public static final int CMD_DATA_BATCH_TICK_US = 100;
+
+    /**
+     * payload of packed data, from firmware of INFO version DATA_PACKED_VERSION:
+     * struct sensor_packed {
+     * uint8_t     count;
+     * uint8_t     reserved;
+     * uint8_t     samples[];        DeltaVarintEncoder series, timestamps
+     *                               in CMD_DATA_BATCH_TICK_US, only the
+     *                               first sample is a keyframe
+     * };
+     */
+    public static final int CMD_DATA_PACKED_COUNT_OFFSET = 0;
+    public static final int CMD_DATA_PACKED_HEAD_SIZE = 2;
+    public static final int CMD_DATA_PACKED_MAX_SAMPLES = 0xFF;
 
     public static final int TEMP_RAW_COMMAND_RESP_MASK = 0x80;
     public static final int TEMP_RAW_COMMAND_INVALID = 0x00;
@@ -109,6 +159,28 @@ public class Constants {
     public static final int TEMP_RAW_COMMAND_DATA = 0x04;
     public static final int TEMP_RAW_COMMAND_CHALLENGE = 0x05;
     public static final int TEMP_RAW_COMMAND_CHLGE_RESP = 0x06;
+    public static final int TEMP_RAW_COMMAND_DATA_BATCH = 0x07;
+    public static final int TEMP_RAW_COMMAND_DATA_PACKED = 0x08;
+
+    /**
+     * Firmware reporting this INFO version or later can send DATA_BATCH. The
+     * host asks for it with SENSOR_FLAG_DATA_BATCH in the optional third byte
+     * of ON, older firmware is only sent the two bytes ON.
+     */
+    public static final int DATA_BATCH_VERSION = 2;
+    public static final int SENSOR_COMMAND_FLAGS_SIZE = 0x03;
+    public static final int SENSOR_FLAG_DATA_BATCH = 0x01;
+
+    /**
+     * Firmware reporting this INFO version or later can send DATA_PACKED,
+     * asked for with SENSOR_FLAG_DATA_PACKED in the flags byte of ON.
+     */
+    public static final int DATA_PACKED_VERSION = 3;
+    public static final int SENSOR_FLAG_DATA_PACKED = 0x02;
+
+    /** INFO query is sent again if no response in time */
+    public static final long INFO_REQUEST_TIMEOUT_MS = 500;
+    public static final int INFO_REQUEST_RETRIES = 5;
 
     /** Challenge code for MDK Temperature Sensor protocol */
     public static final int CHALLENGE_ADDATION = 777;
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A flyweight view of DATA_BATCH, several readings of the temperature sensor
+ * with a base timestamp and the time delta of each reading.
+ *
+ * The timestamps are ticks of the mod clock, which is 32 bits and starts
+ * over when the mod is attached again, so forEach() puts the readings on
+ * the host clock: the last one is taken as read when the frame arrived, and
+ * the ones before keep their spacing on the mod clock.
+ */
+public class DataBatchFrame extends RawFrame {
+    @Override
+    protected int getCommandId() {
+        return Constants.TEMP_RAW_COMMAND_DATA_BATCH;
+    }
+
+    @Override
+    protected boolean isValidSize(int size, boolean response) {
+        return isValidBatchSize(size);
+    }
+
+    /** The count shall match the samples the size holds */
+    @Override
+    protected boolean isValidPayload(byte[] buffer, int payloadOffset, int size) {
+        int count = buffer[payloadOffset + Constants.CMD_DATA_BATCH_COUNT_OFFSET] & 0xFF;
+        return (size - Constants.CMD_DATA_BATCH_HEAD_SIZE) / Constants.CMD_DATA_BATCH_SAMPLE_SIZE == count;
+    }
+
+    /** Whether the payload size could hold a batch of at least one sample */
+    public static boolean isValidBatchSize(int size) {
+        int samples = size - Constants.CMD_DATA_BATCH_HEAD_SIZE;
+        return samples >= Constants.CMD_DATA_BATCH_SAMPLE_SIZE
+                && samples % Constants.CMD_DATA_BATCH_SAMPLE_SIZE == 0;
+    }
+
+    public int getCount() {
+        return getUnsignedByte(Constants.CMD_DATA_BATCH_COUNT_OFFSET);
+    }
+
+    /** Timestamp of the batch in CMD_DATA_BATCH_TICK_US */
+    public long getBaseTimestamp() {
+        return getUnsignedShort(Constants.CMD_DATA_BATCH_TIMESTAMP_OFFSET)
+                | (long) getUnsignedShort(Constants.CMD_DATA_BATCH_TIMESTAMP_OFFSET + 2) << 16;
+    }
+
+    /** Time delta of sample index to the previous one, in CMD_DATA_BATCH_TICK_US */
+    public int getDelta(int index) {
+        return getUnsignedShort(sampleOffset(index) + Constants.CMD_DATA_BATCH_DELTA_OFFSET);
+    }
+
+    /** The raw temperature sensor data of sample index */
+    public int getRawData(int index) {
+        return getUnsignedShort(sampleOffset(index) + Constants.CMD_DATA_BATCH_DATA_OFFSET);
+    }
+
+    /** Ticks from the first sample to the last one */
+    public long getSpanTicks() {
+        int count = getCount();
+        long ticks = 0;
+        for (int i = 1; i < count; i++) {
+            ticks += getDelta(i);
+        }
+        return ticks;
+    }
+
+    /**
+     * Feed all samples to sink in order, the frame arrived at arrivalUs of
+     * the host clock. Returns the count of samples.
+     */
+    public int forEach(SampleSink sink, long arrivalUs) {
+        int count = getCount();
+        long timestampUs = arrivalUs - getSpanTicks() * Constants.CMD_DATA_BATCH_TICK_US;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                timestampUs += getDelta(i) * (long) Constants.CMD_DATA_BATCH_TICK_US;
+            }
+            sink.onSample(timestampUs, getRawData(i));
+        }
+        return count;
+    }
+
+    private static int sampleOffset(int index) {
+        return Constants.CMD_DATA_BATCH_HEAD_SIZE + index * Constants.CMD_DATA_BATCH_SAMPLE_SIZE;
+    }
+}
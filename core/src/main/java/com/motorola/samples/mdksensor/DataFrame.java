@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A flyweight view of DATA, one reading of the temperature sensor.
+ */
+public class DataFrame extends RawFrame {
+    /** temperature = TEMPERATURE_SCALE * data + TEMPERATURE_OFFSET */
+    public static final double TEMPERATURE_SCALE = -0.03;
+    public static final double TEMPERATURE_OFFSET = 128;
+
+    @Override
+    protected int getCommandId() {
+        return Constants.TEMP_RAW_COMMAND_DATA;
+    }
+
+    @Override
+    protected boolean isValidSize(int size, boolean response) {
+        return size == Constants.CMD_DATA_SIZE;
+    }
+
+    /** The raw temperature sensor data */
+    public int getRawData() {
+        return getUnsignedShort(Constants.CMD_DATA_LOWDATA_OFFSET);
+    }
+
+    /** The temperature in degree Celsius */
+    public double getTemperature() {
+        return toTemperature(getRawData());
+    }
+
+    public static double toTemperature(int data) {
+        return TEMPERATURE_SCALE * data + TEMPERATURE_OFFSET;
+    }
+
+    /** Raw data of a temperature, the inverse of toTemperature() */
+    public static int toRawData(double temperature) {
+        return (int) Math.round((temperature - TEMPERATURE_OFFSET) / TEMPERATURE_SCALE);
+    }
+}
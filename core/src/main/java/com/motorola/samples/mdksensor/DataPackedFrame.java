@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A flyweight view of DATA_PACKED, several readings of the temperature sensor
+ * compressed by DeltaVarintEncoder. Unlike DATA_BATCH the samples can only be
+ * read in order, through forEach(). As for DATA_BATCH, the readings are put
+ * on the host clock with the last one read when the frame arrived.
+ */
+public class DataPackedFrame extends RawFrame {
+    /** Each frame is a series of its own, the first sample is the keyframe */
+    private final DeltaVarintDecoder decoder =
+            new DeltaVarintDecoder(0, Constants.CMD_DATA_BATCH_TICK_US);
+
+    /** Last timestamp on the mod clock, found by a first pass */
+    private long lastModUs;
+    private final SampleSink lastSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            lastModUs = timestampUs;
+        }
+    };
+
+    /** Moves the second pass to the host clock */
+    private long offsetUs;
+    private SampleSink target;
+    private final SampleSink hostSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            target.onSample(timestampUs + offsetUs, rawData);
+        }
+    };
+
+    @Override
+    protected int getCommandId() {
+        return Constants.TEMP_RAW_COMMAND_DATA_PACKED;
+    }
+
+    @Override
+    protected boolean isValidSize(int size, boolean response) {
+        return isValidPackedSize(size);
+    }
+
+    @Override
+    protected boolean isValidPayload(byte[] buffer, int payloadOffset, int size) {
+        return (buffer[payloadOffset + Constants.CMD_DATA_PACKED_COUNT_OFFSET] & 0xFF) > 0;
+    }
+
+    /** Whether the payload size could hold at least one sample, two bytes the least */
+    public static boolean isValidPackedSize(int size) {
+        return size >= Constants.CMD_DATA_PACKED_HEAD_SIZE + 2;
+    }
+
+    public int getCount() {
+        return getUnsignedByte(Constants.CMD_DATA_PACKED_COUNT_OFFSET);
+    }
+
+    /**
+     * Feed all samples to sink in order, the frame arrived at arrivalUs of
+     * the host clock. Returns the count of samples, or -1 if the samples do
+     * not match the count, in which case none of them is fed.
+     */
+    public int forEach(SampleSink sink, long arrivalUs) {
+        if (decode(lastSink) != getCount()) {
+            return -1;
+        }
+        offsetUs = arrivalUs - lastModUs;
+        target = sink;
+        try {
+            return decode(hostSink);
+        } finally {
+            target = null;
+        }
+    }
+
+    private int decode(SampleSink sink) {
+        decoder.reset();
+        return decoder.decode(getBuffer(),
+                getPayloadOffset() + Constants.CMD_DATA_PACKED_HEAD_SIZE,
+                getPayloadSize() - Constants.CMD_DATA_PACKED_HEAD_SIZE, sink);
+    }
+}
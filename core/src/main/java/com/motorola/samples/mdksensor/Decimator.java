@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to reduce a range of a TimeSeriesBuffer to a bounded number of
+ * points for drawing.
+ *
+ * The samples are grouped into buckets of width samples, aligned to the
+ * sequence numbers, so that when the range grows at its end or slides
+ * forward only the buckets at its ends are computed again. When the range
+ * needs more than the buckets allowed, the width doubles and neighbouring
+ * buckets are merged. MIN_MAX draws the lowest and highest sample of each
+ * bucket, keeping every spike. LTTB (Largest-Triangle-Three-Buckets) draws
+ * the one sample of each bucket which best keeps the shape of the line.
+ */
+public class Decimator {
+    /** How a bucket is drawn */
+    public enum Mode {
+        MIN_MAX,
+        LTTB
+    }
+
+    private final Mode mode;
+    private final int maxBuckets;
+
+    /** Buckets of [bucket * width, (bucket + 1) * width), the first is firstBucket */
+    private long width = 1;
+    private long firstBucket;
+    private int bucketCount;
+    private final int[] counts;
+    private final double[] sums;
+    private final long[] minSequences;
+    private final float[] minValues;
+    private final long[] maxSequences;
+    private final float[] maxValues;
+    /** LTTB point of each bucket, kept while the buckets around it stay the same */
+    private final long[] selectedSequences;
+    private final boolean[] selected;
+
+    /** Range of the buckets */
+    private long from;
+    private long end;
+
+    /** Output points, in order of sequence */
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final float[] values;
+    private int pointCount;
+
+    /**
+     * Decimator statistics
+     */
+    private long samplesScanned;
+
+    /**
+     * Constructor, maxPoints is the most points drawn, e.g. twice the width
+     * of the screen in pixels.
+     */
+    public Decimator(Mode mode, int maxPoints) {
+        if (maxPoints < 4) {
+            throw new IllegalArgumentException("Invalid max points " + maxPoints);
+        }
+        this.mode = mode;
+        maxBuckets = mode == Mode.MIN_MAX ? maxPoints / 2 : maxPoints;
+
+        /** One spare for the bucket which triggers the merge */
+        int capacity = maxBuckets + 1;
+        counts = new int[capacity];
+        sums = new double[capacity];
+        minSequences = new long[capacity];
+        minValues = new float[capacity];
+        maxSequences = new long[capacity];
+        maxValues = new float[capacity];
+        selectedSequences = new long[capacity];
+        selected = new boolean[capacity];
+        sequences = new long[maxPoints];
+        timestamps = new long[maxPoints];
+        values = new float[maxPoints];
+    }
+
+    /** Forget the buckets, the next decimate() computes them all */
+    public void reset() {
+        width = 1;
+        bucketCount = 0;
+        from = 0;
+        end = 0;
+        pointCount = 0;
+    }
+
+    /**
+     * Reduce the samples [from, to) of buffer, cut to the samples it keeps.
+     * Returns the count of points, read them by getSequence(), getTimestamp()
+     * and getValue().
+     */
+    public int decimate(TimeSeriesBuffer buffer, long from, long to) {
+        from = Math.max(from, buffer.getFirstSequence());
+        to = Math.min(to, buffer.getEndSequence());
+        if (to <= from) {
+            reset();
+            return 0;
+        }
+        if (bucketCount == 0 || to < end || from < this.from || from >= end) {
+            /** Not a continuation of the last range */
+            reset();
+            firstBucket = from;
+            this.from = from;
+            this.end = from;
+        }
+
+        /** Drop the buckets before the range, and redo the one it starts in */
+        int drop = 0;
+        while (drop < bucketCount && (firstBucket + drop + 1) * width <= from) {
+            drop++;
+        }
+        if (drop > 0) {
+            removeBuckets(drop);
+        }
+        if (from > this.from && firstBucket * width < from) {
+            long bucketEnd = Math.min((firstBucket + 1) * width, end);
+            clearBucket(0);
+            for (long sequence = from; sequence < bucketEnd; sequence++) {
+                addToBucket(0, sequence, buffer.getValue(sequence));
+            }
+        }
+        this.from = from;
+
+        for (long sequence = end; sequence < to; sequence++) {
+            long bucket = sequence / width;
+            if (bucketCount == 0) {
+                firstBucket = bucket;
+            }
+            int index = (int) (bucket - firstBucket);
+            if (index >= bucketCount) {
+                if (bucketCount == maxBuckets + 1) {
+                    mergeBuckets();
+                    bucket = sequence / width;
+                    index = (int) (bucket - firstBucket);
+                }
+                if (index >= bucketCount) {
+                    clearBucket(bucketCount++);
+                }
+            }
+            addToBucket(index, sequence, buffer.getValue(sequence));
+        }
+        end = to;
+        if (bucketCount > maxBuckets) {
+            mergeBuckets();
+        }
+
+        if (mode == Mode.MIN_MAX) {
+            outputMinMax(buffer);
+        } else {
+            outputLttb(buffer);
+        }
+        return pointCount;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public long getSequence(int index) {
+        return sequences[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public float getValue(int index) {
+        return values[index];
+    }
+
+    /** Samples per bucket */
+    public long getWidth() {
+        return width;
+    }
+
+    /** Samples read from the buffer since created, to check the work done per call */
+    public long getSamplesScanned() {
+        return samplesScanned;
+    }
+
+    private void clearBucket(int index) {
+        counts[index] = 0;
+        sums[index] = 0;
+        selected[index] = false;
+    }
+
+    private void addToBucket(int index, long sequence, float value) {
+        samplesScanned++;
+        if (counts[index] == 0 || value < minValues[index]) {
+            minSequences[index] = sequence;
+            minValues[index] = value;
+        }
+        if (counts[index] == 0 || value > maxValues[index]) {
+            maxSequences[index] = sequence;
+            maxValues[index] = value;
+        }
+        counts[index]++;
+        sums[index] += value;
+        selected[index] = false;
+    }
+
+    private void removeBuckets(int count) {
+        int keep = bucketCount - count;
+        System.arraycopy(counts, count, counts, 0, keep);
+        System.arraycopy(sums, count, sums, 0, keep);
+        System.arraycopy(minSequences, count, minSequences, 0, keep);
+        System.arraycopy(minValues, count, minValues, 0, keep);
+        System.arraycopy(maxSequences, count, maxSequences, 0, keep);
+        System.arraycopy(maxValues, count, maxValues, 0, keep);
+        System.arraycopy(selectedSequences, count, selectedSequences, 0, keep);
+        System.arraycopy(selected, count, selected, 0, keep);
+        bucketCount = keep;
+        firstBucket += count;
+    }
+
+    /** Double the width, merging the buckets in pairs */
+    private void mergeBuckets() {
+        long newFirst = firstBucket / 2;
+        int merged = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            int target = (int) ((firstBucket + i) / 2 - newFirst);
+            if (target == merged) {
+                copyBucket(i, target);
+                merged++;
+            } else {
+                mergeBucket(i, target);
+            }
+            /** LTTB points are chosen again with the new buckets */
+            selected[target] = false;
+        }
+        bucketCount = merged;
+        firstBucket = newFirst;
+        width *= 2;
+    }
+
+    private void copyBucket(int source, int target) {
+        counts[target] = counts[source];
+        sums[target] = sums[source];
+        minSequences[target] = minSequences[source];
+        minValues[target] = minValues[source];
+        maxSequences[target] = maxSequences[source];
+        maxValues[target] = maxValues[source];
+    }
+
+    private void mergeBucket(int source, int target) {
+        if (counts[source] == 0) {
+            return;
+        }
+        if (counts[target] == 0 || minValues[source] < minValues[target]) {
+            minSequences[target] = minSequences[source];
+            minValues[target] = minValues[source];
+        }
+        if (counts[target] == 0 || maxValues[source] > maxValues[target]) {
+            maxSequences[target] = maxSequences[source];
+            maxValues[target] = maxValues[source];
+        }
+        counts[target] += counts[source];
+        sums[target] += sums[source];
+    }
+
+    private void outputMinMax(TimeSeriesBuffer buffer) {
+        pointCount = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            long low = Math.min(minSequences[i], maxSequences[i]);
+            long high = Math.max(minSequences[i], maxSequences[i]);
+            addPoint(buffer, low);
+            if (high != low) {
+                addPoint(buffer, high);
+            }
+        }
+    }
+
+    /**
+     * The first bucket draws the first sample and the last bucket the last
+     * one. Each bucket between draws the sample making the largest triangle
+     * with the point of the bucket before and the average of the bucket
+     * after. A point is kept until a bucket next to it changes.
+     */
+    private void outputLttb(TimeSeriesBuffer buffer) {
+        pointCount = 0;
+        int last = bucketCount - 1;
+        boolean previousChanged = false;
+        for (int i = 0; i <= last; i++) {
+            if (i == 0 || i == last) {
+                selectedSequences[i] = i == 0 ? from : end - 1;
+                selected[i] = false;
+                previousChanged = false;
+            } else if (!selected[i] || previousChanged) {
+                long old = selectedSequences[i];
+                boolean had = selected[i];
+                selectedSequences[i] = selectTriangle(buffer, i);
+                previousChanged = had && old != selectedSequences[i];
+                /** Final once the next bucket is complete, that is not the last */
+                selected[i] = i + 1 < last;
+            } else {
+                previousChanged = false;
+            }
+            addPoint(buffer, selectedSequences[i]);
+        }
+    }
+
+    private long selectTriangle(TimeSeriesBuffer buffer, int index) {
+        double ax = selectedSequences[index - 1];
+        double ay = buffer.getValue(selectedSequences[index - 1]);
+        double cx;
+        double cy;
+        if (index + 1 < bucketCount - 1) {
+            long next = Math.max((firstBucket + index + 1) * width, from);
+            cx = next + (counts[index + 1] - 1) / 2.0;
+            cy = sums[index + 1] / counts[index + 1];
+        } else {
+            cx = end - 1;
+            cy = buffer.getValue(end - 1);
+        }
+
+        long start = Math.max((firstBucket + index) * width, from);
+        long stop = Math.min(start + counts[index], end);
+        long best = start;
+        double bestArea = -1;
+        for (long sequence = start; sequence < stop; sequence++) {
+            samplesScanned++;
+            double area = Math.abs((ax - cx) * (buffer.getValue(sequence) - ay)
+                    - (ax - sequence) * (cy - ay));
+            if (area > bestArea) {
+                bestArea = area;
+                best = sequence;
+            }
+        }
+        return best;
+    }
+
+    private void addPoint(TimeSeriesBuffer buffer, long sequence) {
+        sequences[pointCount] = sequence;
+        timestamps[pointCount] = buffer.getTimestamp(sequence);
+        values[pointCount] = buffer.getValue(sequence);
+        pointCount++;
+    }
+}
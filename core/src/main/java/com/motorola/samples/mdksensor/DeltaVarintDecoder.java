@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to decode samples written by DeltaVarintEncoder with the same
+ * keyframe interval. Decoded timestamps are multiplied by timestampScale, e.g.
+ * to convert ticks to microseconds.
+ */
+public class DeltaVarintDecoder {
+    private final int keyframeInterval;
+    private final long timestampScale;
+    private long count;
+    private long prevTimestamp;
+    private long prevDelta;
+    private int prevValue;
+
+    /** Position after the last varint read */
+    private int position;
+
+    /**
+     * Constructor
+     */
+    public DeltaVarintDecoder(int keyframeInterval, long timestampScale) {
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("Invalid keyframe interval " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.timestampScale = timestampScale;
+    }
+
+    /** Start a new series, the next sample is a keyframe */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Decode all samples in length bytes at offset and feed them to sink.
+     * Returns the count of samples, or -1 if the data ends within a sample.
+     */
+    public int decode(byte[] buffer, int offset, int length, SampleSink sink) {
+        int end = offset + length;
+        int samples = 0;
+        position = offset;
+        while (position < end) {
+            long timestamp;
+            int value;
+            if (DeltaVarintEncoder.isKeyframe(count, keyframeInterval)) {
+                timestamp = getVarint(buffer, end);
+                long zigZag = getVarint(buffer, end);
+                if (position < 0) {
+                    return -1;
+                }
+                value = (int) unZigZag(zigZag);
+                prevDelta = 0;
+            } else {
+                long deltaOfDelta = getVarint(buffer, end);
+                long valueDelta = getVarint(buffer, end);
+                if (position < 0) {
+                    return -1;
+                }
+                prevDelta += unZigZag(deltaOfDelta);
+                timestamp = prevTimestamp + prevDelta;
+                value = (int) (prevValue + unZigZag(valueDelta));
+            }
+
+            prevTimestamp = timestamp;
+            prevValue = value;
+            count++;
+            samples++;
+            sink.onSample(timestamp * timestampScale, value);
+        }
+        return samples;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Read a varint at position, position becomes -1 if it runs past end */
+    private long getVarint(byte[] buffer, int end) {
+        long value = 0;
+        int shift = 0;
+        while (position >= 0) {
+            if (position >= end || shift > 63) {
+                position = -1;
+                break;
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        return 0;
+    }
+}
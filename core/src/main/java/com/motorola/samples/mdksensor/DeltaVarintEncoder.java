@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to compress a series of (timestamp, value) samples.
+ *
+ * Timestamps are stored as the zig-zag varint of their delta-of-delta and
+ * values as the zig-zag varint of their delta, so a steady sample rate and a
+ * slowly changing temperature take one byte each. Every keyframeInterval
+ * samples a keyframe stores both in full, so a reader can start decoding at
+ * any keyframe. The DeltaVarintDecoder shall use the same interval.
+ */
+public class DeltaVarintEncoder {
+    /** Worst case bytes of one sample: 64 bit timestamp and 32 bit value */
+    public static final int MAX_SAMPLE_SIZE = 10 + 5;
+
+    private final int keyframeInterval;
+    private long count;
+    private long prevTimestamp;
+    private long prevDelta;
+    private int prevValue;
+
+    /**
+     * Constructor, keyframeInterval 0 makes only the first sample a keyframe
+     */
+    public DeltaVarintEncoder(int keyframeInterval) {
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("Invalid keyframe interval " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /** Start a new series, the next sample is a keyframe */
+    public void reset() {
+        count = 0;
+    }
+
+    /** Whether the next sample will be a keyframe */
+    public boolean isKeyframeNext() {
+        return isKeyframe(count, keyframeInterval);
+    }
+
+    /**
+     * Write a sample at offset of buffer, which shall have MAX_SAMPLE_SIZE
+     * bytes left. Returns the bytes written. timestamp shall not decrease.
+     */
+    public int encode(byte[] buffer, int offset, long timestamp, int value) {
+        int position = offset;
+        if (isKeyframe(count, keyframeInterval)) {
+            position = putVarint(buffer, position, timestamp);
+            position = putVarint(buffer, position, zigZag(value));
+            prevDelta = 0;
+        } else {
+            long delta = timestamp - prevTimestamp;
+            position = putVarint(buffer, position, zigZag(delta - prevDelta));
+            position = putVarint(buffer, position, zigZag((long) value - prevValue));
+            prevDelta = delta;
+        }
+
+        prevTimestamp = timestamp;
+        prevValue = value;
+        count++;
+        return position - offset;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    static boolean isKeyframe(long index, int keyframeInterval) {
+        return index == 0 || (keyframeInterval > 0 && index % keyframeInterval == 0);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /** Write value 7 bits per byte, low bits first, returns the new offset */
+    static int putVarint(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+}
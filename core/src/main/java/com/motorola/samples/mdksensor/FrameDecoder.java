@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to split the RAW byte stream into [cmd][size][payload] frames.
+ *
+ * A single read from RAW I/O may carry a part of frame, or several frames
+ * back to back. The decoder keeps the incomplete frame between calls, and
+ * skips bytes which can not be a frame header to get synchronised again.
+ * Only frames of one direction are decoded: responses from mod device on
+ * the receive path of host, or commands from host for the simulator, so
+ * a stray byte of the other direction does not start a bogus frame.
+ */
+public class FrameDecoder {
+    public static final int HEADER_SIZE = Constants.CMD_LENGTH + Constants.SIZE_LENGTH;
+    public static final int MAX_PAYLOAD_SIZE = 0xFF;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_PAYLOAD_SIZE;
+
+    /**
+     * Callback for each complete frame. The buffer is only valid during the call.
+     */
+    public interface Callback {
+        void onFrame(byte[] buffer, int offset, int length);
+    }
+
+    private final Callback callback;
+    private final boolean commands;
+
+    /** Incomplete frame carried over to next decode() */
+    private final byte[] pending = new byte[MAX_FRAME_SIZE];
+    private int pendingLength;
+
+    /**
+     * Decoder statistics
+     */
+    private long frameCount;
+    private long skippedBytes;
+
+    /**
+     * Constructor of the decoder of responses from mod device
+     */
+    public FrameDecoder(Callback callback) {
+        this(callback, false);
+    }
+
+    /**
+     * Constructor, commands is true to decode the commands from host
+     * instead of the responses from mod device.
+     */
+    public FrameDecoder(Callback callback, boolean commands) {
+        this.callback = callback;
+        this.commands = commands;
+    }
+
+    /** Feed the bytes just read from RAW I/O */
+    public void decode(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            if (pendingLength > 0) {
+                offset = fillPending(data, offset, end);
+                continue;
+            }
+
+            /** Decode in place as long as the whole frame is in the buffer */
+            int remain = end - offset;
+            if (remain < HEADER_SIZE) {
+                savePending(data, offset, remain);
+                break;
+            }
+
+            int cmd = data[offset + Constants.CMD_OFFSET] & 0xFF;
+            int size = data[offset + Constants.SIZE_OFFSET] & 0xFF;
+            if (!accepts(cmd, size)) {
+                offset++;
+                skippedBytes++;
+                continue;
+            }
+
+            int frameLength = HEADER_SIZE + size;
+            if (remain < frameLength) {
+                savePending(data, offset, remain);
+                break;
+            }
+
+            emit(data, offset, frameLength);
+            offset += frameLength;
+        }
+    }
+
+    /** Drop the incomplete frame, e.g. when RAW I/O reopened */
+    public void reset() {
+        pendingLength = 0;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Count of bytes dropped to get synchronised with frame header */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /** Bytes buffered for the incomplete frame */
+    public int getPendingLength() {
+        return pendingLength;
+    }
+
+    /** Check whether the bytes could be a frame header of the decoded direction */
+    private boolean accepts(int cmd, int size) {
+        boolean response = (cmd & Constants.TEMP_RAW_COMMAND_RESP_MASK) != 0;
+        return response != commands && isValidHeader(cmd, size);
+    }
+
+    /**
+     * Check whether the bytes could be a frame header. Responses have the
+     * TEMP_RAW_COMMAND_RESP_MASK bit set, and their payload size shall match
+     * the protocol exactly: ON and OFF are acknowledged without payload.
+     * Commands from host, e.g. read by the simulator, have no mask and only
+     * INFO, ON, OFF and CHLGE_RESP are sent by host.
+     */
+    public static boolean isValidHeader(int cmd, int size) {
+        boolean response = (cmd & Constants.TEMP_RAW_COMMAND_RESP_MASK) != 0;
+        switch (cmd & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF) {
+            case Constants.TEMP_RAW_COMMAND_INFO:
+                return response ? size >= Constants.CMD_INFO_HEAD_SIZE : size == 0;
+            case Constants.TEMP_RAW_COMMAND_DATA:
+                return response && size == Constants.CMD_DATA_SIZE;
+            case Constants.TEMP_RAW_COMMAND_CHALLENGE:
+                return response && size == Constants.CMD_CHALLENGE_SIZE;
+            case Constants.TEMP_RAW_COMMAND_DATA_BATCH:
+                return response && DataBatchFrame.isValidBatchSize(size);
+            case Constants.TEMP_RAW_COMMAND_DATA_PACKED:
+                return response && DataPackedFrame.isValidPackedSize(size);
+            case Constants.TEMP_RAW_COMMAND_ON:
+                return response ? size == 0 : size == Constants.SENSOR_COMMAND_SIZE
+                        || size == Constants.SENSOR_COMMAND_FLAGS_SIZE;
+            case Constants.TEMP_RAW_COMMAND_OFF:
+                return size == 0;
+            case Constants.TEMP_RAW_COMMAND_CHLGE_RESP:
+                /** From host, the cipher text of the challenge, whole AES blocks */
+                return response ? size == Constants.CMD_CHLGE_RESP_SIZE
+                        : size > 0 && size % Constants.CMD_CHALLENGE_SIZE == 0;
+            default:
+                return false;
+        }
+    }
+
+    private void savePending(byte[] data, int offset, int length) {
+        System.arraycopy(data, offset, pending, 0, length);
+        pendingLength = length;
+    }
+
+    /** Complete the pending frame with incoming bytes, returns new offset */
+    private int fillPending(byte[] data, int offset, int end) {
+        if (pendingLength < HEADER_SIZE) {
+            pending[pendingLength++] = data[offset++];
+            if (pendingLength < HEADER_SIZE) {
+                return offset;
+            }
+        }
+
+        int cmd = pending[Constants.CMD_OFFSET] & 0xFF;
+        int size = pending[Constants.SIZE_OFFSET] & 0xFF;
+        if (!accepts(cmd, size)) {
+            /** Slide one byte to look for the next header */
+            skippedBytes++;
+            pendingLength--;
+            System.arraycopy(pending, 1, pending, 0, pendingLength);
+            return offset;
+        }
+
+        int frameLength = HEADER_SIZE + size;
+        int copy = Math.min(frameLength - pendingLength, end - offset);
+        System.arraycopy(data, offset, pending, pendingLength, copy);
+        pendingLength += copy;
+        offset += copy;
+
+        if (pendingLength == frameLength) {
+            pendingLength = 0;
+            emit(pending, 0, frameLength);
+        }
+        return offset;
+    }
+
+    private void emit(byte[] buffer, int offset, int length) {
+        frameCount++;
+        callback.onFrame(buffer, offset, length);
+    }
+}
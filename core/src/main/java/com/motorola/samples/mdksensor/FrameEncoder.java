@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * Encoders of RAW frames [cmd][size][payload]. Each writes one frame into the
+ * given buffer at offset and returns the frame length, so the caller can reuse
+ * its buffer for the next frame. Frames from mod device, used by the
+ * simulator, have TEMP_RAW_COMMAND_RESP_MASK set.
+ */
+public class FrameEncoder {
+    public static final int INFO_LENGTH = FrameDecoder.HEADER_SIZE;
+    public static final int ON_LENGTH = FrameDecoder.HEADER_SIZE + Constants.SENSOR_COMMAND_SIZE;
+    public static final int ON_FLAGS_LENGTH = FrameDecoder.HEADER_SIZE + Constants.SENSOR_COMMAND_FLAGS_SIZE;
+    public static final int OFF_LENGTH = FrameDecoder.HEADER_SIZE;
+    public static final int DATA_LENGTH = FrameDecoder.HEADER_SIZE + Constants.CMD_DATA_SIZE;
+    public static final int CHALLENGE_LENGTH = FrameDecoder.HEADER_SIZE + Constants.CMD_CHALLENGE_SIZE;
+    public static final int CHLGE_RESULT_LENGTH = FrameDecoder.HEADER_SIZE + Constants.CMD_CHLGE_RESP_SIZE;
+
+    /** Where the samples of DATA_PACKED start, relative to the frame */
+    public static final int DATA_PACKED_SAMPLES_OFFSET = FrameDecoder.HEADER_SIZE
+            + Constants.CMD_DATA_PACKED_HEAD_SIZE;
+    /** Most bytes of encoded samples in a DATA_PACKED */
+    public static final int DATA_PACKED_MAX_SAMPLES_LENGTH = FrameDecoder.MAX_PAYLOAD_SIZE
+            - Constants.CMD_DATA_PACKED_HEAD_SIZE;
+
+    private FrameEncoder() {
+    }
+
+    /** INFO query from host */
+    public static int encodeInfo(byte[] buffer, int offset) {
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_INFO, 0);
+    }
+
+    /** ON from host, sample every intervalMs */
+    public static int encodeOn(byte[] buffer, int offset, int intervalMs) {
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        buffer[payload] = (byte) intervalMs;
+        buffer[payload + 1] = (byte) (intervalMs >> 8);
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_ON, Constants.SENSOR_COMMAND_SIZE);
+    }
+
+    /**
+     * ON from host with flags, e.g. SENSOR_FLAG_DATA_BATCH. Only for firmware
+     * of INFO version DATA_BATCH_VERSION or later.
+     */
+    public static int encodeOn(byte[] buffer, int offset, int intervalMs, int flags) {
+        encodeOn(buffer, offset, intervalMs);
+        buffer[offset + Constants.PAYLOAD_OFFSET + Constants.SENSOR_COMMAND_SIZE] = (byte) flags;
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_ON, Constants.SENSOR_COMMAND_FLAGS_SIZE);
+    }
+
+    /** OFF from host */
+    public static int encodeOff(byte[] buffer, int offset) {
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_OFF, 0);
+    }
+
+    /** CHLGE_RESP from host, with the encrypted answer */
+    public static int encodeChallengeResp(byte[] buffer, int offset,
+                                          byte[] cipher, int cipherOffset, int cipherLength) {
+        int length = putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_CHLGE_RESP, cipherLength);
+        System.arraycopy(cipher, cipherOffset, buffer, offset + Constants.PAYLOAD_OFFSET, cipherLength);
+        return length;
+    }
+
+    /** INFO response from mod device with struct sensor_attr */
+    public static int encodeInfoResponse(byte[] buffer, int offset, int version, int maxLatency,
+                                         byte[] name, int nameOffset, int nameLength) {
+        int length = putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_INFO
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, Constants.CMD_INFO_HEAD_SIZE + nameLength + 1);
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        buffer[payload + Constants.CMD_INFO_VERSION_OFFSET] = (byte) version;
+        buffer[payload + Constants.CMD_INFO_RESERVED_OFFSET] = 0;
+        buffer[payload + Constants.CMD_INFO_LATENCYLOW_OFFSET] = (byte) maxLatency;
+        buffer[payload + Constants.CMD_INFO_LATENCYHIGH_OFFSET] = (byte) (maxLatency >> 8);
+        System.arraycopy(name, nameOffset, buffer, payload + Constants.CMD_INFO_NAME_OFFSET, nameLength);
+        buffer[payload + Constants.CMD_INFO_NAME_OFFSET + nameLength] = 0;
+        return length;
+    }
+
+    /** DATA from mod device */
+    public static int encodeData(byte[] buffer, int offset, int rawData) {
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        buffer[payload + Constants.CMD_DATA_LOWDATA_OFFSET] = (byte) rawData;
+        buffer[payload + Constants.CMD_DATA_HIGHDATA_OFFSET] = (byte) (rawData >> 8);
+        buffer[payload + Constants.CMD_DATA_HIGHDATA_OFFSET + 1] = 0;
+        buffer[payload + Constants.CMD_DATA_HIGHDATA_OFFSET + 2] = 0;
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_DATA
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, Constants.CMD_DATA_SIZE);
+    }
+
+    /**
+     * DATA_BATCH from mod device with count samples. deltas are the ticks to
+     * the previous sample, the first one to baseTicks.
+     */
+    public static int encodeDataBatch(byte[] buffer, int offset, long baseTicks,
+                                      int[] deltas, int[] data, int count) {
+        if (count < 1 || count > Constants.CMD_DATA_BATCH_MAX_SAMPLES) {
+            throw new IllegalArgumentException("Invalid batch count " + count);
+        }
+        int length = putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_DATA_BATCH
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, Constants.CMD_DATA_BATCH_HEAD_SIZE
+                + count * Constants.CMD_DATA_BATCH_SAMPLE_SIZE);
+
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        buffer[payload + Constants.CMD_DATA_BATCH_COUNT_OFFSET] = (byte) count;
+        buffer[payload + Constants.CMD_DATA_BATCH_COUNT_OFFSET + 1] = 0;
+        for (int i = 0; i < 4; i++) {
+            buffer[payload + Constants.CMD_DATA_BATCH_TIMESTAMP_OFFSET + i] = (byte) (baseTicks >> (8 * i));
+        }
+        int sample = payload + Constants.CMD_DATA_BATCH_HEAD_SIZE;
+        for (int i = 0; i < count; i++) {
+            buffer[sample + Constants.CMD_DATA_BATCH_DELTA_OFFSET] = (byte) deltas[i];
+            buffer[sample + Constants.CMD_DATA_BATCH_DELTA_OFFSET + 1] = (byte) (deltas[i] >> 8);
+            buffer[sample + Constants.CMD_DATA_BATCH_DATA_OFFSET] = (byte) data[i];
+            buffer[sample + Constants.CMD_DATA_BATCH_DATA_OFFSET + 1] = (byte) (data[i] >> 8);
+            sample += Constants.CMD_DATA_BATCH_SAMPLE_SIZE;
+        }
+        return length;
+    }
+
+    /**
+     * DATA_PACKED from mod device. The count samples shall already be encoded
+     * at offset + DATA_PACKED_SAMPLES_OFFSET by a DeltaVarintEncoder reset
+     * before the first one, taking samplesLength bytes.
+     */
+    public static int encodeDataPacked(byte[] buffer, int offset, int count, int samplesLength) {
+        if (count < 1 || count > Constants.CMD_DATA_PACKED_MAX_SAMPLES) {
+            throw new IllegalArgumentException("Invalid packed count " + count);
+        }
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        buffer[payload + Constants.CMD_DATA_PACKED_COUNT_OFFSET] = (byte) count;
+        buffer[payload + Constants.CMD_DATA_PACKED_COUNT_OFFSET + 1] = 0;
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_DATA_PACKED
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, Constants.CMD_DATA_PACKED_HEAD_SIZE + samplesLength);
+    }
+
+    /** CHALLENGE from mod device, with the encrypted random number */
+    public static int encodeChallenge(byte[] buffer, int offset,
+                                      byte[] cipher, int cipherOffset, int cipherLength) {
+        int length = putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_CHALLENGE
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, cipherLength);
+        System.arraycopy(cipher, cipherOffset, buffer, offset + Constants.PAYLOAD_OFFSET, cipherLength);
+        return length;
+    }
+
+    /** CHLGE_RESP from mod device, status 0 if challenge passed */
+    public static int encodeChallengeResult(byte[] buffer, int offset, int status) {
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        for (int i = 0; i < Constants.CMD_CHLGE_RESP_SIZE; i++) {
+            buffer[payload + i] = 0;
+        }
+        buffer[payload + Constants.CMD_CHLGE_RESP_OFFSET] = (byte) status;
+        return putHeader(buffer, offset, Constants.TEMP_RAW_COMMAND_CHLGE_RESP
+                | Constants.TEMP_RAW_COMMAND_RESP_MASK, Constants.CMD_CHLGE_RESP_SIZE);
+    }
+
+    private static int putHeader(byte[] buffer, int offset, int cmd, int size) {
+        if (size > FrameDecoder.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload too large " + size);
+        }
+        buffer[offset + Constants.CMD_OFFSET] = (byte) cmd;
+        buffer[offset + Constants.SIZE_OFFSET] = (byte) size;
+        return FrameDecoder.HEADER_SIZE + size;
+    }
+}
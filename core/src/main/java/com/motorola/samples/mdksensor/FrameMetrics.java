@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * Metrics of chart updates paced by the display refresh.
+ *
+ * An update becomes pending when new readings arrive and is drawn by the
+ * next frame callback. Frames which went by while an update was pending
+ * are counted as dropped, and a frame whose work ends after the next vsync
+ * is counted as slow. Times are System.nanoTime(), as Choreographer uses.
+ *
+ * Not thread safe, all calls are from the UI thread.
+ */
+public class FrameMetrics {
+    /** Refresh period of a 60 Hz display, in case the display has none */
+    public static final long DEFAULT_REFRESH_PERIOD_NANOS = 1000000000L / 60;
+
+    private final long refreshPeriodNanos;
+
+    private long frameCount;
+    private long sampleCount;
+    private long droppedFrames;
+    private long maxDroppedFrames;
+    private long slowFrames;
+    private long totalWorkNanos;
+    private long maxWorkNanos;
+
+    /**
+     * Constructor
+     */
+    public FrameMetrics(long refreshPeriodNanos) {
+        if (refreshPeriodNanos <= 0) {
+            throw new IllegalArgumentException("Invalid refresh period " + refreshPeriodNanos);
+        }
+        this.refreshPeriodNanos = refreshPeriodNanos;
+    }
+
+    /**
+     * Record a frame which drew samples pending since pendingSinceNanos, in
+     * the callback of vsync frameTimeNanos, working from startNanos to endNanos.
+     */
+    public void onFrame(long pendingSinceNanos, long frameTimeNanos,
+                        long startNanos, long endNanos, int samples) {
+        frameCount++;
+        sampleCount += samples;
+
+        /** Vsyncs after the first one since pending, which should have drawn it */
+        long dropped = Math.max(0, frameTimeNanos - pendingSinceNanos - 1) / refreshPeriodNanos;
+        droppedFrames += dropped;
+        if (dropped > maxDroppedFrames) {
+            maxDroppedFrames = dropped;
+        }
+
+        if (endNanos - frameTimeNanos > refreshPeriodNanos) {
+            slowFrames++;
+        }
+        long work = endNanos - startNanos;
+        totalWorkNanos += work;
+        if (work > maxWorkNanos) {
+            maxWorkNanos = work;
+        }
+    }
+
+    public void reset() {
+        frameCount = 0;
+        sampleCount = 0;
+        droppedFrames = 0;
+        maxDroppedFrames = 0;
+        slowFrames = 0;
+        totalWorkNanos = 0;
+        maxWorkNanos = 0;
+    }
+
+    public long getRefreshPeriodNanos() {
+        return refreshPeriodNanos;
+    }
+
+    /** Frames which drew an update */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Samples coalesced into a frame */
+    public double getAverageSamplesPerFrame() {
+        return frameCount > 0 ? (double) sampleCount / frameCount : 0;
+    }
+
+    /** Frames gone by with an update pending */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getMaxDroppedFrames() {
+        return maxDroppedFrames;
+    }
+
+    /** Frames finished after the next vsync */
+    public long getSlowFrames() {
+        return slowFrames;
+    }
+
+    /** Time to draw an update */
+    public long getAverageWorkNanos() {
+        return frameCount > 0 ? totalWorkNanos / frameCount : 0;
+    }
+
+    public long getMaxWorkNanos() {
+        return maxWorkNanos;
+    }
+}
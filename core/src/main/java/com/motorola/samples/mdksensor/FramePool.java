@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to represent a fixed size pool of RAW data buffers.
+ *
+ * The receive thread acquires a frame, fills it and hands the ownership to
+ * the listeners. The last listener releases the frame once it is consumed,
+ * which puts the buffer back to the pool for the next read. So no buffer is
+ * allocated on the receive path once the pool is warmed up.
+ */
+public class FramePool {
+    /**
+     * A buffer for one chunk of RAW data
+     */
+    public static class Frame {
+        public final byte[] data;
+        public int length;
+
+        /** Index of RAW interface the data came from */
+        public int rawInterface;
+
+        /** Host time the data was received, in microseconds */
+        public long timestampUs;
+
+        /** Owning pool, null if allocated while the pool was exhausted */
+        private final FramePool pool;
+        private int owners;
+
+        private Frame(FramePool pool, int size) {
+            this.pool = pool;
+            this.data = new byte[size];
+        }
+
+        /** Add extra owners, each of them shall call release() */
+        public synchronized void retain(int count) {
+            owners += count;
+        }
+
+        /** Give up the ownership, the last owner returns the buffer to pool */
+        public void release() {
+            synchronized (this) {
+                if (owners <= 0) {
+                    throw new IllegalStateException("Frame released more than acquired");
+                }
+                if (--owners > 0) {
+                    return;
+                }
+            }
+
+            if (null != pool) {
+                pool.recycle(this);
+            }
+        }
+    }
+
+    private final int bufferSize;
+    private final Frame[] free;
+    private int freeCount;
+
+    /**
+     * Pool statistics
+     */
+    private long acquireCount;
+    private long releaseCount;
+    private long exhaustedCount;
+
+    /**
+     * Constructor
+     */
+    public FramePool(int capacity, int bufferSize) {
+        this.bufferSize = bufferSize;
+        free = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            free[i] = new Frame(this, bufferSize);
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * Take a frame from pool, the caller becomes the only owner. If the pool is
+     * exhausted a standalone frame is allocated, so that no data get lost.
+     */
+    public Frame acquire() {
+        Frame frame = null;
+        synchronized (this) {
+            acquireCount++;
+            if (freeCount > 0) {
+                frame = free[--freeCount];
+                free[freeCount] = null;
+            } else {
+                exhaustedCount++;
+            }
+        }
+
+        if (null == frame) {
+            frame = new Frame(null, bufferSize);
+        }
+        frame.length = 0;
+        frame.rawInterface = 0;
+        frame.owners = 1;
+        return frame;
+    }
+
+    /** Put the released frame back to pool */
+    private synchronized void recycle(Frame frame) {
+        releaseCount++;
+        free[freeCount++] = frame;
+    }
+
+    public int getCapacity() {
+        return free.length;
+    }
+
+    public synchronized int getAvailable() {
+        return freeCount;
+    }
+
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public synchronized long getReleaseCount() {
+        return releaseCount;
+    }
+
+    /** Count of acquire() calls which found the pool empty */
+    public synchronized long getExhaustedCount() {
+        return exhaustedCount;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to decompress a block of samples written by GorillaEncoder.
+ *
+ * The block does not know its count of samples, the bits of the last
+ * byte are padding, so decode() takes it from the block header.
+ */
+public class GorillaDecoder {
+    private byte[] buffer;
+    private int offset;
+    private long bitPosition;
+    private long bitLimit;
+
+    /**
+     * Decode count samples from length bytes at offset of buffer to sink.
+     * Returns count, or -1 if the bytes end before count samples.
+     */
+    public int decode(byte[] buffer, int offset, int length, int count, SampleSink sink) {
+        this.buffer = buffer;
+        this.offset = offset;
+        bitPosition = 0;
+        bitLimit = (long) length * 8;
+
+        long timestamp = 0;
+        long delta = 0;
+        int value = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                if (bitLimit < 96) {
+                    return -1;
+                }
+                timestamp = readBits(64);
+                value = (int) readBits(32);
+            } else {
+                /** Size prefix of delta-of-delta, up to 4 ones */
+                int ones = 0;
+                while (ones < 4) {
+                    if (bitPosition >= bitLimit) {
+                        return -1;
+                    }
+                    if (readBits(1) == 0) {
+                        break;
+                    }
+                    ones++;
+                }
+                long deltaOfDelta;
+                switch (ones) {
+                    case 0:
+                        deltaOfDelta = 0;
+                        break;
+                    case 1:
+                        deltaOfDelta = readChecked(7) - 63;
+                        break;
+                    case 2:
+                        deltaOfDelta = readChecked(9) - 255;
+                        break;
+                    case 3:
+                        deltaOfDelta = readChecked(12) - 2047;
+                        break;
+                    default:
+                        deltaOfDelta = readChecked(64);
+                        break;
+                }
+                if (bitPosition > bitLimit) {
+                    return -1;
+                }
+                delta += deltaOfDelta;
+                timestamp += delta;
+
+                if (readChecked(1) != 0) {
+                    if (readChecked(1) != 0) {
+                        leading = (int) readChecked(5);
+                        trailing = 32 - leading - ((int) readChecked(5) + 1);
+                    }
+                    int xor = (int) readChecked(32 - leading - trailing) << trailing;
+                    value ^= xor;
+                }
+                if (bitPosition > bitLimit) {
+                    return -1;
+                }
+            }
+            sink.onSample(timestamp, value);
+        }
+        return count;
+    }
+
+    /** readBits() past the limit reads 0, and the caller checks the position */
+    private long readChecked(int count) {
+        if (bitPosition + count > bitLimit) {
+            bitPosition += count;
+            return 0;
+        }
+        return readBits(count);
+    }
+
+    /** Read count bits, from the highest */
+    private long readBits(int count) {
+        long bits = 0;
+        while (count > 0) {
+            int index = offset + (int) (bitPosition >>> 3);
+            int used = (int) (bitPosition & 7);
+            int n = Math.min(8 - used, count);
+            int chunk = ((buffer[index] & 0xFF) >>> (8 - used - n)) & ((1 << n) - 1);
+            bits = (bits << n) | chunk;
+            count -= n;
+            bitPosition += n;
+        }
+        return bits;
+    }
+}
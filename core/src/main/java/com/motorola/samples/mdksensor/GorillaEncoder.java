@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to compress a block of (timestamp, value) samples into bits, in
+ * the way of the Gorilla time series database.
+ *
+ * The first sample is stored in full, 64 bits of timestamp and 32 of value.
+ * Each next timestamp stores its delta-of-delta with a prefix of its size:
+ * '0' for 0, '10' and 7 bits, '110' and 9 bits, '1110' and 12 bits, else
+ * '1111' and 64 bits. Each next value stores its XOR with the previous one:
+ * '0' if equal, '10' and the meaningful bits if they fit in the window of
+ * leading and trailing zeros of the previous XOR, else '11', 5 bits of
+ * leading zeros, 5 bits of length - 1 and the meaningful bits. A steady
+ * rate takes a bit a timestamp, an unchanged value a bit, and a reading
+ * changing in the low bits of the mantissa about a dozen.
+ *
+ * The bits of the block are written to the buffer as the samples come, so
+ * the block is readable by GorillaDecoder at any time with the count of
+ * samples written.
+ */
+public class GorillaEncoder {
+    /** Worst case bits of one sample after the first */
+    public static final int MAX_SAMPLE_BITS = 4 + 64 + 2 + 5 + 5 + 32;
+    /** Bytes to leave for one more sample, with the byte in progress */
+    public static final int MAX_SAMPLE_SIZE = (MAX_SAMPLE_BITS + 7) / 8 + 1;
+
+    private byte[] buffer;
+    private int offset;
+    private long bitPosition;
+    private int count;
+
+    private long prevTimestamp;
+    private long prevDelta;
+    private int prevValue;
+    private int prevLeading;
+    private int prevTrailing;
+
+    /** Start a new block at offset of buffer */
+    public void reset(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        bitPosition = 0;
+        count = 0;
+    }
+
+    /**
+     * Add a sample, buffer shall have MAX_SAMPLE_SIZE bytes left after
+     * getLength(). timestamp shall not decrease for the best compression.
+     */
+    public void encode(long timestamp, int value) {
+        if (count == 0) {
+            writeBits(timestamp, 64);
+            writeBits(value, 32);
+            prevDelta = 0;
+            prevLeading = -1;
+        } else {
+            long delta = timestamp - prevTimestamp;
+            long deltaOfDelta = delta - prevDelta;
+            if (deltaOfDelta == 0) {
+                writeBits(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                writeBits(0x2, 2);
+                writeBits(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                writeBits(0x6, 3);
+                writeBits(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                writeBits(0xE, 4);
+                writeBits(deltaOfDelta + 2047, 12);
+            } else {
+                writeBits(0xF, 4);
+                writeBits(deltaOfDelta, 64);
+            }
+            prevDelta = delta;
+
+            int xor = value ^ prevValue;
+            if (xor == 0) {
+                writeBits(0, 1);
+            } else {
+                int leading = Integer.numberOfLeadingZeros(xor);
+                int trailing = Integer.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    writeBits(0x2, 2);
+                    writeBits(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+                } else {
+                    int meaningful = 32 - leading - trailing;
+                    writeBits(0x3, 2);
+                    writeBits(leading, 5);
+                    writeBits(meaningful - 1, 5);
+                    writeBits(xor >>> trailing, meaningful);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+        }
+        prevTimestamp = timestamp;
+        prevValue = value;
+        count++;
+    }
+
+    /** Bytes of the block so far, with the byte in progress */
+    public int getLength() {
+        return (int) ((bitPosition + 7) >>> 3);
+    }
+
+    /** Samples in the block */
+    public int getCount() {
+        return count;
+    }
+
+    /** Write the low count bits of bits, from the highest */
+    private void writeBits(long bits, int count) {
+        while (count > 0) {
+            int index = offset + (int) (bitPosition >>> 3);
+            int used = (int) (bitPosition & 7);
+            if (used == 0) {
+                buffer[index] = 0;
+            }
+            int n = Math.min(8 - used, count);
+            int chunk = (int) (bits >>> (count - n)) & ((1 << n) - 1);
+            buffer[index] |= (byte) (chunk << (8 - used - n));
+            count -= n;
+            bitPosition += n;
+        }
+    }
+}
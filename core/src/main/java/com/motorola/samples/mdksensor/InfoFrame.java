@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.nio.charset.Charset;
+
+/**
+ * A flyweight view of INFO. The query from host has no payload, the response
+ * carries struct sensor_attr.
+ */
+public class InfoFrame extends RawFrame {
+    private static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+
+    @Override
+    protected int getCommandId() {
+        return Constants.TEMP_RAW_COMMAND_INFO;
+    }
+
+    @Override
+    protected boolean isValidSize(int size, boolean response) {
+        return response ? size >= Constants.CMD_INFO_HEAD_SIZE : size == 0;
+    }
+
+    public int getVersion() {
+        return getUnsignedByte(Constants.CMD_INFO_VERSION_OFFSET);
+    }
+
+    public int getReserved() {
+        return getUnsignedByte(Constants.CMD_INFO_RESERVED_OFFSET);
+    }
+
+    public int getMaxLatency() {
+        return getUnsignedShort(Constants.CMD_INFO_LATENCYLOW_OFFSET);
+    }
+
+    /** Length of name, up to the terminating zero or end of payload */
+    public int getNameLength() {
+        int start = getPayloadOffset() + Constants.CMD_INFO_NAME_OFFSET;
+        int end = getPayloadOffset() + size;
+        int i = start;
+        while (i < end && buffer[i] != 0) {
+            i++;
+        }
+        return i - start;
+    }
+
+    /** Sensor name, allocates a String so call it only when shown */
+    public String getName() {
+        return new String(buffer, getPayloadOffset() + Constants.CMD_INFO_NAME_OFFSET,
+                getNameLength(), NAME_CHARSET);
+    }
+}
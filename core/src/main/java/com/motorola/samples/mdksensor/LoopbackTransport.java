@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A class to represent an in-memory RAW transport. Two ends are connected by
+ * a pair of bounded byte rings, no system call is involved, so it measures
+ * the cost of the RAW pipeline itself.
+ */
+public class LoopbackTransport implements RawTransport {
+    /**
+     * A bounded circular byte buffer, one direction of the loopback
+     */
+    private static class Ring {
+        final byte[] data;
+        int head;
+        int size;
+        boolean closed;
+
+        Ring(int capacity) {
+            data = new byte[capacity];
+        }
+
+        synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                while (size == 0 && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (size == 0) {
+                return -1;
+            }
+
+            int count = Math.min(length, size);
+            int first = Math.min(count, data.length - head);
+            System.arraycopy(data, head, buffer, offset, first);
+            System.arraycopy(data, 0, buffer, offset + first, count - first);
+            head = (head + count) % data.length;
+            size -= count;
+            notifyAll();
+            return count;
+        }
+
+        synchronized void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                try {
+                    while (size == data.length && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                if (closed) {
+                    throw new IOException("Loopback closed");
+                }
+
+                int tail = (head + size) % data.length;
+                int count = Math.min(buffer.remaining(),
+                        Math.min(data.length - size, data.length - tail));
+                buffer.get(data, tail, count);
+                size += count;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final Ring in;
+    private final Ring out;
+
+    private LoopbackTransport(Ring in, Ring out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /** Create two connected ends, bytes written to one are read from the other */
+    public static LoopbackTransport[] createPair(int capacity) {
+        Ring forward = new Ring(capacity);
+        Ring backward = new Ring(capacity);
+        return new LoopbackTransport[]{
+                new LoopbackTransport(backward, forward),
+                new LoopbackTransport(forward, backward)};
+    }
+
+    public static LoopbackTransport[] createPair() {
+        return createPair(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return in.read(buffer, offset, length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        long count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            count += buffers[i].remaining();
+            out.write(buffers[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public FileDescriptor getFileDescriptor() {
+        return null;
+    }
+
+    /** Close both directions, the other end reads end of stream */
+    @Override
+    public void close() {
+        out.close();
+        in.close();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+/**
+ * A class to represent RAW transport over a pair of java.nio pipes. It runs on
+ * any JVM, read() blocks so it shall be called from a dedicated thread.
+ */
+public class PipeTransport implements RawTransport {
+    private final Pipe.SourceChannel source;
+    private final Pipe.SinkChannel sink;
+
+    /** Set before the channels are closed, a blocked read then ends the stream */
+    private volatile boolean closed;
+
+    /** Wrapper of the last read buffer, to avoid wrapping on every read */
+    private ByteBuffer readBuffer;
+
+    private PipeTransport(Pipe.SourceChannel source, Pipe.SinkChannel sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+
+    /** Create two connected ends, bytes written to one are read from the other */
+    public static PipeTransport[] createPair() throws IOException {
+        Pipe forward = Pipe.open();
+        Pipe backward = Pipe.open();
+        return new PipeTransport[]{
+                new PipeTransport(backward.source(), forward.sink()),
+                new PipeTransport(forward.source(), backward.sink())};
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (null == readBuffer || readBuffer.array() != buffer) {
+            readBuffer = ByteBuffer.wrap(buffer);
+        }
+        readBuffer.limit(offset + length);
+        readBuffer.position(offset);
+
+        try {
+            int ret = source.read(readBuffer);
+            while (ret == 0) {
+                ret = source.read(readBuffer);
+            }
+            return ret;
+        } catch (IOException e) {
+            /** Closed by this end, a normal shutdown rather than a broken link */
+            if (closed) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        return sink.write(buffers, offset, length);
+    }
+
+    @Override
+    public FileDescriptor getFileDescriptor() {
+        return null;
+    }
+
+    /** Close both directions, the other end reads end of stream */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        sink.close();
+        source.close();
+    }
+}
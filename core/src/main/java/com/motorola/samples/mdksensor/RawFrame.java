@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A flyweight view of one RAW frame [cmd][size][payload] in a byte range.
+ *
+ * wrap() checks the frame and points the view at it, nothing is copied, so
+ * one instance can be reused for every frame received. The view is only valid
+ * until the underlying buffer is reused, e.g. the pooled frame is released.
+ */
+public abstract class RawFrame {
+    protected byte[] buffer;
+    protected int offset;
+    protected int size;
+
+    /**
+     * Point the view at the frame of length bytes at offset. Returns false and
+     * keeps the previous frame if it is not a valid frame of this type.
+     */
+    public boolean wrap(byte[] buffer, int offset, int length) {
+        if (null == buffer || offset < 0 || length < FrameDecoder.HEADER_SIZE
+                || offset + length > buffer.length
+                || getCommand(buffer, offset) != getCommandId()) {
+            return false;
+        }
+
+        int size = buffer[offset + Constants.SIZE_OFFSET] & 0xFF;
+        boolean response = (buffer[offset + Constants.CMD_OFFSET]
+                & Constants.TEMP_RAW_COMMAND_RESP_MASK) != 0;
+        if (FrameDecoder.HEADER_SIZE + size != length || !isValidSize(size, response)
+                || !isValidPayload(buffer, offset + Constants.PAYLOAD_OFFSET, size)) {
+            return false;
+        }
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.size = size;
+        return true;
+    }
+
+    /** Command ID of frame at offset, without TEMP_RAW_COMMAND_RESP_MASK */
+    public static int getCommand(byte[] buffer, int offset) {
+        return buffer[offset + Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
+    }
+
+    /** Whether the frame is sent from mod device */
+    public boolean isResponse() {
+        return (buffer[offset + Constants.CMD_OFFSET] & Constants.TEMP_RAW_COMMAND_RESP_MASK) != 0;
+    }
+
+    public int getPayloadSize() {
+        return size;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /** Position of payload in getBuffer() */
+    public int getPayloadOffset() {
+        return offset + Constants.PAYLOAD_OFFSET;
+    }
+
+    /** Command ID this view decodes */
+    protected abstract int getCommandId();
+
+    /** Check payload size, response is true for frames from mod device */
+    protected abstract boolean isValidSize(int size, boolean response);
+
+    /** Check payload content beyond its size, nothing by default */
+    protected boolean isValidPayload(byte[] buffer, int payloadOffset, int size) {
+        return true;
+    }
+
+    protected int getUnsignedByte(int index) {
+        return buffer[offset + Constants.PAYLOAD_OFFSET + index] & 0xFF;
+    }
+
+    /** Little endian uint16_t at index of payload */
+    protected int getUnsignedShort(int index) {
+        return getUnsignedByte(index) | getUnsignedByte(index + 1) << 8;
+    }
+}
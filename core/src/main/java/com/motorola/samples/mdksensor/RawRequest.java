@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A class to represent a RAW command waiting for its response.
+ *
+ * The request completes with the first frame carrying the command ID with
+ * TEMP_RAW_COMMAND_RESP_MASK set on the same RAW interface, times out, or
+ * fails if its command could not be sent. Requests for the same command are
+ * answered in the order they were sent.
+ */
+public class RawRequest implements Future<byte[]> {
+    /**
+     * Callback for the request result, called on the given Executor or on the
+     * RAW I/O thread if no Executor given. A cancelled request is not called
+     * back.
+     */
+    public interface Callback {
+        /** Got the response, frame is [cmd][size][payload] */
+        void onResponse(RawRequest request, byte[] frame);
+
+        void onTimeout(RawRequest request);
+
+        /** The command could not be queued to RAW I/O, no response will come */
+        void onError(RawRequest request);
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_DONE = 1;
+    private static final int STATE_TIMEOUT = 2;
+    private static final int STATE_CANCELLED = 3;
+    private static final int STATE_FAILED = 4;
+
+    final int rawInterface;
+    final int command;
+    final long timeoutMs;
+    private final Callback callback;
+    private final Executor callbackExecutor;
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private int state = STATE_PENDING;
+    private long sentNanos;
+    private long doneNanos;
+    private byte[] response;
+
+    RawRequest(int rawInterface, byte[] cmd, long timeoutMs,
+               Callback callback, Executor callbackExecutor) {
+        this.rawInterface = rawInterface;
+        this.command = cmd[Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
+        this.timeoutMs = timeoutMs;
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public int getRawInterface() {
+        return rawInterface;
+    }
+
+    public int getCommand() {
+        return command;
+    }
+
+    /** Time from the command queued to its response, -1 if not answered */
+    public synchronized long getRoundTripNanos() {
+        return state == STATE_DONE ? doneNanos - sentNanos : -1;
+    }
+
+    public synchronized boolean isTimedOut() {
+        return state == STATE_TIMEOUT;
+    }
+
+    /** Whether the command could not be sent */
+    public synchronized boolean isFailed() {
+        return state == STATE_FAILED;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != STATE_PENDING;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(STATE_CANCELLED, null);
+    }
+
+    @Override
+    public byte[] get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result();
+    }
+
+    @Override
+    public byte[] get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private synchronized byte[] result() throws ExecutionException {
+        if (state == STATE_TIMEOUT) {
+            throw new ExecutionException(new TimeoutException("No response for command "
+                    + command + " in " + timeoutMs + "ms"));
+        } else if (state == STATE_CANCELLED) {
+            throw new ExecutionException(new IllegalStateException("Request cancelled"));
+        } else if (state == STATE_FAILED) {
+            throw new ExecutionException(new IOException("Command " + command + " not sent"));
+        }
+        return response;
+    }
+
+    synchronized void markSent() {
+        sentNanos = System.nanoTime();
+    }
+
+    boolean complete(byte[] frame) {
+        return finish(STATE_DONE, frame);
+    }
+
+    boolean timeout() {
+        return finish(STATE_TIMEOUT, null);
+    }
+
+    boolean fail() {
+        return finish(STATE_FAILED, null);
+    }
+
+    private boolean finish(int newState, byte[] frame) {
+        synchronized (this) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            doneNanos = System.nanoTime();
+            response = frame;
+        }
+        latch.countDown();
+
+        if (null != callback && newState != STATE_CANCELLED) {
+            final int result = newState;
+            final byte[] resultFrame = frame;
+            Runnable notify = new Runnable() {
+                @Override
+                public void run() {
+                    if (result == STATE_TIMEOUT) {
+                        callback.onTimeout(RawRequest.this);
+                    } else if (result == STATE_FAILED) {
+                        callback.onError(RawRequest.this);
+                    } else {
+                        callback.onResponse(RawRequest.this, resultFrame);
+                    }
+                }
+            };
+            if (null != callbackExecutor) {
+                callbackExecutor.execute(notify);
+            } else {
+                notify.run();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class to match RAW responses with the in-flight requests.
+ *
+ * Several requests could be in flight at the same time. A response frame is
+ * matched with the oldest pending request of the same command on the same RAW
+ * interface. The round trip time of answered requests is accumulated.
+ */
+public class RequestTracker {
+    private final List<RawRequest> inFlight = new ArrayList<>();
+
+    /**
+     * Request statistics
+     */
+    private long completedCount;
+    private long timeoutCount;
+    private long failedCount;
+    private long totalRoundTripNanos;
+    private long maxRoundTripNanos;
+
+    /** Track a request, call before its command is queued */
+    public synchronized void add(RawRequest request) {
+        request.markSent();
+        inFlight.add(request);
+    }
+
+    /**
+     * Check a frame got from RAW I/O. Returns true if it answered a request,
+     * the frame is still passed to listeners as before.
+     */
+    public boolean onFrame(int rawInterface, byte[] buffer, int offset, int length) {
+        int cmd = buffer[offset + Constants.CMD_OFFSET] & 0xFF;
+        if ((cmd & Constants.TEMP_RAW_COMMAND_RESP_MASK) == 0) {
+            return false;
+        }
+        cmd &= ~Constants.TEMP_RAW_COMMAND_RESP_MASK;
+
+        RawRequest request = null;
+        synchronized (this) {
+            for (int i = 0; i < inFlight.size(); i++) {
+                RawRequest pending = inFlight.get(i);
+                if (pending.isDone()) {
+                    /** Cancelled meanwhile */
+                    inFlight.remove(i--);
+                } else if (pending.rawInterface == rawInterface && pending.command == cmd) {
+                    inFlight.remove(i);
+                    request = pending;
+                    break;
+                }
+            }
+        }
+        if (null == request) {
+            return false;
+        }
+
+        byte[] frame = new byte[length];
+        System.arraycopy(buffer, offset, frame, 0, length);
+        if (!request.complete(frame)) {
+            return false;
+        }
+
+        long rtt = request.getRoundTripNanos();
+        synchronized (this) {
+            completedCount++;
+            totalRoundTripNanos += rtt;
+            if (rtt > maxRoundTripNanos) {
+                maxRoundTripNanos = rtt;
+            }
+        }
+        return true;
+    }
+
+    /** The request got no response in time */
+    public void onTimeout(RawRequest request) {
+        synchronized (this) {
+            inFlight.remove(request);
+        }
+        if (request.timeout()) {
+            synchronized (this) {
+                timeoutCount++;
+            }
+        }
+    }
+
+    /** The command of the request could not be queued, it fails at once */
+    public void onSendFailed(RawRequest request) {
+        synchronized (this) {
+            inFlight.remove(request);
+        }
+        if (request.fail()) {
+            synchronized (this) {
+                failedCount++;
+            }
+        }
+    }
+
+    /**
+     * A queued command was dropped before it was written, e.g. by the
+     * DROP_OLDEST policy of SendQueue. The oldest pending request of its
+     * interface and command fails, as the commands are written in order.
+     * Returns the failed request, null if the command was not tracked.
+     */
+    public RawRequest onCommandDropped(int rawInterface, byte[] cmd) {
+        int command = cmd[Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
+        RawRequest request = null;
+        synchronized (this) {
+            for (int i = 0; i < inFlight.size(); i++) {
+                RawRequest pending = inFlight.get(i);
+                if (!pending.isDone() && pending.rawInterface == rawInterface
+                        && pending.command == command) {
+                    request = pending;
+                    break;
+                }
+            }
+        }
+        if (null != request) {
+            onSendFailed(request);
+        }
+        return request;
+    }
+
+    /** Cancel all in-flight requests without callback, e.g. RAW I/O closed */
+    public void cancelAll() {
+        List<RawRequest> requests;
+        synchronized (this) {
+            requests = new ArrayList<>(inFlight);
+            inFlight.clear();
+        }
+        for (RawRequest request : requests) {
+            request.cancel(false);
+        }
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized long getAverageRoundTripNanos() {
+        return completedCount == 0 ? 0 : totalRoundTripNanos / completedCount;
+    }
+
+    public synchronized long getMaxRoundTripNanos() {
+        return maxRoundTripNanos;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * Statistics of the readings in a sliding window, updated per sample.
+ *
+ * The window holds the last maxCount readings, also dropping those older
+ * than maxAgeUs when it is not 0. Over the window it keeps:
+ * - min and max, with monotonic deques of sequence numbers
+ * - mean and variance, with Welford's update, undone for evicted readings
+ * - quantiles, from a histogram of fixed bins over [low, high)
+ * Besides, an exponential moving average of time constant emaTimeConstantUs
+ * follows all readings.
+ *
+ * add() is O(1) amortized and allocates nothing, all storage is sized by
+ * the constructor. Quantiles are O(bins) per query.
+ *
+ * Not thread safe: one thread adds and queries, others take a copy with
+ * copyTo() under their own lock.
+ */
+public class RollingStatistics {
+    /**
+     * A copy of the statistics, for other threads
+     */
+    public static class Summary {
+        public int count;
+        public long totalCount;
+        public long firstTimestampUs;
+        public long lastTimestampUs;
+        public double last;
+        public double min;
+        public double max;
+        public double mean;
+        public double stdDev;
+        public double ema;
+        public final double[] quantiles;
+        public final double[] values;
+
+        public Summary(double... quantiles) {
+            this.quantiles = quantiles.clone();
+            values = new double[quantiles.length];
+        }
+    }
+
+    private final int maxCount;
+    private final long maxAgeUs;
+    private final long emaTimeConstantUs;
+
+    /** Readings of the window, by sequence number % maxCount */
+    private final long[] timestamps;
+    private final double[] values;
+    /** Sequence numbers of the window [first, end) */
+    private long first;
+    private long end;
+
+    /**
+     * Sequence numbers of candidates for min and max, [head, tail) by
+     * sequence % maxCount, values increasing for min, decreasing for max.
+     */
+    private final long[] minDeque;
+    private final long[] maxDeque;
+    private long minHead;
+    private long minTail;
+    private long maxHead;
+    private long maxTail;
+
+    /** Welford state of the window */
+    private double mean;
+    private double m2;
+    /** Evictions since mean and m2 were recomputed, to bound rounding drift */
+    private int removedCount;
+
+    private final double low;
+    private final double binWidth;
+    private final int[] bins;
+
+    private double ema;
+    private long totalCount;
+
+    /**
+     * Constructor, maxAgeUs 0 for a count window only. The histogram of
+     * quantiles covers [low, high) with bins of binWidth, readings outside
+     * count in the first and last bins.
+     */
+    public RollingStatistics(int maxCount, long maxAgeUs, long emaTimeConstantUs,
+                             double low, double high, double binWidth) {
+        if (maxCount < 1 || maxAgeUs < 0 || emaTimeConstantUs < 0
+                || binWidth <= 0 || high <= low) {
+            throw new IllegalArgumentException("Invalid window " + maxCount
+                    + ", " + maxAgeUs + " us, histogram [" + low + ", " + high
+                    + ") by " + binWidth);
+        }
+        this.maxCount = maxCount;
+        this.maxAgeUs = maxAgeUs;
+        this.emaTimeConstantUs = emaTimeConstantUs;
+        timestamps = new long[maxCount];
+        values = new double[maxCount];
+        minDeque = new long[maxCount];
+        maxDeque = new long[maxCount];
+        this.low = low;
+        this.binWidth = binWidth;
+        bins = new int[(int) Math.ceil((high - low) / binWidth)];
+    }
+
+    public void add(long timestampUs, double value) {
+        if (end > 0) {
+            long elapsed = timestampUs - timestamps[(int) ((end - 1) % maxCount)];
+            double alpha = emaTimeConstantUs == 0 ? 1
+                    : 1 - Math.exp(-Math.max(0, elapsed) / (double) emaTimeConstantUs);
+            ema += alpha * (value - ema);
+        } else {
+            ema = value;
+        }
+        totalCount++;
+
+        if (end - first == maxCount) {
+            remove();
+        }
+        int index = (int) (end % maxCount);
+        timestamps[index] = timestampUs;
+        values[index] = value;
+
+        while (minTail > minHead && valueOf(minDeque, minTail - 1) >= value) {
+            minTail--;
+        }
+        minDeque[(int) (minTail++ % maxCount)] = end;
+        while (maxTail > maxHead && valueOf(maxDeque, maxTail - 1) <= value) {
+            maxTail--;
+        }
+        maxDeque[(int) (maxTail++ % maxCount)] = end;
+
+        end++;
+        long n = end - first;
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+        bins[binOf(value)]++;
+
+        if (maxAgeUs > 0) {
+            while (timestampUs - timestamps[(int) (first % maxCount)] > maxAgeUs) {
+                remove();
+            }
+        }
+    }
+
+    /** Forget all readings */
+    public void reset() {
+        first = end = 0;
+        minHead = minTail = maxHead = maxTail = 0;
+        mean = m2 = 0;
+        removedCount = 0;
+        ema = 0;
+        totalCount = 0;
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = 0;
+        }
+    }
+
+    /** Evict the oldest reading of the window */
+    private void remove() {
+        double value = values[(int) (first % maxCount)];
+        if (minDeque[(int) (minHead % maxCount)] == first) {
+            minHead++;
+        }
+        if (maxDeque[(int) (maxHead % maxCount)] == first) {
+            maxHead++;
+        }
+        first++;
+        bins[binOf(value)]--;
+
+        long n = end - first;
+        if (n == 0) {
+            mean = m2 = 0;
+        } else if (++removedCount >= maxCount) {
+            recompute();
+        } else {
+            double delta = value - mean;
+            mean -= delta / n;
+            m2 = Math.max(0, m2 - delta * (value - mean));
+        }
+    }
+
+    /** Welford over the window again, once per maxCount evictions */
+    private void recompute() {
+        removedCount = 0;
+        mean = m2 = 0;
+        long n = 0;
+        for (long sequence = first; sequence < end; sequence++) {
+            double value = values[(int) (sequence % maxCount)];
+            n++;
+            double delta = value - mean;
+            mean += delta / n;
+            m2 += delta * (value - mean);
+        }
+    }
+
+    private double valueOf(long[] deque, long position) {
+        return values[(int) (deque[(int) (position % maxCount)] % maxCount)];
+    }
+
+    private int binOf(double value) {
+        int bin = (int) Math.floor((value - low) / binWidth);
+        return Math.max(0, Math.min(bins.length - 1, bin));
+    }
+
+    /** Count of readings in the window */
+    public int getCount() {
+        return (int) (end - first);
+    }
+
+    /** Count of readings since reset() */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getFirstTimestampUs() {
+        return end > first ? timestamps[(int) (first % maxCount)] : 0;
+    }
+
+    public long getLastTimestampUs() {
+        return end > first ? timestamps[(int) ((end - 1) % maxCount)] : 0;
+    }
+
+    public double getLast() {
+        return end > first ? values[(int) ((end - 1) % maxCount)] : Double.NaN;
+    }
+
+    public double getMin() {
+        return end > first ? valueOf(minDeque, minHead) : Double.NaN;
+    }
+
+    public double getMax() {
+        return end > first ? valueOf(maxDeque, maxHead) : Double.NaN;
+    }
+
+    public double getMean() {
+        return end > first ? mean : Double.NaN;
+    }
+
+    /** Population variance of the window */
+    public double getVariance() {
+        return end > first ? m2 / (end - first) : Double.NaN;
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getEma() {
+        return end > 0 ? ema : Double.NaN;
+    }
+
+    /**
+     * Estimate of quantile q in [0, 1], interpolated in its bin, so within
+     * binWidth of the exact one for readings inside the histogram.
+     */
+    public double getQuantile(double q) {
+        long n = end - first;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(1, q)) * n;
+        long below = 0;
+        for (int i = 0; i < bins.length; i++) {
+            if (bins[i] > 0 && below + bins[i] >= rank) {
+                double estimate = low + (i + (rank - below) / bins[i]) * binWidth;
+                /** Never out of the readings, the edge bins are open */
+                return Math.max(getMin(), Math.min(getMax(), estimate));
+            }
+            below += bins[i];
+        }
+        return getMax();
+    }
+
+    /** Copy the statistics to summary, and the quantiles it asks for */
+    public void copyTo(Summary summary) {
+        summary.count = getCount();
+        summary.totalCount = totalCount;
+        summary.firstTimestampUs = getFirstTimestampUs();
+        summary.lastTimestampUs = getLastTimestampUs();
+        summary.last = getLast();
+        summary.min = getMin();
+        summary.max = getMax();
+        summary.mean = getMean();
+        summary.stdDev = getStdDev();
+        summary.ema = getEma();
+        for (int i = 0; i < summary.quantiles.length; i++) {
+            summary.values[i] = getQuantile(summary.quantiles[i]);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Rollups of (timestamp, value) samples at several resolutions.
+ *
+ * Each level sums the samples into buckets of a fixed duration, aligned
+ * to multiples of it, holding the count, min, max and sum. A sample
+ * updates the open bucket of every level, so add() is O(levels). Each
+ * level keeps its last capacity buckets in memory, and query() serves a
+ * time range from the finest level with at most maxBuckets buckets in
+ * it, in O(log capacity + maxBuckets) whatever the length of the range.
+ *
+ * With a directory, every level is persisted to a file of fixed size
+ * records next to the SessionLog segments. The records are a ring of
+ * capacity, bucket n at record n % capacity, so a file never grows past
+ * the buckets kept in memory:
+ *
+ * struct rollup_header {
+ * int32_t     magic;
+ * int32_t     version;
+ * int64_t     bucket_us;
+ * int32_t     capacity;
+ * int32_t     reserved;
+ * };
+ * struct rollup_bucket {
+ * int64_t     bucket;           number of the bucket
+ * int64_t     start;
+ * int32_t     count;
+ * float       min;
+ * float       max;
+ * double      sum;
+ * int32_t     crc;              CRC32 of the fields before
+ * };
+ *
+ * A bucket is written when the next one opens, and the open one on
+ * flush(). The bucket is copied under the lock of the levels and written
+ * after it is released, so query() from the UI never waits on the disk.
+ * When opened, the buckets of the files are read back from the newest
+ * one down to the first missing or broken one, the newest one open again.
+ * A file of another version or capacity is started over. Timestamps
+ * are expected not to decrease; an earlier one counts in the open bucket.
+ */
+public class RollupPyramid implements Closeable {
+    /** 1 s, 10 s, 1 min and 10 min */
+    public static final long[] DEFAULT_BUCKETS_US = {
+            1000000L, 10 * 1000000L, 60 * 1000000L, 600 * 1000000L
+    };
+    /** Buckets of a level in memory, 4.5 hours of 1 s, 113 days of 10 min */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    static final int MAGIC = 0x524B444D;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 40;
+    static final int RECORD_CRC_OFFSET = 36;
+    static final String ROLLUP_PREFIX = "rollup-";
+    static final String ROLLUP_SUFFIX = ".log";
+
+    /**
+     * Visitor of the buckets of query()
+     */
+    public interface Visitor {
+        void onBucket(long startUs, long durationUs, int count, float min, float max, double mean);
+    }
+
+    /**
+     * Buckets of one duration, by bucket number % capacity
+     */
+    private static class Level {
+        final long bucketUs;
+        final int capacity;
+        final long[] starts;
+        final int[] counts;
+        final float[] mins;
+        final float[] maxs;
+        final double[] sums;
+        /** Bucket number after the open one, the count of buckets ever opened */
+        long end;
+        /** First bucket read back when opened, those before are lost */
+        long begin;
+        FileChannel channel;
+
+        Level(long bucketUs, int capacity) {
+            this.bucketUs = bucketUs;
+            this.capacity = capacity;
+            starts = new long[capacity];
+            counts = new int[capacity];
+            mins = new float[capacity];
+            maxs = new float[capacity];
+            sums = new double[capacity];
+        }
+
+        int size() {
+            return (int) (end - Math.max(begin, end - capacity));
+        }
+
+        long first() {
+            return end - size();
+        }
+
+        int index(long bucket) {
+            return (int) (bucket % capacity);
+        }
+
+        /** First bucket ending after timestampUs, end if none */
+        long find(long timestampUs) {
+            long low = first();
+            long high = end;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (starts[index(mid)] + bucketUs <= timestampUs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final File directory;
+    private final Level[] levels;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    /** Held around the file writes, taken before the lock of the levels */
+    private final Object writeLock = new Object();
+    /** Buckets copied under the lock of the levels, to write once it is released */
+    private final Level[] pendingLevels;
+    private final long[] pendingBuckets;
+    private final byte[] pendingRecords;
+    private int pendingCount;
+    private long sampleCount;
+    private long droppedRecords;
+    private boolean closed;
+
+    /**
+     * Rollups in memory only
+     */
+    public RollupPyramid(long[] bucketsUs, int capacity) {
+        this.directory = null;
+        levels = createLevels(bucketsUs, capacity);
+        pendingLevels = new Level[levels.length];
+        pendingBuckets = new long[levels.length];
+        pendingRecords = new byte[levels.length * RECORD_SIZE];
+    }
+
+    /**
+     * Open the rollups persisted in directory, reading back the last
+     * capacity buckets of each level.
+     */
+    public RollupPyramid(File directory, long[] bucketsUs, int capacity) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        this.directory = directory;
+        levels = createLevels(bucketsUs, capacity);
+        pendingLevels = new Level[levels.length];
+        pendingBuckets = new long[levels.length];
+        pendingRecords = new byte[levels.length * RECORD_SIZE];
+        try {
+            for (Level level : levels) {
+                recover(level);
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+    }
+
+    private static Level[] createLevels(long[] bucketsUs, int capacity) {
+        if (bucketsUs.length == 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid levels " + bucketsUs.length
+                    + ", capacity " + capacity);
+        }
+        Level[] levels = new Level[bucketsUs.length];
+        for (int i = 0; i < bucketsUs.length; i++) {
+            if (bucketsUs[i] <= 0 || (i > 0 && bucketsUs[i] <= bucketsUs[i - 1])) {
+                throw new IllegalArgumentException("Invalid bucket " + bucketsUs[i] + " us");
+            }
+            levels[i] = new Level(bucketsUs[i], capacity);
+        }
+        return levels;
+    }
+
+    public void add(long timestampUs, float value) throws IOException {
+        synchronized (writeLock) {
+            addToLevels(timestampUs, value);
+            writePending();
+        }
+    }
+
+    private synchronized void addToLevels(long timestampUs, float value) {
+        checkOpen();
+        for (Level level : levels) {
+            long start = Math.max(floor(timestampUs, level.bucketUs),
+                    level.end > 0 ? level.starts[level.index(level.end - 1)] : Long.MIN_VALUE);
+            int index;
+            if (level.end > 0 && level.starts[level.index(level.end - 1)] == start) {
+                index = level.index(level.end - 1);
+                level.counts[index]++;
+                level.mins[index] = Math.min(level.mins[index], value);
+                level.maxs[index] = Math.max(level.maxs[index], value);
+                level.sums[index] += value;
+            } else {
+                if (level.end > 0) {
+                    addPending(level, level.end - 1);
+                }
+                index = level.index(level.end++);
+                level.starts[index] = start;
+                level.counts[index] = 1;
+                level.mins[index] = value;
+                level.maxs[index] = value;
+                level.sums[index] = value;
+            }
+        }
+        sampleCount++;
+    }
+
+    /**
+     * Visit the buckets overlapping [fromUs, toUs) of the finest level
+     * which has at most maxBuckets of them and still keeps fromUs, or else
+     * of the coarsest level. Returns the count of buckets visited.
+     */
+    public synchronized int query(long fromUs, long toUs, int maxBuckets, Visitor visitor) {
+        Level level = levels[selectLevel(fromUs, toUs, maxBuckets)];
+        int count = 0;
+        for (long bucket = level.find(fromUs); bucket < level.end; bucket++) {
+            int index = level.index(bucket);
+            if (level.starts[index] >= toUs) {
+                break;
+            }
+            visitor.onBucket(level.starts[index], level.bucketUs, level.counts[index],
+                    level.mins[index], level.maxs[index],
+                    level.sums[index] / level.counts[index]);
+            count++;
+        }
+        return count;
+    }
+
+    /** Level query() serves [fromUs, toUs) from */
+    public synchronized int selectLevel(long fromUs, long toUs, int maxBuckets) {
+        long span = Math.max(0, toUs - fromUs);
+        for (int i = 0; i < levels.length; i++) {
+            Level level = levels[i];
+            boolean fits = span / level.bucketUs < maxBuckets;
+            boolean kept = level.end > 0 && level.starts[level.index(level.first())] <= fromUs;
+            if (fits && kept) {
+                return i;
+            }
+        }
+        return levels.length - 1;
+    }
+
+    /** Write the open buckets */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            addOpenBuckets(false);
+            writePending();
+        }
+    }
+
+    /** Write the open buckets and force the files to the storage device */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            flush();
+            for (Level level : levels) {
+                if (null != level.channel) {
+                    level.channel.force(false);
+                }
+            }
+        }
+    }
+
+    /** Flush and close the files, the rollups can not be used after */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (!addOpenBuckets(true)) {
+                return;
+            }
+            try {
+                writePending();
+            } finally {
+                closeChannels();
+            }
+        }
+    }
+
+    /** Copy the open buckets to write, and mark closed if close, false if already closed */
+    private synchronized boolean addOpenBuckets(boolean close) {
+        if (close && closed) {
+            return false;
+        }
+        checkOpen();
+        for (Level level : levels) {
+            if (level.end > 0) {
+                addPending(level, level.end - 1);
+            }
+        }
+        closed = close;
+        return true;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public long getBucketUs(int level) {
+        return levels[level].bucketUs;
+    }
+
+    /** Buckets of level in memory */
+    public synchronized int getBucketCount(int level) {
+        return levels[level].size();
+    }
+
+    /** Start of the first bucket of level in memory, Long.MAX_VALUE if none */
+    public synchronized long getFirstStartUs(int level) {
+        Level l = levels[level];
+        return l.end > 0 ? l.starts[l.index(l.first())] : Long.MAX_VALUE;
+    }
+
+    /** Samples added since opened */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Records cut by a crash, dropped when opened */
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Rollups closed");
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        IOException error = null;
+        for (Level level : levels) {
+            if (null == level.channel) {
+                continue;
+            }
+            try {
+                level.channel.close();
+            } catch (IOException e) {
+                error = e;
+            }
+            level.channel = null;
+        }
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    /** Copy bucket of level to the pending records, with the lock of the levels held */
+    private void addPending(Level level, long bucket) {
+        if (null == level.channel) {
+            return;
+        }
+        int index = level.index(bucket);
+        record.clear();
+        record.putLong(bucket);
+        record.putLong(level.starts[index]);
+        record.putInt(level.counts[index]);
+        record.putFloat(level.mins[index]);
+        record.putFloat(level.maxs[index]);
+        record.putDouble(level.sums[index]);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_CRC_OFFSET);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        record.get(pendingRecords, pendingCount * RECORD_SIZE, RECORD_SIZE);
+        pendingLevels[pendingCount] = level;
+        pendingBuckets[pendingCount++] = bucket;
+    }
+
+    /** Write the pending records at their buckets, with writeLock held */
+    private void writePending() throws IOException {
+        try {
+            for (int i = 0; i < pendingCount; i++) {
+                FileChannel channel = pendingLevels[i].channel;
+                ByteBuffer buffer = ByteBuffer.wrap(pendingRecords, i * RECORD_SIZE, RECORD_SIZE);
+                Level level = pendingLevels[i];
+                long position = HEADER_SIZE + (long) level.index(pendingBuckets[i]) * RECORD_SIZE;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        } finally {
+            for (int i = 0; i < pendingCount; i++) {
+                pendingLevels[i] = null;
+            }
+            pendingCount = 0;
+        }
+    }
+
+    /** Open the file of level and read back its buckets, newest first */
+    private void recover(Level level) throws IOException {
+        File file = new File(directory, rollupName(level.bucketUs));
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        level.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long length = channel.size();
+        if (length >= HEADER_SIZE) {
+            channel.read(header, 0);
+            header.flip();
+        }
+        if (length < HEADER_SIZE || header.getInt(0) != MAGIC
+                || header.getInt(4) != FORMAT_VERSION || header.getLong(8) != level.bucketUs
+                || header.getInt(16) != level.capacity) {
+            /** New, or not ours, start over */
+            channel.truncate(0);
+            header.clear();
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(level.bucketUs)
+                    .putInt(level.capacity).putInt(0);
+            header.flip();
+            channel.write(header, 0);
+            return;
+        }
+
+        int records = (int) Math.min(level.capacity, (length - HEADER_SIZE) / RECORD_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, HEADER_SIZE + buffer.position()) > 0) {
+            /** Read until full */
+        }
+
+        /** The newest bucket is the greatest one at its own record */
+        long newest = -1;
+        for (int i = 0; i < records; i++) {
+            long bucket = buffer.getLong(i * RECORD_SIZE);
+            if (bucket > newest && isRecord(level, buffer, i, bucket)) {
+                newest = bucket;
+            }
+        }
+
+        /** Back from it while the buckets follow each other */
+        long bucket = newest;
+        long nextStart = Long.MAX_VALUE;
+        for (; bucket >= 0 && bucket > newest - level.capacity; bucket--) {
+            int i = level.index(bucket);
+            if (i >= records || !isRecord(level, buffer, i, bucket)) {
+                break;
+            }
+            int offset = i * RECORD_SIZE;
+            long start = buffer.getLong(offset + 8);
+            if (start > nextStart) {
+                break;
+            }
+            level.starts[i] = start;
+            level.counts[i] = buffer.getInt(offset + 16);
+            level.mins[i] = buffer.getFloat(offset + 20);
+            level.maxs[i] = buffer.getFloat(offset + 24);
+            level.sums[i] = buffer.getDouble(offset + 28);
+            nextStart = start;
+        }
+        level.begin = bucket + 1;
+        level.end = newest + 1;
+        droppedRecords += records - (level.end - level.begin);
+
+        long kept = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (length != kept) {
+            /** A record written in part at the end */
+            droppedRecords++;
+            channel.truncate(kept);
+        }
+    }
+
+    /** Whether record i of buffer is bucket, whole and of the ring of level */
+    private boolean isRecord(Level level, ByteBuffer buffer, int i, long bucket) {
+        int offset = i * RECORD_SIZE;
+        if (bucket < 0 || level.index(bucket) != i || buffer.getInt(offset + 16) <= 0
+                || !(buffer.getFloat(offset + 20) <= buffer.getFloat(offset + 24))) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer.array(), offset, RECORD_CRC_OFFSET);
+        return (int) crc.getValue() == buffer.getInt(offset + RECORD_CRC_OFFSET);
+    }
+
+    private static long floor(long timestampUs, long bucketUs) {
+        long start = timestampUs - timestampUs % bucketUs;
+        return timestampUs < 0 && start != timestampUs ? start - bucketUs : start;
+    }
+
+    static String rollupName(long bucketUs) {
+        return String.format(Locale.US, "%s%012d%s", ROLLUP_PREFIX, bucketUs, ROLLUP_SUFFIX);
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to adapt the sampling interval of the sensor to how fast the host
+ * keeps up with it.
+ *
+ * It starts from the max_latency the firmware reports in INFO, then at each
+ * evaluate() looks at the consumer lag and overflow seen since the last one.
+ * Any overflow or an average lag above the target halves the rate at once;
+ * a lag well under the target for CALM_WINDOWS windows in a row speeds the
+ * rate up by a quarter. The rate never exceeds maxSamplesPerSecond, the CPU
+ * budget of the host. The callback shall send ON with the new interval.
+ */
+public class SamplingController {
+    public static final int DEFAULT_MIN_INTERVAL_MS = 10;
+    public static final int DEFAULT_MAX_INTERVAL_MS = 2000;
+    public static final int DEFAULT_MAX_SAMPLES_PER_SECOND = 100;
+    /** How often the app shall call evaluate() */
+    public static final long DEFAULT_WINDOW_MS = 1000;
+    /** Calm windows before speeding up, so the rate does not oscillate */
+    public static final int CALM_WINDOWS = 3;
+
+    /** Outcome of evaluate() */
+    public enum Decision {
+        HOLD,
+        FASTER,
+        SLOWER
+    }
+
+    /**
+     * Callback for a new interval, called in the thread of evaluate()
+     */
+    public interface Callback {
+        void onIntervalChanged(int intervalMs);
+    }
+
+    private final Callback callback;
+
+    /**
+     * Controller settings
+     */
+    private int minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+    private int maxIntervalMs = DEFAULT_MAX_INTERVAL_MS;
+    private int maxSamplesPerSecond = DEFAULT_MAX_SAMPLES_PER_SECOND;
+    /** Lag set by the app, 0 for the max_latency of each start() */
+    private long configuredLagMs;
+
+    /** Controller state */
+    private boolean running;
+    private long targetLagMs;
+    private int intervalMs;
+    private int calmWindows;
+    private long windowSamples;
+    private long windowLagMs;
+    private long windowMaxLagMs;
+    private long overflowTotal;
+    private long lastOverflowTotal;
+
+    /**
+     * Controller statistics
+     */
+    private Decision lastDecision = Decision.HOLD;
+    private long averageLagMs;
+    private long maxLagMs;
+    private long decisionCount;
+    private long fasterCount;
+    private long slowerCount;
+
+    /**
+     * Constructor
+     */
+    public SamplingController(Callback callback) {
+        this.callback = callback;
+    }
+
+    /** Range of the interval, e.g. the slowest the user accepts */
+    public synchronized void setIntervalRange(int minIntervalMs, int maxIntervalMs) {
+        if (minIntervalMs < 1 || maxIntervalMs < minIntervalMs || maxIntervalMs > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid interval range " + minIntervalMs
+                    + " - " + maxIntervalMs);
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+    }
+
+    /** Most samples per second the host wants to process */
+    public synchronized void setMaxSamplesPerSecond(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Invalid samples per second " + samples);
+        }
+        maxSamplesPerSecond = samples;
+    }
+
+    /** Lag the host shall keep under, 0 to use the max_latency from INFO */
+    public synchronized void setTargetLagMs(long lagMs) {
+        configuredLagMs = lagMs;
+    }
+
+    /**
+     * Start from the max_latency in INFO, returns the interval to send ON
+     * with. Without a max_latency it starts from the slowest interval.
+     * overflowTotal is the current value of the overflow counter.
+     */
+    public synchronized int start(int maxLatencyMs, long overflowTotal) {
+        /** From the firmware of this start, a mod attached later may have another one */
+        targetLagMs = configuredLagMs > 0 ? configuredLagMs
+                : maxLatencyMs > 0 ? maxLatencyMs : maxIntervalMs;
+        intervalMs = clamp(maxLatencyMs > 0 ? maxLatencyMs : maxIntervalMs);
+        calmWindows = 0;
+        this.overflowTotal = overflowTotal;
+        lastOverflowTotal = overflowTotal;
+        resetWindow();
+        running = true;
+        return intervalMs;
+    }
+
+    public synchronized void stop() {
+        running = false;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /** A sample or frame was handled lagMs after it arrived */
+    public synchronized void onLag(long lagMs) {
+        windowSamples++;
+        windowLagMs += lagMs;
+        if (lagMs > windowMaxLagMs) {
+            windowMaxLagMs = lagMs;
+        }
+    }
+
+    /**
+     * Update the cumulative count of overflow events, e.g. dropped frames or
+     * an exhausted receive pool. Any increase in a window slows down.
+     */
+    public synchronized void setOverflowTotal(long total) {
+        overflowTotal = total;
+    }
+
+    /**
+     * Close the current window and decide on the interval. Calls back if it
+     * changes.
+     */
+    public Decision evaluate() {
+        Decision decision;
+        int next;
+        synchronized (this) {
+            if (!running) {
+                return Decision.HOLD;
+            }
+
+            long overflows = overflowTotal - lastOverflowTotal;
+            lastOverflowTotal = overflowTotal;
+            averageLagMs = windowSamples > 0 ? windowLagMs / windowSamples : 0;
+            maxLagMs = windowMaxLagMs;
+
+            next = intervalMs;
+            if (overflows > 0 || averageLagMs > targetLagMs) {
+                calmWindows = 0;
+                next = clamp(intervalMs * 2);
+            } else if (windowSamples > 0 && averageLagMs * 2 < targetLagMs
+                    && ++calmWindows >= CALM_WINDOWS) {
+                calmWindows = 0;
+                next = clamp(intervalMs - Math.max(intervalMs / 4, 1));
+            }
+
+            if (next > intervalMs) {
+                decision = Decision.SLOWER;
+                slowerCount++;
+            } else if (next < intervalMs) {
+                decision = Decision.FASTER;
+                fasterCount++;
+            } else {
+                decision = Decision.HOLD;
+            }
+            intervalMs = next;
+            lastDecision = decision;
+            decisionCount++;
+            resetWindow();
+        }
+
+        /** Call back out of the lock, it writes to RAW */
+        if (decision != Decision.HOLD && null != callback) {
+            callback.onIntervalChanged(next);
+        }
+        return decision;
+    }
+
+    public synchronized int getIntervalMs() {
+        return intervalMs;
+    }
+
+    public synchronized double getRateHz() {
+        return intervalMs > 0 ? 1000.0 / intervalMs : 0;
+    }
+
+    public synchronized long getTargetLagMs() {
+        return targetLagMs;
+    }
+
+    /** Average lag of the last window */
+    public synchronized long getAverageLagMs() {
+        return averageLagMs;
+    }
+
+    /** Max lag of the last window */
+    public synchronized long getMaxLagMs() {
+        return maxLagMs;
+    }
+
+    public synchronized Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    public synchronized long getDecisionCount() {
+        return decisionCount;
+    }
+
+    public synchronized long getFasterCount() {
+        return fasterCount;
+    }
+
+    public synchronized long getSlowerCount() {
+        return slowerCount;
+    }
+
+    /** Keep the interval in range and within the CPU budget */
+    private int clamp(int interval) {
+        int budget = (1000 + maxSamplesPerSecond - 1) / maxSamplesPerSecond;
+        int min = Math.min(Math.max(minIntervalMs, budget), maxIntervalMs);
+        return Math.max(min, Math.min(interval, maxIntervalMs));
+    }
+
+    private void resetWindow() {
+        windowSamples = 0;
+        windowLagMs = 0;
+        windowMaxLagMs = 0;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A class to represent the bounded queue of RAW commands waiting to be sent.
+ *
+ * When the mod stalls the queue gets full, and the overflow policy decides
+ * what happens to a new command. The queue keeps the enqueue time of each
+ * command, so the time spent waiting to be written can be measured.
+ */
+public class SendQueue {
+    /**
+     * What to do with a new command when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait for space, offer() rejects instead of waiting */
+        BLOCK,
+        /** Reject the new command */
+        REJECT,
+        /** Drop the oldest pending command to make room */
+        DROP_OLDEST,
+        /** Replace the pending command with same command ID, otherwise reject */
+        COALESCE,
+    }
+
+    /**
+     * Result of offer() / put()
+     */
+    public static final int RESULT_QUEUED = 0;
+    public static final int RESULT_COALESCED = 1;
+    public static final int RESULT_DROPPED_OLDEST = 2;
+    public static final int RESULT_REJECTED = 3;
+
+    private OverflowPolicy policy;
+
+    /** Circular buffer of commands and their enqueue time */
+    private byte[][] commands;
+    private long[] enqueueNanos;
+    private int head;
+    private int size;
+    /** Command dropped by the last offer() with DROP_OLDEST, until taken */
+    private byte[] lastDropped;
+
+    /**
+     * Queue statistics
+     */
+    private long enqueuedCount;
+    private long dequeuedCount;
+    private long coalescedCount;
+    private long droppedCount;
+    private long rejectedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private int maxDepth;
+
+    /**
+     * Constructor
+     */
+    public SendQueue(int capacity, OverflowPolicy policy) {
+        configure(capacity, policy);
+    }
+
+    /** Change capacity and policy, pending commands beyond capacity are dropped */
+    public synchronized void configure(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || null == policy) {
+            throw new IllegalArgumentException("Invalid queue " + capacity + " / " + policy);
+        }
+
+        byte[][] newCommands = new byte[capacity][];
+        long[] newEnqueueNanos = new long[capacity];
+        int keep = Math.min(size, capacity);
+        int skip = size - keep;
+        for (int i = 0; i < keep; i++) {
+            int index = (head + skip + i) % commands.length;
+            newCommands[i] = commands[index];
+            newEnqueueNanos[i] = enqueueNanos[index];
+        }
+        droppedCount += skip;
+
+        commands = newCommands;
+        enqueueNanos = newEnqueueNanos;
+        head = 0;
+        size = keep;
+        this.policy = policy;
+        notifyAll();
+    }
+
+    /**
+     * Add a command without waiting. With BLOCK policy a full queue rejects the
+     * command, as the caller asked not to wait.
+     */
+    public synchronized int offer(byte[] cmd) {
+        if (size < commands.length) {
+            add(cmd);
+            return RESULT_QUEUED;
+        }
+
+        switch (policy) {
+            case DROP_OLDEST:
+                lastDropped = removeFirst();
+                droppedCount++;
+                add(cmd);
+                return RESULT_DROPPED_OLDEST;
+            case COALESCE:
+                if (replaceSameCommand(cmd)) {
+                    return RESULT_COALESCED;
+                }
+                rejectedCount++;
+                return RESULT_REJECTED;
+            case BLOCK:
+            case REJECT:
+            default:
+                rejectedCount++;
+                return RESULT_REJECTED;
+        }
+    }
+
+    /**
+     * Add a command, with BLOCK policy wait up to timeoutMs for space. Other
+     * policies never wait and behave as offer().
+     */
+    public synchronized int put(byte[] cmd, long timeoutMs) throws InterruptedException {
+        if (policy == OverflowPolicy.BLOCK && size == commands.length) {
+            long deadline = System.nanoTime() + timeoutMs * 1000000L;
+            while (size == commands.length && policy == OverflowPolicy.BLOCK) {
+                long remain = deadline - System.nanoTime();
+                if (remain <= 0) {
+                    break;
+                }
+                wait(remain / 1000000L, (int) (remain % 1000000L));
+            }
+        }
+        return offer(cmd);
+    }
+
+    /**
+     * Take the command dropped by the last offer() or put() which returned
+     * RESULT_DROPPED_OLDEST, null if none. Hold the queue's lock across both
+     * calls to get the one of that call.
+     */
+    public synchronized byte[] takeDropped() {
+        byte[] cmd = lastDropped;
+        lastDropped = null;
+        return cmd;
+    }
+
+    /** Take the oldest command, or null if empty */
+    public synchronized byte[] poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        long wait = System.nanoTime() - enqueueNanos[head];
+        totalWaitNanos += wait;
+        if (wait > maxWaitNanos) {
+            maxWaitNanos = wait;
+        }
+        dequeuedCount++;
+        return removeFirst();
+    }
+
+    public synchronized void clear() {
+        while (size > 0) {
+            removeFirst();
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int getCapacity() {
+        return commands.length;
+    }
+
+    public synchronized OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getDequeuedCount() {
+        return dequeuedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Sum of time spent in queue by all dequeued commands */
+    public synchronized long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public synchronized long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    private void add(byte[] cmd) {
+        int tail = (head + size) % commands.length;
+        commands[tail] = cmd;
+        enqueueNanos[tail] = System.nanoTime();
+        size++;
+        enqueuedCount++;
+        if (size > maxDepth) {
+            maxDepth = size;
+        }
+    }
+
+    private byte[] removeFirst() {
+        byte[] cmd = commands[head];
+        commands[head] = null;
+        head = (head + 1) % commands.length;
+        size--;
+        notifyAll();
+        return cmd;
+    }
+
+    /** Replace the newest pending command with same command ID, keep its place */
+    private boolean replaceSameCommand(byte[] cmd) {
+        if (cmd.length <= Constants.CMD_OFFSET) {
+            return false;
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            int index = (head + i) % commands.length;
+            byte[] pending = commands[index];
+            if (pending.length > Constants.CMD_OFFSET
+                    && pending[Constants.CMD_OFFSET] == cmd[Constants.CMD_OFFSET]) {
+                commands[index] = cmd;
+                coalescedCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+}
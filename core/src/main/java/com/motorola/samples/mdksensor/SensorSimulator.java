@@ -0,0 +1,470 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class to simulate the MDK Temperature Sensor firmware on a RawTransport.
+ *
+ * It answers INFO with sensor_attr followed by a CHALLENGE, checks the
+ * challenge response, and streams DATA frames while the sensor is on. The
+ * sample rate can be raised far beyond the real hardware, and bursts and
+ * jitter can be injected, to soak test the RAW pipeline on the host or on a
+ * phone through a socket pair.
+ *
+ * With INFO version DATA_BATCH_VERSION or later it sends DATA_BATCH when ON
+ * asks for it, flushing a batch when full or when max_latency has passed
+ * since its first sample. With DATA_PACKED_VERSION or later it sends the
+ * batch as DATA_PACKED instead when asked for, also flushing when the next
+ * sample may not fit.
+ */
+public class SensorSimulator {
+    public static final int DEFAULT_VERSION = 1;
+    public static final int DEFAULT_MAX_LATENCY = 100;
+    public static final String DEFAULT_NAME = "MDK Temperature Simulator";
+    public static final int READ_BUFFER_SIZE = 4096;
+
+    /** Result of CHLGE_RESP, first payload byte is 0 if passed */
+    public static final int CHALLENGE_PASSED = 0;
+    public static final int CHALLENGE_FAILED = 1;
+
+    private final RawTransport transport;
+    private final Random random = new Random();
+
+    /**
+     * Simulation settings
+     */
+    private int version = DEFAULT_VERSION;
+    private int maxLatency = DEFAULT_MAX_LATENCY;
+    private String name = DEFAULT_NAME;
+    private volatile long periodNanosOverride;
+    private volatile int burstSize = 1;
+    private volatile long jitterNanos;
+    private volatile int batchSize = Constants.CMD_DATA_BATCH_MAX_SAMPLES;
+
+    /** Sensor state, changed by commands from host */
+    private volatile boolean sampling;
+    private volatile long periodNanos = 1000000000L;
+    private volatile boolean batching;
+    private volatile boolean packing;
+    private volatile long sampleStartNanos;
+    private long challenge;
+
+    private TransportReader reader;
+    private Thread sampler;
+    private volatile boolean running;
+
+    /** Serialise frame writes from the command and sampling threads */
+    private final Object writeLock = new Object();
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[1];
+
+    /**
+     * Simulator statistics
+     */
+    private volatile long samplesSent;
+    private volatile long writeCount;
+    private volatile long commandCount;
+    private volatile long challengeCount;
+    private volatile long challengePassedCount;
+
+    /**
+     * Constructor
+     */
+    public SensorSimulator(RawTransport transport) {
+        this.transport = transport;
+    }
+
+    /** The sensor_attr reported in INFO response */
+    public void setSensorAttr(int version, int maxLatency, String name) {
+        this.version = version;
+        this.maxLatency = maxLatency;
+        this.name = name;
+    }
+
+    /**
+     * Sample at rateHz regardless of the interval in ON command, e.g. 2000 for
+     * 2 kHz. 0 to follow the ON command.
+     */
+    public void setSampleRateHz(double rateHz) {
+        periodNanosOverride = rateHz > 0 ? (long) (1000000000L / rateHz) : 0;
+    }
+
+    /** Hold size samples and write them at once, 1 for no bursts */
+    public void setBurstSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid burst size " + size);
+        }
+        burstSize = size;
+    }
+
+    /** Most samples in a DATA_BATCH */
+    public void setBatchSize(int size) {
+        if (size < 1 || size > Constants.CMD_DATA_BATCH_MAX_SAMPLES) {
+            throw new IllegalArgumentException("Invalid batch size " + size);
+        }
+        batchSize = size;
+    }
+
+    /** Delay each sample randomly by up to jitterNanos */
+    public void setJitterNanos(long jitterNanos) {
+        this.jitterNanos = jitterNanos;
+    }
+
+    /** Start serving commands from host */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        reader = new TransportReader("simulatorReader", transport,
+                new FrameDecoder(new FrameDecoder.Callback() {
+                    @Override
+                    public void onFrame(byte[] buffer, int offset, int length) {
+                        onCommand(buffer, offset, length);
+                    }
+                }, true), READ_BUFFER_SIZE, new TransportReader.Callback() {
+                    @Override
+                    public void onReaderStopped(TransportReader reader, IOException exception) {
+                        running = false;
+                        LockSupport.unpark(sampler);
+                    }
+                });
+
+        sampler = new Thread("simulatorSampler") {
+            @Override
+            public void run() {
+                sample();
+            }
+        };
+
+        reader.start();
+        sampler.start();
+    }
+
+    /** Stop the simulator and close the transport, host reads end of stream */
+    public void stop() throws InterruptedException {
+        Thread samplerThread;
+        TransportReader readerThread;
+        synchronized (this) {
+            running = false;
+            samplerThread = sampler;
+            readerThread = reader;
+        }
+
+        try {
+            transport.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (null != samplerThread) {
+            LockSupport.unpark(samplerThread);
+            samplerThread.join();
+        }
+        if (null != readerThread) {
+            readerThread.join();
+        }
+    }
+
+    public boolean isSampling() {
+        return sampling;
+    }
+
+    public long getSamplesSent() {
+        return samplesSent;
+    }
+
+    /** Count of writes, less than samples sent when bursts are injected */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getChallengeCount() {
+        return challengeCount;
+    }
+
+    public long getChallengePassedCount() {
+        return challengePassedCount;
+    }
+
+    /** Handle a command frame from host */
+    private void onCommand(byte[] buffer, int offset, int length) {
+        commandCount++;
+        int cmd = buffer[offset + Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
+        int size = buffer[offset + Constants.SIZE_OFFSET] & 0xFF;
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+
+        try {
+            switch (cmd) {
+                case Constants.TEMP_RAW_COMMAND_INFO:
+                    sendInfo();
+                    sendChallenge();
+                    break;
+                case Constants.TEMP_RAW_COMMAND_ON:
+                    if (size >= Constants.SENSOR_COMMAND_SIZE) {
+                        int interval = (buffer[payload] & 0xFF) | (buffer[payload + 1] & 0xFF) << 8;
+                        periodNanos = Math.max(interval, 1) * 1000000L;
+                    }
+                    batching = version >= Constants.DATA_BATCH_VERSION
+                            && size >= Constants.SENSOR_COMMAND_FLAGS_SIZE
+                            && (buffer[payload + Constants.SENSOR_COMMAND_SIZE]
+                            & Constants.SENSOR_FLAG_DATA_BATCH) != 0;
+                    packing = version >= Constants.DATA_PACKED_VERSION
+                            && size >= Constants.SENSOR_COMMAND_FLAGS_SIZE
+                            && (buffer[payload + Constants.SENSOR_COMMAND_SIZE]
+                            & Constants.SENSOR_FLAG_DATA_PACKED) != 0;
+                    sampleStartNanos = System.nanoTime();
+                    sampling = true;
+                    sendResponse(cmd, null);
+                    LockSupport.unpark(sampler);
+                    break;
+                case Constants.TEMP_RAW_COMMAND_OFF:
+                    sampling = false;
+                    sendResponse(cmd, null);
+                    break;
+                case Constants.TEMP_RAW_COMMAND_CHLGE_RESP:
+                    byte[] encrypted = new byte[size];
+                    System.arraycopy(buffer, payload, encrypted, 0, size);
+                    checkChallengeResponse(encrypted);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    private void sendInfo() throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        int nameLength = Math.min(nameBytes.length,
+                FrameDecoder.MAX_PAYLOAD_SIZE - Constants.CMD_INFO_HEAD_SIZE - 1);
+        byte[] payload = new byte[Constants.CMD_INFO_HEAD_SIZE + nameLength + 1];
+        payload[Constants.CMD_INFO_VERSION_OFFSET] = (byte) version;
+        payload[Constants.CMD_INFO_LATENCYLOW_OFFSET] = (byte) maxLatency;
+        payload[Constants.CMD_INFO_LATENCYHIGH_OFFSET] = (byte) (maxLatency >> 8);
+        System.arraycopy(nameBytes, 0, payload, Constants.CMD_INFO_NAME_OFFSET, nameLength);
+        sendResponse(Constants.TEMP_RAW_COMMAND_INFO, payload);
+    }
+
+    /** Send a random number encrypted, host shall send it back plus CHALLENGE_ADDATION */
+    private void sendChallenge() throws IOException {
+        challenge = new SecureRandom().nextLong() & Long.MAX_VALUE;
+        ByteBuffer plain = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        plain.putLong(challenge);
+        byte[] encrypted = Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, plain.array());
+        challengeCount++;
+        sendResponse(Constants.TEMP_RAW_COMMAND_CHALLENGE, encrypted);
+    }
+
+    private void checkChallengeResponse(byte[] encrypted) throws IOException {
+        boolean passed = false;
+        byte[] plain = Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, encrypted);
+        if (null != plain && plain.length >= Long.SIZE / Byte.SIZE) {
+            long value = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN).getLong();
+            passed = value == challenge + Constants.CHALLENGE_ADDATION;
+        }
+        if (passed) {
+            challengePassedCount++;
+        }
+
+        byte[] payload = new byte[Constants.CMD_CHLGE_RESP_SIZE];
+        payload[Constants.CMD_CHLGE_RESP_OFFSET] =
+                (byte) (passed ? CHALLENGE_PASSED : CHALLENGE_FAILED);
+        sendResponse(Constants.TEMP_RAW_COMMAND_CHLGE_RESP, payload);
+    }
+
+    private void sendResponse(int cmd, byte[] payload) throws IOException {
+        int size = null == payload ? 0 : payload.length;
+        ByteBuffer frame = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE + size);
+        frame.put((byte) (cmd | Constants.TEMP_RAW_COMMAND_RESP_MASK));
+        frame.put((byte) size);
+        if (null != payload) {
+            frame.put(payload);
+        }
+        frame.flip();
+        write(frame);
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        synchronized (writeLock) {
+            writeBuffers[0] = frame;
+            while (frame.hasRemaining()) {
+                transport.write(writeBuffers, 0, 1);
+            }
+            writeBuffers[0] = null;
+            writeCount++;
+        }
+    }
+
+    /** Stream DATA frames while sampling, paced by the sample period */
+    private void sample() {
+        ByteBuffer burst = ByteBuffer.allocate(FrameEncoder.DATA_LENGTH * burstSize);
+        ByteBuffer batch = ByteBuffer.allocate(FrameDecoder.MAX_FRAME_SIZE);
+        int[] deltas = new int[Constants.CMD_DATA_BATCH_MAX_SAMPLES];
+        int[] values = new int[Constants.CMD_DATA_BATCH_MAX_SAMPLES];
+        DeltaVarintEncoder encoder = new DeltaVarintEncoder(0);
+        int packedLength = 0;
+        long deadline = System.nanoTime();
+        long index = 0;
+        int held = 0;
+        int batched = 0;
+        long batchStartNanos = 0;
+        long baseTicks = 0;
+        long lastTicks = 0;
+
+        while (running) {
+            if (!sampling) {
+                /** Samples held for a burst or batch are dropped when turned off */
+                burst.clear();
+                held = 0;
+                batched = 0;
+                LockSupport.parkNanos(this, 10000000L);
+                deadline = System.nanoTime();
+                continue;
+            }
+
+            long period = periodNanosOverride > 0 ? periodNanosOverride : periodNanos;
+            deadline += period;
+            long wake = deadline;
+            if (jitterNanos > 0) {
+                wake += (long) (random.nextDouble() * jitterNanos);
+            }
+            long now = System.nanoTime();
+            while (running && sampling && now < wake) {
+                LockSupport.parkNanos(this, wake - now);
+                now = System.nanoTime();
+            }
+            if (!running || !sampling) {
+                continue;
+            }
+
+            int data = sampleValue(index++);
+            if (packing) {
+                long ticks = (now - sampleStartNanos) / (Constants.CMD_DATA_BATCH_TICK_US * 1000L);
+                if (batched == 0) {
+                    batchStartNanos = now;
+                    encoder.reset();
+                    packedLength = 0;
+                }
+                packedLength += encoder.encode(batch.array(),
+                        FrameEncoder.DATA_PACKED_SAMPLES_OFFSET + packedLength, ticks, data);
+                batched++;
+
+                if (batched >= Math.min(batchSize, Constants.CMD_DATA_PACKED_MAX_SAMPLES)
+                        || FrameEncoder.DATA_PACKED_MAX_SAMPLES_LENGTH - packedLength
+                        < DeltaVarintEncoder.MAX_SAMPLE_SIZE
+                        || now - batchStartNanos >= maxLatency * 1000000L) {
+                    writePacked(batch, batched, packedLength);
+                    batched = 0;
+                }
+                continue;
+            }
+            if (batching) {
+                long ticks = (now - sampleStartNanos) / (Constants.CMD_DATA_BATCH_TICK_US * 1000L);
+                if (batched > 0 && ticks - lastTicks > 0xFFFF) {
+                    /** The delta does not fit, start a new batch */
+                    writeBatch(batch, baseTicks, deltas, values, batched);
+                    batched = 0;
+                }
+                if (batched == 0) {
+                    batchStartNanos = now;
+                    baseTicks = ticks;
+                    lastTicks = ticks;
+                }
+                deltas[batched] = (int) (ticks - lastTicks);
+                values[batched++] = data;
+                lastTicks = ticks;
+
+                if (batched >= batchSize || now - batchStartNanos >= maxLatency * 1000000L) {
+                    writeBatch(batch, baseTicks, deltas, values, batched);
+                    batched = 0;
+                }
+                continue;
+            }
+
+            if (held == 0 && burst.capacity() != FrameEncoder.DATA_LENGTH * burstSize) {
+                burst = ByteBuffer.allocate(FrameEncoder.DATA_LENGTH * burstSize);
+            }
+
+            burst.position(burst.position() + FrameEncoder.encodeData(
+                    burst.array(), burst.position(), data));
+            held++;
+
+            if (!burst.hasRemaining()) {
+                burst.flip();
+                try {
+                    write(burst);
+                    samplesSent += held;
+                } catch (IOException e) {
+                    running = false;
+                }
+                burst.clear();
+                held = 0;
+            }
+        }
+    }
+
+    private void writeBatch(ByteBuffer batch, long baseTicks, int[] deltas, int[] values, int count) {
+        batch.clear();
+        batch.limit(FrameEncoder.encodeDataBatch(batch.array(), 0, baseTicks, deltas, values, count));
+        try {
+            write(batch);
+            samplesSent += count;
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    private void writePacked(ByteBuffer batch, int count, int samplesLength) {
+        batch.clear();
+        batch.limit(FrameEncoder.encodeDataPacked(batch.array(), 0, count, samplesLength));
+        try {
+            write(batch);
+            samplesSent += count;
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    /** Raw reading of sample index, a slow wave around 25 degree */
+    private int sampleValue(long index) {
+        return DataFrame.toRawData(25 + 2 * Math.sin(index / 100.0));
+    }
+}
@@ -0,0 +1,683 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of (timestamp, value) samples on disk.
+ *
+ * The log is a directory of fixed size segment files, each mapped to memory
+ * with a MappedByteBuffer, so an append is a copy to the page cache which
+ * survives a crash of the app. Samples are compressed as they come into
+ * blocks of up to BLOCK_SIZE bytes by GorillaEncoder, with the value as
+ * float bits, and a block is written to the segment once full or on flush():
+ *
+ * struct segment_header {
+ * int32_t     magic;
+ * int32_t     version;
+ * int32_t     segment_size;
+ * int32_t     reserved;
+ * };
+ * struct block {
+ * int32_t     length;           of samples, 0 for end of segment
+ * int32_t     count;
+ * int64_t     first_timestamp;
+ * int64_t     last_timestamp;   the greatest of the block
+ * float       min;
+ * float       max;
+ * int32_t     crc;              CRC32 of samples
+ * uint8_t     samples[length];
+ * };
+ *
+ * The first timestamp of each block is kept in a sparse index per segment,
+ * so read() finds the start of a range by binary search, and readBlocks()
+ * gives the range and extremes of the blocks from their headers without
+ * decoding them. Range lookup expects the timestamps not to decrease, across
+ * runs too, so the app logs wall clock microseconds and a sample older than
+ * the last one in the log is stored at the last timestamp. Only the newest
+ * maxSegments segments are kept, the oldest is deleted when a new one is
+ * created. When opened, the blocks are checked against their CRC and the segment is cut
+ * after the last good one, which recovers the tail after a crash during a
+ * write. Segments of version 1, with DeltaVarintEncoder samples and no last
+ * timestamp, min and max in the block header, are still read.
+ */
+public class SessionLog implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+    public static final int BLOCK_SIZE = 4096;
+
+    static final int MAGIC = 0x534B444D;
+    static final int FORMAT_VERSION = 2;
+    static final int FORMAT_VERSION_DELTA_VARINT = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int BLOCK_LENGTH_OFFSET = 0;
+    static final int BLOCK_COUNT_OFFSET = 4;
+    static final int BLOCK_TIMESTAMP_OFFSET = 8;
+    static final int BLOCK_LAST_TIMESTAMP_OFFSET = 16;
+    static final int BLOCK_MIN_OFFSET = 24;
+    static final int BLOCK_MAX_OFFSET = 28;
+    static final int BLOCK_CRC_OFFSET = 32;
+    static final int BLOCK_HEADER_SIZE = 36;
+    static final int DELTA_VARINT_BLOCK_CRC_OFFSET = 16;
+    static final int DELTA_VARINT_BLOCK_HEADER_SIZE = 20;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Visitor of the blocks of readBlocks()
+     */
+    public interface BlockVisitor {
+        void onBlock(long firstTimestampUs, long lastTimestampUs, int count, float min, float max);
+    }
+
+    /**
+     * A segment file and the index of its blocks
+     */
+    private static class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        final int version;
+        final int headerSize;
+        final int crcOffset;
+        int writeOffset = SEGMENT_HEADER_SIZE;
+        long[] blockTimestamps = new long[64];
+        int[] blockOffsets = new int[64];
+        int blockCount;
+        long sampleCount;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        Segment(long id, File file, MappedByteBuffer buffer, int version) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.version = version;
+            boolean deltaVarint = version == FORMAT_VERSION_DELTA_VARINT;
+            headerSize = deltaVarint ? DELTA_VARINT_BLOCK_HEADER_SIZE : BLOCK_HEADER_SIZE;
+            crcOffset = deltaVarint ? DELTA_VARINT_BLOCK_CRC_OFFSET : BLOCK_CRC_OFFSET;
+        }
+
+        void addBlock(int offset, long firstTimestamp) {
+            if (blockCount == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                blockTimestamps = Arrays.copyOf(blockTimestamps, blockCount * 2);
+            }
+            blockOffsets[blockCount] = offset;
+            blockTimestamps[blockCount++] = firstTimestamp;
+        }
+
+        /** Index of the last block starting at or before timestamp, 0 if none */
+        int findBlock(long timestamp) {
+            int index = Arrays.binarySearch(blockTimestamps, 0, blockCount, timestamp);
+            if (index < 0) {
+                index = -index - 2;
+            } else {
+                /** Equal timestamps may span blocks, start from the first */
+                while (index > 0 && blockTimestamps[index - 1] == timestamp) {
+                    index--;
+                }
+            }
+            return Math.max(index, 0);
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+    private final List<Segment> segments = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+
+    /** Block being collected, written to the current segment once closed */
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final GorillaEncoder encoder = new GorillaEncoder();
+    private final GorillaDecoder decoder = new GorillaDecoder();
+    private final DeltaVarintDecoder deltaVarintDecoder = new DeltaVarintDecoder(0, 1);
+    private final byte[] readBlock = new byte[BLOCK_SIZE];
+    private int blockCount;
+    private long blockTimestamp;
+    private long blockLastTimestamp;
+    private float blockMin;
+    private float blockMax;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private boolean closed;
+
+    /** Range of read() in progress */
+    private long readFrom;
+    private long readTo;
+    private long readCount;
+    private TimeSeriesBuffer.Visitor readVisitor;
+    private final SampleSink readSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            if (timestampUs >= readFrom && timestampUs <= readTo) {
+                readVisitor.onSample(readCount++, timestampUs, Float.intBitsToFloat(rawData));
+            }
+        }
+    };
+
+    /** Summary of the block of readBlocks() in progress */
+    private int summaryCount;
+    private long summaryFirst;
+    private long summaryLast;
+    private float summaryMin;
+    private float summaryMax;
+    private final SampleSink summarySink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            float value = Float.intBitsToFloat(rawData);
+            summaryCount++;
+            summaryLast = Math.max(summaryLast, timestampUs);
+            summaryMin = Math.min(summaryMin, value);
+            summaryMax = Math.max(summaryMax, value);
+        }
+    };
+
+    /**
+     * Log statistics
+     */
+    private long sampleCount;
+    private long recoveredBlocks;
+    private long truncatedBytes;
+    private long deletedSegments;
+
+    /**
+     * Open the log in directory, recovering the segments already there.
+     * segmentSize applies to new segments.
+     */
+    public SessionLog(File directory, int segmentSize) throws IOException {
+        if (segmentSize < SEGMENT_HEADER_SIZE + BLOCK_HEADER_SIZE + BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    /** Add a sample, one older than the last in the log is stored at the last timestamp */
+    public synchronized void append(long timestampUs, float value) throws IOException {
+        checkOpen();
+        if (timestampUs < lastTimestamp) {
+            timestampUs = lastTimestamp;
+        }
+        if (blockCount > 0 && BLOCK_SIZE - encoder.getLength() < GorillaEncoder.MAX_SAMPLE_SIZE) {
+            writeBlock();
+        }
+        if (blockCount == 0) {
+            encoder.reset(block, 0);
+            blockTimestamp = timestampUs;
+            blockLastTimestamp = timestampUs;
+            blockMin = value;
+            blockMax = value;
+        }
+        encoder.encode(timestampUs, Float.floatToRawIntBits(value));
+        blockCount++;
+        blockLastTimestamp = Math.max(blockLastTimestamp, timestampUs);
+        blockMin = Math.min(blockMin, value);
+        blockMax = Math.max(blockMax, value);
+        sampleCount++;
+        lastTimestamp = Math.max(lastTimestamp, timestampUs);
+    }
+
+    /**
+     * Keep only the newest maxSegments segments, deleting the oldest ones
+     * now and whenever a new segment is created.
+     */
+    public synchronized void setMaxSegments(int maxSegments) {
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Invalid max segments " + maxSegments);
+        }
+        this.maxSegments = maxSegments;
+        trimSegments();
+    }
+
+    /** Write the samples collected so far to the segment */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        writeBlock();
+    }
+
+    /** Write the collected samples and force the segment to the storage device */
+    public synchronized void sync() throws IOException {
+        flush();
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+    }
+
+    /**
+     * Visit the samples with timestamp in [fromUs, toUs] in order of the log,
+     * including the ones not flushed yet. The sequence given to visitor
+     * counts the samples visited. Returns the count visited.
+     */
+    public synchronized long read(long fromUs, long toUs, TimeSeriesBuffer.Visitor visitor) {
+        checkOpen();
+        readFrom = fromUs;
+        readTo = toUs;
+        readCount = 0;
+        readVisitor = visitor;
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (segment.blockCount == 0 || segment.lastTimestamp < fromUs) {
+                    continue;
+                }
+                if (segment.blockTimestamps[0] > toUs) {
+                    break;
+                }
+                for (int b = segment.findBlock(fromUs); b < segment.blockCount; b++) {
+                    if (segment.blockTimestamps[b] > toUs) {
+                        break;
+                    }
+                    decodeBlock(segment, segment.blockOffsets[b]);
+                }
+            }
+            if (blockCount > 0 && blockTimestamp <= toUs) {
+                decoder.decode(block, 0, encoder.getLength(), blockCount, readSink);
+            }
+            return readCount;
+        } finally {
+            readVisitor = null;
+        }
+    }
+
+    /**
+     * Visit the blocks with samples in [fromUs, toUs] in order of the log,
+     * including the one not flushed yet, from their headers. Returns the
+     * count of blocks visited.
+     */
+    public synchronized int readBlocks(long fromUs, long toUs, BlockVisitor visitor) {
+        checkOpen();
+        int visited = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.blockCount == 0 || segment.lastTimestamp < fromUs) {
+                continue;
+            }
+            if (segment.blockTimestamps[0] > toUs) {
+                break;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            for (int b = segment.findBlock(fromUs); b < segment.blockCount; b++) {
+                int offset = segment.blockOffsets[b];
+                if (segment.blockTimestamps[b] > toUs) {
+                    break;
+                }
+                if (segment.version == FORMAT_VERSION_DELTA_VARINT) {
+                    /** No summary in the header, decode it */
+                    summarize(segment, offset);
+                } else {
+                    summaryCount = buffer.getInt(offset + BLOCK_COUNT_OFFSET);
+                    summaryFirst = segment.blockTimestamps[b];
+                    summaryLast = buffer.getLong(offset + BLOCK_LAST_TIMESTAMP_OFFSET);
+                    summaryMin = buffer.getFloat(offset + BLOCK_MIN_OFFSET);
+                    summaryMax = buffer.getFloat(offset + BLOCK_MAX_OFFSET);
+                }
+                if (summaryLast >= fromUs) {
+                    visitor.onBlock(summaryFirst, summaryLast, summaryCount, summaryMin, summaryMax);
+                    visited++;
+                }
+            }
+        }
+        if (blockCount > 0 && blockTimestamp <= toUs && blockLastTimestamp >= fromUs) {
+            visitor.onBlock(blockTimestamp, blockLastTimestamp, blockCount, blockMin, blockMax);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * The samples of the last spanUs of the log, with timeBaseUs subtracted
+     * from their timestamps, in a buffer of at most maxCapacity samples.
+     * Samples before timeBaseUs, e.g. logged before the last boot when the
+     * base maps the wall clock to elapsedRealtime, are dropped rather than
+     * given negative timestamps ahead of the live history. Null if none left.
+     */
+    public synchronized TimeSeriesBuffer readBack(long spanUs, final long timeBaseUs,
+                                                  int maxCapacity) {
+        if (sampleCount == 0 || lastTimestamp < timeBaseUs) {
+            return null;
+        }
+
+        /** Size the buffer from the block headers, without decoding them */
+        long fromUs = Math.max(lastTimestamp - spanUs, timeBaseUs);
+        final long[] count = new long[1];
+        readBlocks(fromUs, Long.MAX_VALUE, new BlockVisitor() {
+            @Override
+            public void onBlock(long firstTimestampUs, long lastTimestampUs, int blockCount,
+                                float min, float max) {
+                count[0] += blockCount;
+            }
+        });
+        if (count[0] == 0) {
+            return null;
+        }
+
+        final TimeSeriesBuffer readBack = new TimeSeriesBuffer((int) Math.min(count[0], maxCapacity));
+        read(fromUs, Long.MAX_VALUE, new TimeSeriesBuffer.Visitor() {
+            @Override
+            public void onSample(long sequence, long timestampUs, float value) {
+                readBack.append(timestampUs - timeBaseUs, value);
+            }
+        });
+        return readBack.size() > 0 ? readBack : null;
+    }
+
+    /** Samples in the log, including the ones not flushed yet */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Bytes written to the segments with their headers, not the ones preallocated */
+    public synchronized long getWrittenBytes() {
+        long bytes = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            bytes += segments.get(i).writeOffset;
+        }
+        return bytes;
+    }
+
+    /** Timestamp of the first sample, Long.MIN_VALUE if empty */
+    public synchronized long getFirstTimestamp() {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).blockCount > 0) {
+                return segments.get(i).blockTimestamps[0];
+            }
+        }
+        return blockCount > 0 ? blockTimestamp : Long.MIN_VALUE;
+    }
+
+    /** Greatest timestamp in the log, Long.MIN_VALUE if empty */
+    public synchronized long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Blocks found good when the log was opened */
+    public synchronized long getRecoveredBlocks() {
+        return recoveredBlocks;
+    }
+
+    /** Bytes cut from the tail of segments when the log was opened */
+    public synchronized long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    /** Oldest segments deleted beyond maxSegments */
+    public synchronized long getDeletedSegments() {
+        return deletedSegments;
+    }
+
+    /** Flush and unmap, the log can not be used after */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            writeBlock();
+        } finally {
+            closed = true;
+            segments.clear();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Session log closed");
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockCount == 0) {
+            return;
+        }
+
+        int blockLength = encoder.getLength();
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (null == segment || segment.version != FORMAT_VERSION
+                || segment.buffer.capacity() - segment.writeOffset < BLOCK_HEADER_SIZE + blockLength) {
+            segment = createSegment(null == segment ? 0 : segment.id + 1);
+        }
+
+        crc.reset();
+        crc.update(block, 0, blockLength);
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.writeOffset;
+
+        /** The samples first and the length last, a torn block reads as the end */
+        buffer.position(offset + BLOCK_HEADER_SIZE);
+        buffer.put(block, 0, blockLength);
+        buffer.putInt(offset + BLOCK_COUNT_OFFSET, blockCount);
+        buffer.putLong(offset + BLOCK_TIMESTAMP_OFFSET, blockTimestamp);
+        buffer.putLong(offset + BLOCK_LAST_TIMESTAMP_OFFSET, blockLastTimestamp);
+        buffer.putFloat(offset + BLOCK_MIN_OFFSET, blockMin);
+        buffer.putFloat(offset + BLOCK_MAX_OFFSET, blockMax);
+        buffer.putInt(offset + BLOCK_CRC_OFFSET, (int) crc.getValue());
+        buffer.putInt(offset + BLOCK_LENGTH_OFFSET, blockLength);
+
+        segment.addBlock(offset, blockTimestamp);
+        segment.sampleCount += blockCount;
+        segment.lastTimestamp = Math.max(segment.lastTimestamp, blockLastTimestamp);
+        segment.writeOffset = offset + BLOCK_HEADER_SIZE + blockLength;
+        blockCount = 0;
+    }
+
+    /** Decode the block at offset of segment, returns the count of samples or -1 */
+    private int decodeBlock(Segment segment, int offset, SampleSink sink) {
+        MappedByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(offset + BLOCK_LENGTH_OFFSET);
+        int count = buffer.getInt(offset + BLOCK_COUNT_OFFSET);
+        buffer.position(offset + segment.headerSize);
+        buffer.get(readBlock, 0, length);
+        if (segment.version == FORMAT_VERSION_DELTA_VARINT) {
+            deltaVarintDecoder.reset();
+            return deltaVarintDecoder.decode(readBlock, 0, length, sink);
+        }
+        return decoder.decode(readBlock, 0, length, count, sink);
+    }
+
+    private void decodeBlock(Segment segment, int offset) {
+        decodeBlock(segment, offset, readSink);
+    }
+
+    /** Summary of a version 1 block, which has none in its header */
+    private void summarize(Segment segment, int offset) {
+        summaryCount = 0;
+        summaryFirst = segment.buffer.getLong(offset + BLOCK_TIMESTAMP_OFFSET);
+        summaryLast = Long.MIN_VALUE;
+        summaryMin = Float.MAX_VALUE;
+        summaryMax = -Float.MAX_VALUE;
+        decodeBlock(segment, offset, summarySink);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        File file = new File(directory, segmentName(id));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can not replace " + file);
+        }
+        MappedByteBuffer buffer = map(file, segmentSize);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, segmentSize);
+        buffer.putInt(12, 0);
+        Segment segment = new Segment(id, file, buffer, FORMAT_VERSION);
+        segments.add(segment);
+        trimSegments();
+        return segment;
+    }
+
+    /** Delete the oldest segments beyond maxSegments, their samples are gone */
+    private void trimSegments() {
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            sampleCount -= oldest.sampleCount;
+            deletedSegments++;
+            /** The mapping stays valid until collected, nothing reads it any more */
+            oldest.file.delete();
+        }
+    }
+
+    /** Open the segments in the directory in order, checking every block */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        if (null == files) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            long id;
+            try {
+                id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            long length = file.length();
+            if (length < SEGMENT_HEADER_SIZE + BLOCK_HEADER_SIZE || length > Integer.MAX_VALUE) {
+                /** Created but never written */
+                truncatedBytes += length;
+                file.delete();
+                continue;
+            }
+            MappedByteBuffer buffer = map(file, (int) length);
+            int version = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC
+                    || (version != FORMAT_VERSION && version != FORMAT_VERSION_DELTA_VARINT)) {
+                continue;
+            }
+
+            Segment segment = new Segment(id, file, buffer, version);
+            recoverBlocks(segment);
+            segments.add(segment);
+        }
+    }
+
+    private void recoverBlocks(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int offset = SEGMENT_HEADER_SIZE;
+        byte[] samples = readBlock;
+        final long[] last = {Long.MIN_VALUE};
+        SampleSink lastSink = new SampleSink() {
+            @Override
+            public void onSample(long timestampUs, int rawData) {
+                last[0] = Math.max(last[0], timestampUs);
+            }
+        };
+
+        int headerSize = segment.headerSize;
+        while (capacity - offset >= headerSize) {
+            int length = buffer.getInt(offset + BLOCK_LENGTH_OFFSET);
+            int count = buffer.getInt(offset + BLOCK_COUNT_OFFSET);
+            if (length <= 0 || length > BLOCK_SIZE || count <= 0
+                    || capacity - offset - headerSize < length) {
+                break;
+            }
+            buffer.position(offset + headerSize);
+            buffer.get(samples, 0, length);
+            crc.reset();
+            crc.update(samples, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + segment.crcOffset)) {
+                break;
+            }
+            if (segment.version == FORMAT_VERSION_DELTA_VARINT) {
+                deltaVarintDecoder.reset();
+                if (deltaVarintDecoder.decode(samples, 0, length, lastSink) != count) {
+                    break;
+                }
+            } else {
+                /** The header has the last timestamp, no need to decode */
+                last[0] = Math.max(last[0], buffer.getLong(offset + BLOCK_LAST_TIMESTAMP_OFFSET));
+            }
+
+            segment.addBlock(offset, buffer.getLong(offset + BLOCK_TIMESTAMP_OFFSET));
+            segment.sampleCount += count;
+            recoveredBlocks++;
+            offset += headerSize + length;
+        }
+
+        /** Clear what follows the last good block, new blocks are appended there */
+        int end = offset;
+        while (end < capacity && buffer.get(end) == 0) {
+            end++;
+        }
+        if (end < capacity) {
+            truncatedBytes += capacity - offset;
+            for (int i = offset; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        segment.writeOffset = offset;
+        segment.lastTimestamp = last[0];
+        sampleCount += segment.sampleCount;
+        lastTimestamp = Math.max(lastTimestamp, last[0]);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            /** The mapping stays valid after the channel is closed */
+            raf.close();
+        }
+    }
+
+    static String segmentName(long id) {
+        return String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+}
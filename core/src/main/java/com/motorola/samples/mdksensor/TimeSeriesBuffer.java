@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+/**
+ * A circular buffer of (timestamp, value) samples in primitive arrays.
+ *
+ * Each appended sample gets a sequence number, counting from 0. The buffer
+ * keeps the last capacity of them, evicting the oldest in O(1) without
+ * shifting or boxing. Readers address samples by sequence number, so a
+ * range [first, end) taken at one moment stays valid for reading, without a
+ * copy, until later appends evict it; isValid() tells whether they have.
+ *
+ * One thread appends. Other threads may read, checking isValid() after
+ * reading a sample to know it was not overwritten meanwhile.
+ */
+public class TimeSeriesBuffer {
+    /**
+     * Visitor of the samples of forEach()
+     */
+    public interface Visitor {
+        void onSample(long sequence, long timestampUs, float value);
+    }
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final float[] values;
+
+    /** Sequence number of the next sample, published after the sample is stored */
+    private volatile long end;
+    /** Sequence number of the oldest sample kept after clear() */
+    private volatile long clearedEnd;
+
+    /**
+     * Constructor
+     */
+    public TimeSeriesBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        values = new float[capacity];
+    }
+
+    public void append(long timestampUs, float value) {
+        int index = (int) (end % capacity);
+        timestamps[index] = timestampUs;
+        values[index] = value;
+        end++;
+    }
+
+    /** Forget all samples, sequence numbers keep counting */
+    public void clear() {
+        clearedEnd = end;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Count of samples kept */
+    public int size() {
+        return (int) (end - getFirstSequence());
+    }
+
+    /** Sequence number of the oldest sample kept */
+    public long getFirstSequence() {
+        long e = end;
+        return Math.max(clearedEnd, e - capacity);
+    }
+
+    /** Sequence number after the newest sample, the count of samples ever appended */
+    public long getEndSequence() {
+        return end;
+    }
+
+    /** Samples ever evicted to make room, not counting clear() */
+    public long getEvictedCount() {
+        return Math.max(0, end - capacity);
+    }
+
+    /** Whether the sample of sequence is still kept */
+    public boolean isValid(long sequence) {
+        return sequence >= getFirstSequence() && sequence < end;
+    }
+
+    public long getTimestamp(long sequence) {
+        return timestamps[(int) (sequence % capacity)];
+    }
+
+    public float getValue(long sequence) {
+        return values[(int) (sequence % capacity)];
+    }
+
+    /**
+     * Visit the kept samples of [from, to) in order, returns the count
+     * visited. The range is cut to the samples kept at the call.
+     */
+    public int forEach(long from, long to, Visitor visitor) {
+        long first = Math.max(from, getFirstSequence());
+        long last = Math.min(to, end);
+        for (long sequence = first; sequence < last; sequence++) {
+            int index = (int) (sequence % capacity);
+            visitor.onSample(sequence, timestamps[index], values[index]);
+        }
+        return (int) Math.max(0, last - first);
+    }
+}
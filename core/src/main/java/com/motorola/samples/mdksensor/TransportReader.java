@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import java.io.IOException;
+
+/**
+ * A thread to read a RAW transport which can not be polled, and feed the bytes
+ * to a frame decoder. The thread ends at end of stream, or when the transport
+ * is closed.
+ */
+public class TransportReader extends Thread {
+    /**
+     * Callback when reading stopped, exception is null at end of stream
+     */
+    public interface Callback {
+        void onReaderStopped(TransportReader reader, IOException exception);
+    }
+
+    private final RawTransport transport;
+    private final FrameDecoder decoder;
+    private final Callback callback;
+    private final byte[] buffer;
+    private volatile long bytesRead;
+
+    /**
+     * Constructor
+     */
+    public TransportReader(String name, RawTransport transport, FrameDecoder decoder,
+                           int bufferSize, Callback callback) {
+        super(name);
+        this.transport = transport;
+        this.decoder = decoder;
+        this.callback = callback;
+        buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void run() {
+        IOException exception = null;
+        try {
+            int ret;
+            while ((ret = transport.read(buffer, 0, buffer.length)) >= 0) {
+                if (ret > 0) {
+                    bytesRead += ret;
+                    decoder.decode(buffer, 0, ret);
+                }
+            }
+        } catch (IOException e) {
+            exception = e;
+        }
+
+        if (null != callback) {
+            callback.onReaderStopped(this, exception);
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * ChallengeSession unit test, the answer shall match the one built with
+ * Constants.getAESECBEncryptor() / getAESECBDecryptor().
+ */
+public class ChallengeSessionTest {
+    private static byte[] encryptNumber(long number) {
+        byte[] plain = ByteBuffer.allocate(Long.SIZE / Byte.SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN).putLong(number).array();
+        return Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, plain);
+    }
+
+    @Test
+    public void answer_addsChallengeAddation() {
+        ChallengeSession session = new ChallengeSession(Constants.AES_ECB_KEY);
+        long[] numbers = {0, 1, 0x123456789ABCDEFL, Long.MAX_VALUE - 777};
+        for (long number : numbers) {
+            byte[] cmd = session.answer(encryptNumber(number), 0, Constants.CMD_CHALLENGE_SIZE);
+
+            ChallengeRespFrame frame = new ChallengeRespFrame();
+            assertEquals(true, frame.wrap(cmd, 0, cmd.length));
+            byte[] cipher = new byte[frame.getPayloadSize()];
+            System.arraycopy(cmd, frame.getPayloadOffset(), cipher, 0, cipher.length);
+            byte[] plain = Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, cipher);
+            long answer = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN).getLong();
+            assertEquals(number + Constants.CHALLENGE_ADDATION, answer);
+        }
+        assertEquals(numbers.length, session.getAnswerCount());
+    }
+
+    @Test
+    public void answer_failsOnBadCipherText() {
+        ChallengeSession session = new ChallengeSession(Constants.AES_ECB_KEY);
+        byte[] bad = new byte[Constants.CMD_CHALLENGE_SIZE - 1];
+        assertNull(session.answer(bad, 0, bad.length));
+        assertEquals(1, session.getFailureCount());
+
+        /** The session still works after failure */
+        byte[] cmd = session.answer(encryptNumber(5), 0, Constants.CMD_CHALLENGE_SIZE);
+        assertEquals(FrameDecoder.HEADER_SIZE + Constants.CMD_CHALLENGE_SIZE, cmd.length);
+    }
+}
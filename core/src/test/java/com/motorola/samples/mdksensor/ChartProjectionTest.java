@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ChartProjection unit test, which will execute on the development machine
+ * (host).
+ */
+public class ChartProjectionTest {
+    @Test
+    public void project_fitsPointsToBounds() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(16);
+        for (int i = 0; i < 11; i++) {
+            buffer.append(i, i % 2 == 0 ? 20f : 30f);
+        }
+        Decimator decimator = new Decimator(Decimator.Mode.MIN_MAX, 32);
+        int count = decimator.decimate(buffer, 0, 11);
+        assertEquals(11, count);
+
+        ChartProjection projection = new ChartProjection(32);
+        projection.setBounds(0, 0, 100, 50);
+        projection.setRange(0, 10, 20, 30);
+        int length = projection.project(decimator, count);
+
+        float[] lines = projection.getLines();
+        assertEquals(40, length);
+        /** First segment from (0, 20) at bottom left to (1, 30) at top */
+        assertEquals(0, lines[0], 0);
+        assertEquals(50, lines[1], 0);
+        assertEquals(10, lines[2], 0);
+        assertEquals(0, lines[3], 0);
+        /** Segments join, the last ends at the right */
+        assertEquals(lines[2], lines[4], 0);
+        assertEquals(lines[3], lines[5], 0);
+        assertEquals(100, lines[length - 2], 0);
+        assertEquals(5.0, projection.toDataX(50), 1e-9);
+    }
+
+    @Test
+    public void project_pointsOnTime() {
+        long[] xs = {1000000L, 1000000L, 2000000L, 2000000L};
+        float[] ys = {20f, 30f, 25f, 25f};
+        ChartProjection projection = new ChartProjection(4);
+        projection.setBounds(0, 0, 100, 50);
+        projection.setRange(1000000L, 2000000L, 20, 30);
+        int length = projection.project(xs, ys, 4);
+
+        float[] lines = projection.getLines();
+        assertEquals(12, length);
+        /** Min to max of the first bucket, then on to the second at the right */
+        assertEquals(0, lines[0], 0);
+        assertEquals(50, lines[1], 0);
+        assertEquals(0, lines[2], 0);
+        assertEquals(0, lines[3], 0);
+        assertEquals(100, lines[6], 0);
+        assertEquals(25, lines[7], 0);
+        assertEquals(1500000.0, projection.toDataX(50), 1e-9);
+    }
+
+    @Test
+    public void formatValue_oneDecimal() {
+        char[] chars = new char[24];
+        assertEquals("72.4", new String(chars, 0, ChartProjection.formatValue(72.44, chars)));
+        assertEquals("-3.0", new String(chars, 0, ChartProjection.formatValue(-2.96, chars)));
+        assertEquals("0.0", new String(chars, 0, ChartProjection.formatValue(0, chars)));
+        assertEquals("128.1", new String(chars, 0, ChartProjection.formatValue(128.06, chars)));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decimator unit test, which will execute on the development machine (host).
+ */
+public class DecimatorTest {
+    private static final int SPIKE = 54321;
+
+    private static float valueOf(long sequence) {
+        if (sequence == SPIKE) {
+            return 100f;
+        }
+        return 25f + (float) Math.sin(sequence / 500.0);
+    }
+
+    private static TimeSeriesBuffer fill(int capacity, int count) {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(capacity);
+        for (int i = 0; i < count; i++) {
+            buffer.append(i * 1000L, valueOf(i));
+        }
+        return buffer;
+    }
+
+    private static void assertOrdered(Decimator decimator) {
+        for (int i = 1; i < decimator.getPointCount(); i++) {
+            assertTrue(decimator.getSequence(i) > decimator.getSequence(i - 1));
+        }
+    }
+
+    @Test
+    public void fewSamples_keptAll() {
+        TimeSeriesBuffer buffer = fill(100, 50);
+        for (Decimator.Mode mode : Decimator.Mode.values()) {
+            Decimator decimator = new Decimator(mode, 100);
+            assertEquals(50, decimator.decimate(buffer, 0, 50));
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, decimator.getSequence(i));
+                assertEquals(i * 1000L, decimator.getTimestamp(i));
+                assertEquals(valueOf(i), decimator.getValue(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void minMax_keepsSpike() {
+        TimeSeriesBuffer buffer = fill(200000, 100000);
+        Decimator decimator = new Decimator(Decimator.Mode.MIN_MAX, 200);
+        int count = decimator.decimate(buffer, 0, 100000);
+
+        assertTrue(count <= 200 && count > 100);
+        assertOrdered(decimator);
+        boolean spike = false;
+        for (int i = 0; i < count; i++) {
+            spike |= decimator.getSequence(i) == SPIKE;
+        }
+        assertTrue(spike);
+    }
+
+    @Test
+    public void minMax_incrementalSameAsWhole() {
+        TimeSeriesBuffer buffer = fill(200000, 100000);
+        Decimator incremental = new Decimator(Decimator.Mode.MIN_MAX, 200);
+        for (int end = 1; end <= 100000; end += 997) {
+            incremental.decimate(buffer, 0, end);
+        }
+        incremental.decimate(buffer, 0, 100000);
+        Decimator whole = new Decimator(Decimator.Mode.MIN_MAX, 200);
+        whole.decimate(buffer, 0, 100000);
+
+        assertEquals(whole.getPointCount(), incremental.getPointCount());
+        for (int i = 0; i < whole.getPointCount(); i++) {
+            assertEquals(whole.getSequence(i), incremental.getSequence(i));
+        }
+        /** Each sample is read once, plus the merges */
+        assertTrue(incremental.getSamplesScanned() < 100000 + 100);
+    }
+
+    @Test
+    public void slidingRange_scansOnlyTheEnds() {
+        TimeSeriesBuffer buffer = fill(10000, 10000);
+        Decimator decimator = new Decimator(Decimator.Mode.MIN_MAX, 100);
+        decimator.decimate(buffer, 0, Long.MAX_VALUE);
+        long scanned = decimator.getSamplesScanned();
+
+        for (int i = 10000; i < 11000; i++) {
+            buffer.append(i * 1000L, valueOf(i));
+            int count = decimator.decimate(buffer, 0, Long.MAX_VALUE);
+            assertTrue(count <= 100);
+            assertEquals(buffer.getFirstSequence(), decimator.getSequence(0), decimator.getWidth());
+        }
+        assertOrdered(decimator);
+        /** Far less than a full pass of 10000 per append */
+        assertTrue(decimator.getSamplesScanned() - scanned < 1000 * decimator.getWidth() * 2);
+    }
+
+    @Test
+    public void lttb_boundedWithEnds() {
+        TimeSeriesBuffer buffer = fill(200000, 100000);
+        Decimator decimator = new Decimator(Decimator.Mode.LTTB, 300);
+        for (int end = 2; end <= 100000; end += 4999) {
+            int count = decimator.decimate(buffer, 0, end);
+            assertTrue(count <= 300);
+            assertEquals(0, decimator.getSequence(0));
+            assertEquals(end - 1, decimator.getSequence(count - 1));
+            assertOrdered(decimator);
+        }
+
+        boolean spike = false;
+        int count = decimator.decimate(buffer, 0, 100000);
+        for (int i = 0; i < count; i++) {
+            spike |= decimator.getSequence(i) == SPIKE;
+        }
+        assertTrue(spike);
+    }
+}
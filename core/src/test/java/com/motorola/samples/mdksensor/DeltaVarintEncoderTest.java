@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DeltaVarintEncoder and DeltaVarintDecoder unit test, which will execute on
+ * the development machine (host).
+ */
+public class DeltaVarintEncoderTest {
+    private static final int SAMPLES = 1000;
+
+    private final long[] timestamps = new long[SAMPLES];
+    private final int[] values = new int[SAMPLES];
+    private int decoded;
+
+    private final SampleSink checkSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            assertEquals(timestamps[decoded] * 10, timestampUs);
+            assertEquals(values[decoded], rawData);
+            decoded++;
+        }
+    };
+
+    /** Sampled every 10000 ticks with some jitter, a slow wave of raw data */
+    private void fillSeries() {
+        Random random = new Random(1);
+        long ticks = 123456789L;
+        for (int i = 0; i < SAMPLES; i++) {
+            ticks += 10000 + random.nextInt(3) - 1;
+            timestamps[i] = ticks;
+            values[i] = DataFrame.toRawData(25 + 2 * Math.sin(i / 100.0));
+        }
+    }
+
+    private int encodeAll(DeltaVarintEncoder encoder, byte[] buffer) {
+        int length = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            length += encoder.encode(buffer, length, timestamps[i], values[i]);
+        }
+        return length;
+    }
+
+    @Test
+    public void roundTrip_withKeyframes() {
+        fillSeries();
+        byte[] buffer = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        int length = encodeAll(new DeltaVarintEncoder(64), buffer);
+
+        assertEquals(SAMPLES, new DeltaVarintDecoder(64, 10).decode(buffer, 0, length, checkSink));
+        assertEquals(SAMPLES, decoded);
+    }
+
+    @Test
+    public void compresses_steadySeries() {
+        fillSeries();
+        byte[] buffer = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        int length = encodeAll(new DeltaVarintEncoder(0), buffer);
+
+        /** DATA_BATCH takes 4 bytes a sample */
+        assertTrue("bytes " + length, length < SAMPLES * 5 / 2);
+    }
+
+    @Test
+    public void extremeValues_roundTrip() {
+        timestamps[0] = 0;
+        values[0] = Integer.MIN_VALUE;
+        timestamps[1] = Long.MAX_VALUE / 20;
+        values[1] = Integer.MAX_VALUE;
+        timestamps[2] = Long.MAX_VALUE / 20;
+        values[2] = -1;
+        byte[] buffer = new byte[3 * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        DeltaVarintEncoder encoder = new DeltaVarintEncoder(0);
+        int length = 0;
+        for (int i = 0; i < 3; i++) {
+            length += encoder.encode(buffer, length, timestamps[i], values[i]);
+        }
+
+        assertEquals(3, new DeltaVarintDecoder(0, 10).decode(buffer, 0, length, checkSink));
+    }
+
+    @Test
+    public void decode_fromKeyframe() {
+        fillSeries();
+        byte[] buffer = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        DeltaVarintEncoder encoder = new DeltaVarintEncoder(100);
+        int keyframeOffset = 0;
+        int length = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (i == 500) {
+                assertTrue(encoder.isKeyframeNext());
+                keyframeOffset = length;
+            }
+            length += encoder.encode(buffer, length, timestamps[i], values[i]);
+        }
+
+        /** A reader starting at a keyframe sees the samples from it on */
+        System.arraycopy(timestamps, 500, timestamps, 0, SAMPLES - 500);
+        System.arraycopy(values, 500, values, 0, SAMPLES - 500);
+
+        assertEquals(SAMPLES - 500, new DeltaVarintDecoder(100, 10).decode(
+                buffer, keyframeOffset, length - keyframeOffset, checkSink));
+        assertEquals(SAMPLES - 500, decoded);
+    }
+
+    @Test
+    public void decode_truncated() {
+        fillSeries();
+        byte[] buffer = new byte[SAMPLES * DeltaVarintEncoder.MAX_SAMPLE_SIZE];
+        int length = encodeAll(new DeltaVarintEncoder(0), buffer);
+
+        /** The keyframe timestamp alone takes several bytes */
+        assertEquals(-1, new DeltaVarintDecoder(0, 10).decode(buffer, 0, 2, checkSink));
+        assertEquals(0, decoded);
+        assertTrue(length > 2);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FrameDecoder unit test, runs on the development machine (host).
+ */
+public class FrameDecoderTest {
+    private static final byte[] DATA_1 = {(byte) 0x84, 0x04, 0x10, 0x20, 0x00, 0x00};
+    private static final byte[] DATA_2 = {(byte) 0x84, 0x04, 0x11, 0x21, 0x00, 0x00};
+    private static final byte[] CHLGE_RESP = {(byte) 0x86, 0x04, 0x00, 0x00, 0x00, 0x00};
+
+    private final List<byte[]> frames = new ArrayList<>();
+    private final FrameDecoder decoder = new FrameDecoder(new FrameDecoder.Callback() {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+    });
+
+    private static byte[] concat(byte[]... parts) {
+        int size = 0;
+        for (byte[] part : parts) {
+            size += part.length;
+        }
+        byte[] result = new byte[size];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    @Test
+    public void decode_coalescedFrames() throws Exception {
+        byte[] stream = concat(DATA_1, DATA_2, CHLGE_RESP);
+        decoder.decode(stream, 0, stream.length);
+
+        assertEquals(3, frames.size());
+        assertArrayEquals(DATA_1, frames.get(0));
+        assertArrayEquals(DATA_2, frames.get(1));
+        assertArrayEquals(CHLGE_RESP, frames.get(2));
+        assertEquals(0, decoder.getPendingLength());
+    }
+
+    @Test
+    public void decode_splitFrames() throws Exception {
+        byte[] stream = concat(DATA_1, DATA_2);
+        for (int i = 0; i < stream.length; i++) {
+            decoder.decode(stream, i, 1);
+        }
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(DATA_1, frames.get(0));
+        assertArrayEquals(DATA_2, frames.get(1));
+    }
+
+    @Test
+    public void decode_resyncAfterGarbage() throws Exception {
+        byte[] garbage = {0x7F, 0x00, (byte) 0xEE};
+        byte[] stream = concat(garbage, DATA_1, garbage, DATA_2);
+        decoder.decode(stream, 0, 5);
+        decoder.decode(stream, 5, stream.length - 5);
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(DATA_1, frames.get(0));
+        assertArrayEquals(DATA_2, frames.get(1));
+        assertEquals(2 * garbage.length, decoder.getSkippedBytes());
+    }
+
+    @Test
+    public void decode_resyncAfterStrayCommandBytes() throws Exception {
+        /** Each byte could start ON, OFF or CHLGE_RESP of some size */
+        byte[] stray = {0x02, 0x03, 0x06, (byte) 0x82, (byte) 0x83, (byte) 0x86};
+        byte[] stream = concat(stray, DATA_1, stray, DATA_2, stray, CHLGE_RESP);
+        for (int i = 0; i < stream.length; i += 7) {
+            decoder.decode(stream, i, Math.min(7, stream.length - i));
+        }
+
+        assertEquals(3, frames.size());
+        assertArrayEquals(DATA_1, frames.get(0));
+        assertArrayEquals(DATA_2, frames.get(1));
+        assertArrayEquals(CHLGE_RESP, frames.get(2));
+        assertEquals(3 * stray.length, decoder.getSkippedBytes());
+
+        /** Acknowledge of ON is still a frame */
+        byte[] onResp = {(byte) 0x82, 0x00};
+        decoder.decode(onResp, 0, onResp.length);
+        assertEquals(4, frames.size());
+    }
+}
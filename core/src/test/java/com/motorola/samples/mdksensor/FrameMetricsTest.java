@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FrameMetrics unit test, which will execute on the development machine
+ * (host).
+ */
+public class FrameMetricsTest {
+    private static final long PERIOD = 16000000L;
+
+    @Test
+    public void onFrame_countsDroppedAndSlow() {
+        FrameMetrics metrics = new FrameMetrics(PERIOD);
+
+        /** Pending since just before the vsync, drawn in time */
+        metrics.onFrame(PERIOD - 1000, PERIOD, PERIOD + 100000, PERIOD + 2000000, 10);
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(0, metrics.getSlowFrames());
+
+        /** Pending over two more vsyncs, drawing past the next one */
+        metrics.onFrame(2 * PERIOD - 1000, 5 * PERIOD - 1000, 5 * PERIOD, 6 * PERIOD + 1000, 30);
+        assertEquals(2, metrics.getDroppedFrames());
+        assertEquals(2, metrics.getMaxDroppedFrames());
+        assertEquals(1, metrics.getSlowFrames());
+
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(20, metrics.getAverageSamplesPerFrame(), 0);
+        assertEquals(PERIOD + 1000, metrics.getMaxWorkNanos());
+
+        metrics.reset();
+        assertEquals(0, metrics.getFrameCount());
+        assertEquals(0, metrics.getAverageWorkNanos());
+    }
+}
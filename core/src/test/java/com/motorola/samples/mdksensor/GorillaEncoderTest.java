@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * GorillaEncoder unit test, which will execute on the development machine
+ * (host).
+ */
+public class GorillaEncoderTest {
+    private final long[] timestamps = new long[4096];
+    private final int[] values = new int[4096];
+    private int decoded;
+    private boolean matches = true;
+
+    private final SampleSink checkSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            matches &= timestamps[decoded] == timestampUs && values[decoded] == rawData;
+            decoded++;
+        }
+    };
+
+    private int encode(byte[] buffer, int count) {
+        GorillaEncoder encoder = new GorillaEncoder();
+        encoder.reset(buffer, 3);
+        for (int i = 0; i < count; i++) {
+            assertTrue(buffer.length - 3 - encoder.getLength() >= GorillaEncoder.MAX_SAMPLE_SIZE);
+            encoder.encode(timestamps[i], values[i]);
+        }
+        assertEquals(count, encoder.getCount());
+        return encoder.getLength();
+    }
+
+    @Test
+    public void encode_roundTripsAnySamples() {
+        Random random = new Random(5);
+        long timestamp = -1000;
+        for (int i = 0; i < timestamps.length; i++) {
+            /** Jitter of every size, and now and then a step back */
+            int size = random.nextInt(5);
+            timestamp += size == 4 ? random.nextLong() >> 8 : random.nextInt(1 << (size * 3 + 4));
+            timestamps[i] = timestamp;
+            values[i] = random.nextBoolean() ? values[Math.max(0, i - 1)] : random.nextInt();
+        }
+        byte[] buffer = new byte[timestamps.length * GorillaEncoder.MAX_SAMPLE_SIZE];
+        int length = encode(buffer, timestamps.length);
+
+        int count = new GorillaDecoder().decode(buffer, 3, length, timestamps.length, checkSink);
+        assertEquals(timestamps.length, count);
+        assertEquals(timestamps.length, decoded);
+        assertTrue(matches);
+
+        /** Bytes end before the count */
+        decoded = 0;
+        assertEquals(-1, new GorillaDecoder().decode(buffer, 3, length / 2, timestamps.length, checkSink));
+    }
+
+    @Test
+    public void encode_steadyReadingsUnderTwoBytes() {
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1000000000L + i * 100000L;
+            float temperature = (float) DataFrame.toTemperature(
+                    DataFrame.toRawData(77 + 3 * Math.sin(i / 300.0)));
+            values[i] = Float.floatToRawIntBits(temperature);
+        }
+        byte[] buffer = new byte[timestamps.length * GorillaEncoder.MAX_SAMPLE_SIZE];
+        int length = encode(buffer, timestamps.length);
+
+        assertTrue("bytes/sample " + (double) length / timestamps.length,
+                length < 2 * timestamps.length);
+        assertEquals(timestamps.length,
+                new GorillaDecoder().decode(buffer, 3, length, timestamps.length, checkSink));
+        assertTrue(matches);
+    }
+}
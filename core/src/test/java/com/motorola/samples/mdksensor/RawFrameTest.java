@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flyweight frame views and FrameEncoder unit test.
+ */
+public class RawFrameTest {
+    @Test
+    public void data_roundTrip() {
+        byte[] buffer = new byte[16];
+        int length = FrameEncoder.encodeData(buffer, 3, 0xABCD);
+        assertEquals(FrameEncoder.DATA_LENGTH, length);
+
+        DataFrame frame = new DataFrame();
+        assertTrue(frame.wrap(buffer, 3, length));
+        assertTrue(frame.isResponse());
+        assertEquals(0xABCD, frame.getRawData());
+        assertEquals(-0.03 * 0xABCD + 128, frame.getTemperature(), 1e-9);
+        assertEquals(3400, DataFrame.toRawData(DataFrame.toTemperature(3400)));
+    }
+
+    @Test
+    public void info_roundTrip() throws Exception {
+        byte[] name = "sensor".getBytes("UTF-8");
+        byte[] buffer = new byte[FrameDecoder.MAX_FRAME_SIZE];
+        int length = FrameEncoder.encodeInfoResponse(buffer, 0, 2, 0x1234, name, 0, name.length);
+
+        InfoFrame frame = new InfoFrame();
+        assertTrue(frame.wrap(buffer, 0, length));
+        assertEquals(2, frame.getVersion());
+        assertEquals(0x1234, frame.getMaxLatency());
+        assertEquals("sensor", frame.getName());
+
+        /** Query from host carries no payload */
+        length = FrameEncoder.encodeInfo(buffer, 0);
+        assertTrue(frame.wrap(buffer, 0, length));
+        assertFalse(frame.isResponse());
+    }
+
+    @Test
+    public void challenge_roundTrip() {
+        byte[] cipher = new byte[Constants.CMD_CHALLENGE_SIZE];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = (byte) i;
+        }
+        byte[] buffer = new byte[FrameEncoder.CHALLENGE_LENGTH];
+        FrameEncoder.encodeChallenge(buffer, 0, cipher, 0, cipher.length);
+
+        ChallengeFrame frame = new ChallengeFrame();
+        assertTrue(frame.wrap(buffer, 0, buffer.length));
+        byte[] copy = new byte[cipher.length];
+        frame.getChallenge(copy, 0);
+        for (int i = 0; i < cipher.length; i++) {
+            assertEquals(cipher[i], copy[i]);
+        }
+
+        ChallengeRespFrame result = new ChallengeRespFrame();
+        int length = FrameEncoder.encodeChallengeResult(buffer, 0, 0);
+        assertTrue(result.wrap(buffer, 0, length));
+        assertTrue(result.isPassed());
+        length = FrameEncoder.encodeChallengeResult(buffer, 0, 1);
+        assertTrue(result.wrap(buffer, 0, length));
+        assertFalse(result.isPassed());
+    }
+
+    @Test
+    public void dataBatch_roundTrip() {
+        int[] deltas = {0, 10, 65535};
+        int[] data = {1, 0x1234, 0xFFFF};
+        byte[] buffer = new byte[FrameDecoder.MAX_FRAME_SIZE];
+        int length = FrameEncoder.encodeDataBatch(buffer, 0, 0xFFFFFFF0L, deltas, data, 3);
+        assertTrue(FrameDecoder.isValidHeader(buffer[0], buffer[1] & 0xFF));
+
+        DataBatchFrame frame = new DataBatchFrame();
+        assertTrue(frame.wrap(buffer, 0, length));
+        assertEquals(3, frame.getCount());
+        assertEquals(0xFFFFFFF0L, frame.getBaseTimestamp());
+
+        /** The last reading is at the arrival on the host clock, whatever the mod clock */
+        final long[] timestamps = new long[3];
+        final int[] values = new int[3];
+        final int[] index = new int[1];
+        long arrivalUs = 5000000000L;
+        assertEquals(10 + 65535, frame.getSpanTicks());
+        assertEquals(3, frame.forEach(new SampleSink() {
+            @Override
+            public void onSample(long timestampUs, int rawData) {
+                timestamps[index[0]] = timestampUs;
+                values[index[0]++] = rawData;
+            }
+        }, arrivalUs));
+        long tick = Constants.CMD_DATA_BATCH_TICK_US;
+        assertEquals(arrivalUs - (10 + 65535) * tick, timestamps[0]);
+        assertEquals(arrivalUs - 65535 * tick, timestamps[1]);
+        assertEquals(arrivalUs, timestamps[2]);
+        assertEquals(0x1234, values[1]);
+        assertEquals(0xFFFF, values[2]);
+
+        /** Count shall match the size */
+        buffer[Constants.PAYLOAD_OFFSET + Constants.CMD_DATA_BATCH_COUNT_OFFSET] = 2;
+        assertFalse(frame.wrap(buffer, 0, length));
+    }
+
+    @Test
+    public void dataPacked_onHostClock() {
+        byte[] buffer = new byte[FrameDecoder.MAX_FRAME_SIZE];
+        DeltaVarintEncoder encoder = new DeltaVarintEncoder(0);
+        int samplesLength = 0;
+        for (int i = 0; i < 3; i++) {
+            samplesLength += encoder.encode(buffer, FrameEncoder.DATA_PACKED_SAMPLES_OFFSET
+                    + samplesLength, 0xFFFFFFF0L + i * 10, 3400 + i);
+        }
+        int length = FrameEncoder.encodeDataPacked(buffer, 0, 3, samplesLength);
+
+        DataPackedFrame frame = new DataPackedFrame();
+        assertTrue(frame.wrap(buffer, 0, length));
+        final long[] timestamps = new long[3];
+        final int[] index = new int[1];
+        assertEquals(3, frame.forEach(new SampleSink() {
+            @Override
+            public void onSample(long timestampUs, int rawData) {
+                timestamps[index[0]++] = timestampUs;
+            }
+        }, 7000000L));
+        long tick = Constants.CMD_DATA_BATCH_TICK_US;
+        assertEquals(7000000L - 20 * tick, timestamps[0]);
+        assertEquals(7000000L - 10 * tick, timestamps[1]);
+        assertEquals(7000000L, timestamps[2]);
+    }
+
+    @Test
+    public void wrap_rejectsInvalidFrames() {
+        DataFrame frame = new DataFrame();
+        byte[] buffer = new byte[16];
+        int length = FrameEncoder.encodeData(buffer, 0, 1);
+
+        /** Length does not match size, or frame of another command */
+        assertFalse(frame.wrap(buffer, 0, length - 1));
+        assertFalse(frame.wrap(buffer, 0, 1));
+        buffer[Constants.SIZE_OFFSET] = 3;
+        assertFalse(frame.wrap(buffer, 0, FrameDecoder.HEADER_SIZE + 3));
+        FrameEncoder.encodeOff(buffer, 0);
+        assertFalse(frame.wrap(buffer, 0, FrameEncoder.OFF_LENGTH));
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RequestTracker unit test, runs on the development machine (host).
+ */
+public class RequestTrackerTest {
+    private static final byte[] INFO = {Constants.TEMP_RAW_COMMAND_INFO, 0x00};
+    private static final byte[] STOP = {Constants.TEMP_RAW_COMMAND_OFF, 0x00};
+    private static final byte[] INFO_RESP = {(byte) 0x81, 0x04, 0x01, 0x00, 0x10, 0x00};
+    private static final byte[] STOP_RESP = {(byte) 0x83, 0x00};
+
+    private final RequestTracker tracker = new RequestTracker();
+    private final List<String> results = new ArrayList<>();
+
+    /** Records the callbacks as "<command>:<result>" */
+    private final RawRequest.Callback callback = new RawRequest.Callback() {
+        @Override
+        public void onResponse(RawRequest request, byte[] frame) {
+            results.add(request.getCommand() + ":response");
+        }
+
+        @Override
+        public void onTimeout(RawRequest request) {
+            results.add(request.getCommand() + ":timeout");
+        }
+
+        @Override
+        public void onError(RawRequest request) {
+            results.add(request.getCommand() + ":error");
+        }
+    };
+
+    private RawRequest add(int rawInterface, byte[] cmd) {
+        RawRequest request = new RawRequest(rawInterface, cmd, 100, callback, null);
+        tracker.add(request);
+        return request;
+    }
+
+    private boolean receive(int rawInterface, byte[] frame) {
+        return tracker.onFrame(rawInterface, frame, 0, frame.length);
+    }
+
+    @Test
+    public void onFrame_matchesCommandAndInterface() throws Exception {
+        RawRequest info0 = add(0, INFO);
+        RawRequest info1 = add(1, INFO);
+
+        /** Commands from host and other responses answer nothing */
+        assertFalse(receive(0, INFO));
+        assertFalse(receive(0, STOP_RESP));
+        assertTrue(receive(1, INFO_RESP));
+
+        assertFalse(info0.isDone());
+        assertArrayEquals(INFO_RESP, info1.get());
+        assertTrue(info1.getRoundTripNanos() >= 0);
+        assertEquals(1, tracker.getInFlightCount());
+        assertEquals(1, tracker.getCompletedCount());
+    }
+
+    @Test
+    public void onFrame_outOfOrderResponses() throws Exception {
+        RawRequest info = add(0, INFO);
+        RawRequest stop = add(0, STOP);
+        RawRequest info2 = add(0, INFO);
+
+        /** STOP answered first, then the INFO requests in the order sent */
+        assertTrue(receive(0, STOP_RESP));
+        assertTrue(receive(0, INFO_RESP));
+        assertTrue(stop.isDone());
+        assertTrue(info.isDone());
+        assertFalse(info2.isDone());
+        assertTrue(receive(0, INFO_RESP));
+        assertTrue(info2.isDone());
+
+        String stopCmd = Constants.TEMP_RAW_COMMAND_OFF + ":response";
+        String infoCmd = Constants.TEMP_RAW_COMMAND_INFO + ":response";
+        assertEquals(3, results.size());
+        assertEquals(stopCmd, results.get(0));
+        assertEquals(infoCmd, results.get(1));
+        assertEquals(infoCmd, results.get(2));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    public void onTimeout_failsRequestOnce() throws Exception {
+        RawRequest info = add(0, INFO);
+        tracker.onTimeout(info);
+
+        assertTrue(info.isTimedOut());
+        assertEquals(-1, info.getRoundTripNanos());
+        assertEquals(Constants.TEMP_RAW_COMMAND_INFO + ":timeout", results.get(0));
+        try {
+            info.get();
+            fail();
+        } catch (ExecutionException e) {
+            /** Expected, no response in time */
+        }
+
+        /** A late response and a second timeout change nothing */
+        assertFalse(receive(0, INFO_RESP));
+        tracker.onTimeout(info);
+        assertEquals(1, results.size());
+        assertEquals(1, tracker.getTimeoutCount());
+        assertEquals(0, tracker.getCompletedCount());
+    }
+
+    @Test
+    public void cancel_skipsCallbackAndMatching() throws Exception {
+        RawRequest info = add(0, INFO);
+        RawRequest info2 = add(0, INFO);
+        assertTrue(info.cancel(false));
+
+        /** The response goes to the next pending request */
+        assertTrue(receive(0, INFO_RESP));
+        assertTrue(info.isCancelled());
+        assertArrayEquals(INFO_RESP, info2.get());
+        assertEquals(1, results.size());
+
+        RawRequest stop = add(0, STOP);
+        tracker.cancelAll();
+        assertTrue(stop.isCancelled());
+        assertFalse(receive(0, STOP_RESP));
+        assertEquals(1, results.size());
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    public void onCommandDropped_failsOldestPending() throws Exception {
+        RawRequest stop = add(0, STOP);
+        RawRequest info = add(0, INFO);
+        RawRequest info2 = add(0, INFO);
+
+        assertSame(info, tracker.onCommandDropped(0, INFO));
+        assertTrue(info.isFailed());
+        assertEquals(Constants.TEMP_RAW_COMMAND_INFO + ":error", results.get(0));
+        assertNull(tracker.onCommandDropped(1, INFO));
+
+        /** The response goes to the one still pending */
+        assertTrue(receive(0, INFO_RESP));
+        assertArrayEquals(INFO_RESP, info2.get());
+        assertFalse(stop.isDone());
+        assertEquals(1, tracker.getFailedCount());
+    }
+
+    @Test
+    public void onSendFailed_callsOnError() throws Exception {
+        RawRequest stop = add(0, STOP);
+        tracker.onSendFailed(stop);
+
+        assertTrue(stop.isFailed());
+        assertEquals(Constants.TEMP_RAW_COMMAND_OFF + ":error", results.get(0));
+        assertEquals(1, tracker.getFailedCount());
+        assertEquals(0, tracker.getInFlightCount());
+        assertFalse(stop.cancel(false));
+        try {
+            stop.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
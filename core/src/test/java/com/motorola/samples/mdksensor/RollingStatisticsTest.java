@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RollingStatistics unit test, which will execute on the development machine
+ * (host).
+ */
+public class RollingStatisticsTest {
+    @Test
+    public void countWindow_matchesExact() {
+        RollingStatistics statistics = new RollingStatistics(100, 0, 0, -50, 150, 0.1);
+        Random random = new Random(7);
+        double[] readings = new double[5000];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = 25 + 10 * Math.sin(i / 50.0) + random.nextGaussian();
+            statistics.add(i * 1000L, readings[i]);
+
+            int from = Math.max(0, i - 99);
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            double sum = 0;
+            for (int j = from; j <= i; j++) {
+                min = Math.min(min, readings[j]);
+                max = Math.max(max, readings[j]);
+                sum += readings[j];
+            }
+            int n = i - from + 1;
+            double mean = sum / n;
+            double squares = 0;
+            for (int j = from; j <= i; j++) {
+                squares += (readings[j] - mean) * (readings[j] - mean);
+            }
+
+            assertEquals(n, statistics.getCount());
+            assertEquals(min, statistics.getMin(), 0);
+            assertEquals(max, statistics.getMax(), 0);
+            assertEquals(mean, statistics.getMean(), 1e-9);
+            assertEquals(squares / n, statistics.getVariance(), 1e-9);
+        }
+        assertEquals(readings.length, statistics.getTotalCount());
+        assertEquals(4900000L, statistics.getFirstTimestampUs());
+    }
+
+    @Test
+    public void timeWindow_dropsOldReadings() {
+        RollingStatistics statistics = new RollingStatistics(1000, 10000, 0, 0, 100, 1);
+        for (int i = 0; i < 50; i++) {
+            statistics.add(i * 1000L, i);
+        }
+
+        /** Readings of 39..49 ms are within 10 ms of the last */
+        assertEquals(11, statistics.getCount());
+        assertEquals(39, statistics.getMin(), 0);
+        assertEquals(49, statistics.getMax(), 0);
+        assertEquals(44, statistics.getMean(), 1e-9);
+    }
+
+    @Test
+    public void quantile_withinBin() {
+        RollingStatistics statistics = new RollingStatistics(1000, 0, 0, 0, 100, 0.5);
+        Random random = new Random(3);
+        double[] window = new double[1000];
+        for (int i = 0; i < 3000; i++) {
+            double value = 50 + 10 * random.nextGaussian();
+            window[i % window.length] = value;
+            statistics.add(i, value);
+        }
+        Arrays.sort(window);
+
+        assertEquals(window[499], statistics.getQuantile(0.5), 0.5);
+        assertEquals(window[949], statistics.getQuantile(0.95), 0.5);
+        assertEquals(window[0], statistics.getQuantile(0), 0.5);
+        assertEquals(window[999], statistics.getQuantile(1), 0);
+    }
+
+    @Test
+    public void ema_followsTimeConstant() {
+        RollingStatistics statistics = new RollingStatistics(10, 0, 1000, 0, 100, 1);
+        statistics.add(0, 0);
+        statistics.add(1000, 10);
+
+        /** One time constant later, 1 - 1/e of the step */
+        assertEquals(10 * (1 - Math.exp(-1)), statistics.getEma(), 1e-9);
+
+        RollingStatistics.Summary summary = new RollingStatistics.Summary(0.5);
+        statistics.copyTo(summary);
+        assertEquals(2, summary.count);
+        assertEquals(10, summary.last, 0);
+        assertEquals(5, summary.mean, 1e-9);
+        assertEquals(statistics.getQuantile(0.5), summary.values[0], 0);
+
+        statistics.reset();
+        assertEquals(0, statistics.getCount());
+        assertTrue(Double.isNaN(statistics.getMin()));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RollupPyramid unit test, which will execute on the development machine
+ * (host).
+ */
+public class RollupPyramidTest {
+    private static final long SECOND = 1000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long lastStart;
+    private long visitedCount;
+    private boolean matches = true;
+
+    /** Checks the buckets of 10 s of add() */
+    private final RollupPyramid.Visitor checkVisitor = new RollupPyramid.Visitor() {
+        @Override
+        public void onBucket(long startUs, long durationUs, int count, float min, float max, double mean) {
+            matches &= durationUs == 10 * SECOND && startUs == lastStart + durationUs
+                    && count == 100 && min == 20f && Math.abs(max - 29.9f) < 1e-4;
+            matches &= Math.abs(mean - 24.95) < 1e-4;
+            lastStart = startUs;
+            visitedCount += count;
+        }
+    };
+
+    /** A reading each 100 ms, going 20 to 29.9 each 10 s */
+    private static void add(RollupPyramid rollups, long fromMs, long toMs) throws Exception {
+        for (long ms = fromMs; ms < toMs; ms += 100) {
+            rollups.add(ms * 1000, 20f + (ms / 100 % 100) * 0.1f);
+        }
+    }
+
+    @Test
+    public void query_servesCoarsestSufficientLevel() throws Exception {
+        RollupPyramid rollups = new RollupPyramid(RollupPyramid.DEFAULT_BUCKETS_US, 1024);
+        add(rollups, 0, 30 * 60 * 1000);
+
+        assertEquals(1024, rollups.getBucketCount(0));
+        assertEquals(180, rollups.getBucketCount(1));
+        assertEquals(30, rollups.getBucketCount(2));
+        assertEquals(3, rollups.getBucketCount(3));
+        assertEquals((1800 - 1024) * SECOND, rollups.getFirstStartUs(0));
+        assertEquals(0, rollups.getFirstStartUs(3));
+
+        /** 600 buckets of 1 s are too many, 60 of 10 s are not */
+        lastStart = 600 * SECOND - 10 * SECOND;
+        int count = rollups.query(600 * SECOND, 1200 * SECOND, 100, checkVisitor);
+        assertEquals(60, count);
+        assertEquals(6000, visitedCount);
+        assertTrue(matches);
+
+        /** 1 s is fine enough, but its first buckets are gone */
+        assertEquals(1, rollups.selectLevel(0, 60 * SECOND, 100));
+        assertEquals(0, rollups.selectLevel(1500 * SECOND, 1560 * SECOND, 100));
+        assertEquals(3, rollups.selectLevel(0, 100000 * SECOND, 10));
+    }
+
+    @Test
+    public void reopen_continuesOpenBucket() throws Exception {
+        File directory = folder.newFolder();
+        RollupPyramid rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 256);
+        add(rollups, 0, 95 * 1000);
+        rollups.close();
+
+        /** A record cut by a crash */
+        RandomAccessFile file = new RandomAccessFile(
+                new File(directory, RollupPyramid.rollupName(10 * SECOND)), "rw");
+        file.seek(file.length());
+        file.write(new byte[RollupPyramid.RECORD_SIZE / 2]);
+        file.close();
+
+        rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 256);
+        assertEquals(1, rollups.getDroppedRecords());
+        assertEquals(10, rollups.getBucketCount(1));
+        add(rollups, 95 * 1000, 120 * 1000);
+        rollups.close();
+
+        rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 256);
+        assertEquals(0, rollups.getDroppedRecords());
+        assertEquals(120, rollups.getBucketCount(0));
+        assertEquals(12, rollups.getBucketCount(1));
+        lastStart = -10 * SECOND;
+        assertEquals(12, rollups.query(0, 120 * SECOND, 20, checkVisitor));
+        assertEquals(1200, visitedCount);
+        assertTrue(matches);
+        rollups.close();
+    }
+
+    @Test
+    public void reopen_fileStaysBounded() throws Exception {
+        File directory = folder.newFolder();
+        File file = new File(directory, RollupPyramid.rollupName(SECOND));
+        long bounded = RollupPyramid.HEADER_SIZE + 64L * RollupPyramid.RECORD_SIZE;
+        RollupPyramid rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 64);
+        add(rollups, 0, 200 * 1000);
+        rollups.close();
+        assertEquals(bounded, file.length());
+
+        /** More than capacity buckets again, over two reopens */
+        for (int run = 1; run <= 2; run++) {
+            rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 64);
+            assertEquals(0, rollups.getDroppedRecords());
+            assertEquals(64, rollups.getBucketCount(0));
+            assertEquals((run * 100 + 100 - 64) * SECOND, rollups.getFirstStartUs(0));
+            add(rollups, (run * 100 + 100) * 1000, (run * 100 + 200) * 1000);
+            rollups.close();
+            assertEquals(bounded, file.length());
+        }
+
+        /** The 10 s buckets read back are the last ones, in order */
+        rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 64);
+        assertEquals(40, rollups.getBucketCount(1));
+        lastStart = -10 * SECOND;
+        assertEquals(40, rollups.query(0, 400 * SECOND, 50, checkVisitor));
+        assertEquals(4000, visitedCount);
+        assertTrue(matches);
+
+        /** Another capacity starts over */
+        rollups.close();
+        rollups = new RollupPyramid(directory, RollupPyramid.DEFAULT_BUCKETS_US, 32);
+        assertEquals(0, rollups.getBucketCount(0));
+        rollups.close();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SamplingController unit test, which will execute on the development
+ * machine (host).
+ */
+public class SamplingControllerTest {
+    private final List<Integer> intervals = new ArrayList<>();
+    private SamplingController controller;
+
+    @Before
+    public void setUp() {
+        controller = new SamplingController(new SamplingController.Callback() {
+            @Override
+            public void onIntervalChanged(int intervalMs) {
+                intervals.add(intervalMs);
+            }
+        });
+    }
+
+    @Test
+    public void start_fromMaxLatency() {
+        assertEquals(100, controller.start(100, 0));
+        assertEquals(10.0, controller.getRateHz(), 0.001);
+        assertEquals(100, controller.getTargetLagMs());
+
+        /** The CPU budget caps the rate */
+        controller.setMaxSamplesPerSecond(4);
+        assertEquals(250, controller.start(100, 0));
+    }
+
+    @Test
+    public void start_targetFollowsEachMaxLatency() {
+        controller.start(100, 0);
+        assertEquals(100, controller.getTargetLagMs());
+
+        /** Another mod, and one without max_latency */
+        controller.start(400, 0);
+        assertEquals(400, controller.getTargetLagMs());
+        controller.start(0, 0);
+        assertEquals(SamplingController.DEFAULT_MAX_INTERVAL_MS, controller.getTargetLagMs());
+
+        /** A lag set by the app wins over max_latency */
+        controller.setTargetLagMs(50);
+        controller.start(400, 0);
+        assertEquals(50, controller.getTargetLagMs());
+        controller.setTargetLagMs(0);
+        controller.start(300, 0);
+        assertEquals(300, controller.getTargetLagMs());
+    }
+
+    @Test
+    public void lag_slowsDown() {
+        controller.start(100, 0);
+        controller.onLag(50);
+        controller.onLag(250);
+
+        assertEquals(SamplingController.Decision.SLOWER, controller.evaluate());
+        assertEquals(200, controller.getIntervalMs());
+        assertEquals(150, controller.getAverageLagMs());
+        assertEquals(250, controller.getMaxLagMs());
+        assertEquals(1, intervals.size());
+        assertEquals(200, (int) intervals.get(0));
+    }
+
+    @Test
+    public void overflow_slowsDownToMax() {
+        controller.setIntervalRange(10, 300);
+        controller.start(100, 5);
+        controller.setOverflowTotal(6);
+        assertEquals(SamplingController.Decision.SLOWER, controller.evaluate());
+        controller.setOverflowTotal(7);
+        assertEquals(SamplingController.Decision.SLOWER, controller.evaluate());
+        assertEquals(300, controller.getIntervalMs());
+
+        /** Already at the slowest interval, nothing more to send */
+        controller.setOverflowTotal(8);
+        assertEquals(SamplingController.Decision.HOLD, controller.evaluate());
+        assertEquals(2, intervals.size());
+    }
+
+    @Test
+    public void calm_speedsUpAfterWindows() {
+        controller.start(100, 0);
+        for (int i = 1; i < SamplingController.CALM_WINDOWS; i++) {
+            controller.onLag(1);
+            assertEquals(SamplingController.Decision.HOLD, controller.evaluate());
+        }
+        controller.onLag(1);
+        assertEquals(SamplingController.Decision.FASTER, controller.evaluate());
+        assertEquals(75, controller.getIntervalMs());
+
+        /** A window without samples tells nothing */
+        for (int i = 0; i < SamplingController.CALM_WINDOWS; i++) {
+            assertEquals(SamplingController.Decision.HOLD, controller.evaluate());
+        }
+        assertEquals(1, controller.getFasterCount());
+        assertEquals(0, controller.getSlowerCount());
+        assertEquals(2 * SamplingController.CALM_WINDOWS, controller.getDecisionCount());
+    }
+
+    @Test
+    public void stopped_holds() {
+        controller.start(100, 0);
+        controller.stop();
+        controller.onLag(1000);
+        assertEquals(SamplingController.Decision.HOLD, controller.evaluate());
+        assertEquals(0, intervals.size());
+    }
+}
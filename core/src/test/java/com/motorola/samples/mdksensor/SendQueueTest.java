@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * SendQueue unit test, runs on the development machine (host).
+ */
+public class SendQueueTest {
+    private static final byte[] INFO = {Constants.TEMP_RAW_COMMAND_INFO, 0x00};
+    private static final byte[] START_1 = {Constants.TEMP_RAW_COMMAND_ON, 0x02, 0x00, 0x20};
+    private static final byte[] START_2 = {Constants.TEMP_RAW_COMMAND_ON, 0x02, 0x00, 0x10};
+    private static final byte[] STOP = {Constants.TEMP_RAW_COMMAND_OFF, 0x00};
+
+    @Test
+    public void offer_reject() throws Exception {
+        SendQueue queue = new SendQueue(2, SendQueue.OverflowPolicy.REJECT);
+        assertEquals(SendQueue.RESULT_QUEUED, queue.offer(INFO));
+        assertEquals(SendQueue.RESULT_QUEUED, queue.offer(START_1));
+        assertEquals(SendQueue.RESULT_REJECTED, queue.offer(STOP));
+
+        assertSame(INFO, queue.poll());
+        assertSame(START_1, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, queue.getRejectedCount());
+    }
+
+    @Test
+    public void offer_dropOldest() throws Exception {
+        SendQueue queue = new SendQueue(2, SendQueue.OverflowPolicy.DROP_OLDEST);
+        queue.offer(INFO);
+        queue.offer(START_1);
+        assertEquals(SendQueue.RESULT_DROPPED_OLDEST, queue.offer(STOP));
+        assertSame(INFO, queue.takeDropped());
+        assertNull(queue.takeDropped());
+
+        assertSame(START_1, queue.poll());
+        assertSame(STOP, queue.poll());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void offer_coalesce() throws Exception {
+        SendQueue queue = new SendQueue(2, SendQueue.OverflowPolicy.COALESCE);
+        queue.offer(START_1);
+        queue.offer(INFO);
+        assertEquals(SendQueue.RESULT_COALESCED, queue.offer(START_2));
+        assertEquals(SendQueue.RESULT_REJECTED, queue.offer(STOP));
+
+        assertSame(START_2, queue.poll());
+        assertSame(INFO, queue.poll());
+        assertEquals(2, queue.getDequeuedCount());
+    }
+
+    @Test
+    public void put_blockTimesOut() throws Exception {
+        SendQueue queue = new SendQueue(1, SendQueue.OverflowPolicy.BLOCK);
+        queue.offer(INFO);
+        assertEquals(SendQueue.RESULT_REJECTED, queue.put(STOP, 10));
+        assertEquals(1, queue.size());
+    }
+}
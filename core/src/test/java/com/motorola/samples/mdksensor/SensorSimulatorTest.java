@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SensorSimulator unit test, talks the RAW protocol with the simulator on the
+ * development machine (host).
+ */
+public class SensorSimulatorTest {
+    private final CountDownLatch infoLatch = new CountDownLatch(1);
+    private final CountDownLatch challengeLatch = new CountDownLatch(1);
+    private final CountDownLatch challengeResultLatch = new CountDownLatch(1);
+    private final CountDownLatch offLatch = new CountDownLatch(1);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicInteger dataCount = new AtomicInteger();
+    private final AtomicInteger batchCount = new AtomicInteger();
+    private final AtomicInteger packedCount = new AtomicInteger();
+    private final DataBatchFrame batchFrame = new DataBatchFrame();
+    private final DataPackedFrame packedFrame = new DataPackedFrame();
+    private final SampleSink orderSink = new SampleSink() {
+        @Override
+        public void onSample(long timestampUs, int rawData) {
+            timestampsOrdered &= timestampUs >= lastTimestampUs;
+            lastTimestampUs = timestampUs;
+            dataCount.incrementAndGet();
+        }
+    };
+    private volatile long lastTimestampUs = -1;
+    private volatile boolean timestampsOrdered = true;
+    private final IOException[] error = new IOException[1];
+    private volatile int maxLatency;
+    private volatile byte[] challenge;
+    private volatile int challengeResult = -1;
+
+    private TransportReader startHost(RawTransport host) {
+        TransportReader reader = new TransportReader("host", host,
+                new FrameDecoder(new FrameDecoder.Callback() {
+                    @Override
+                    public void onFrame(byte[] buffer, int offset, int length) {
+                        onResponse(buffer, offset, length);
+                    }
+                }), 4096, new TransportReader.Callback() {
+                    @Override
+                    public void onReaderStopped(TransportReader reader, IOException exception) {
+                        error[0] = exception;
+                        stopped.countDown();
+                    }
+                });
+        reader.start();
+        return reader;
+    }
+
+    private void onResponse(byte[] buffer, int offset, int length) {
+        int cmd = buffer[offset + Constants.CMD_OFFSET] & ~Constants.TEMP_RAW_COMMAND_RESP_MASK & 0xFF;
+        int payload = offset + Constants.PAYLOAD_OFFSET;
+        switch (cmd) {
+            case Constants.TEMP_RAW_COMMAND_INFO:
+                maxLatency = (buffer[payload + Constants.CMD_INFO_LATENCYLOW_OFFSET] & 0xFF)
+                        | (buffer[payload + Constants.CMD_INFO_LATENCYHIGH_OFFSET] & 0xFF) << 8;
+                infoLatch.countDown();
+                break;
+            case Constants.TEMP_RAW_COMMAND_CHALLENGE:
+                byte[] encrypted = new byte[Constants.CMD_CHALLENGE_SIZE];
+                System.arraycopy(buffer, payload, encrypted, 0, encrypted.length);
+                challenge = encrypted;
+                challengeLatch.countDown();
+                break;
+            case Constants.TEMP_RAW_COMMAND_CHLGE_RESP:
+                challengeResult = buffer[payload + Constants.CMD_CHLGE_RESP_OFFSET];
+                challengeResultLatch.countDown();
+                break;
+            case Constants.TEMP_RAW_COMMAND_DATA:
+                dataCount.incrementAndGet();
+                break;
+            case Constants.TEMP_RAW_COMMAND_DATA_BATCH:
+                if (batchFrame.wrap(buffer, offset, length)) {
+                    batchCount.incrementAndGet();
+                    /** Each frame is anchored at its own arrival, order is checked within it */
+                    lastTimestampUs = -1;
+                    batchFrame.forEach(orderSink, System.nanoTime() / 1000);
+                }
+                break;
+            case Constants.TEMP_RAW_COMMAND_DATA_PACKED:
+                lastTimestampUs = -1;
+                if (packedFrame.wrap(buffer, offset, length) && packedFrame.forEach(orderSink, System.nanoTime() / 1000) > 0) {
+                    packedCount.incrementAndGet();
+                }
+                break;
+            case Constants.TEMP_RAW_COMMAND_OFF:
+                offLatch.countDown();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void send(RawTransport host, byte[] cmd) throws IOException {
+        host.write(new ByteBuffer[]{ByteBuffer.wrap(cmd)}, 0, 1);
+    }
+
+    /** Answer the challenge as MainActivity does */
+    private byte[] challengeResponse(byte[] encrypted) {
+        byte[] plain = Constants.getAESECBDecryptor(Constants.AES_ECB_KEY, encrypted);
+        ByteBuffer value = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN);
+        long answer = value.getLong() + Constants.CHALLENGE_ADDATION;
+        value.clear();
+        value.putLong(answer);
+        byte[] aes = Constants.getAESECBEncryptor(Constants.AES_ECB_KEY, plain);
+
+        byte[] cmd = new byte[Constants.PAYLOAD_OFFSET + aes.length];
+        cmd[Constants.CMD_OFFSET] = Constants.TEMP_RAW_COMMAND_CHLGE_RESP;
+        cmd[Constants.SIZE_OFFSET] = (byte) aes.length;
+        System.arraycopy(aes, 0, cmd, Constants.PAYLOAD_OFFSET, aes.length);
+        return cmd;
+    }
+
+    @Test
+    public void handshakeAndStream_noFrameLost() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        SensorSimulator simulator = new SensorSimulator(pair[1]);
+        simulator.setSensorAttr(1, 250, "test");
+        simulator.setSampleRateHz(2000);
+        simulator.setBurstSize(8);
+        simulator.setJitterNanos(200000);
+        simulator.start();
+        startHost(pair[0]);
+
+        send(pair[0], Constants.RAW_CMD_INFO);
+        assertTrue(infoLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(250, maxLatency);
+        assertTrue(challengeLatch.await(5, TimeUnit.SECONDS));
+        assertNotNull(challenge);
+
+        send(pair[0], challengeResponse(challenge));
+        assertTrue(challengeResultLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(SensorSimulator.CHALLENGE_PASSED, challengeResult);
+        assertEquals(1, simulator.getChallengePassedCount());
+
+        send(pair[0], Constants.RAW_CMD_START);
+        Thread.sleep(300);
+        send(pair[0], Constants.RAW_CMD_STOP);
+        assertTrue(offLatch.await(5, TimeUnit.SECONDS));
+
+        simulator.stop();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        assertTrue(simulator.getSamplesSent() > 0);
+        assertEquals(simulator.getSamplesSent(), dataCount.get());
+    }
+
+    @Test
+    public void dataBatch_noSampleLost() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        SensorSimulator simulator = new SensorSimulator(pair[1]);
+        simulator.setSensorAttr(Constants.DATA_BATCH_VERSION, 20, "batch");
+        simulator.setSampleRateHz(2000);
+        simulator.setJitterNanos(200000);
+        simulator.start();
+        startHost(pair[0]);
+
+        byte[] on = new byte[FrameEncoder.ON_FLAGS_LENGTH];
+        FrameEncoder.encodeOn(on, 0, 1, Constants.SENSOR_FLAG_DATA_BATCH);
+        send(pair[0], on);
+        Thread.sleep(300);
+        send(pair[0], Constants.RAW_CMD_STOP);
+        assertTrue(offLatch.await(5, TimeUnit.SECONDS));
+
+        simulator.stop();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertTrue(simulator.getSamplesSent() > 0);
+        assertEquals(simulator.getSamplesSent(), dataCount.get());
+        assertTrue(batchCount.get() > 0);
+        assertTrue(batchCount.get() < dataCount.get());
+        assertTrue(timestampsOrdered);
+    }
+
+    @Test
+    public void dataPacked_noSampleLost() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        SensorSimulator simulator = new SensorSimulator(pair[1]);
+        simulator.setSensorAttr(Constants.DATA_PACKED_VERSION, 20, "packed");
+        simulator.setSampleRateHz(2000);
+        simulator.setJitterNanos(200000);
+        simulator.start();
+        startHost(pair[0]);
+
+        byte[] on = new byte[FrameEncoder.ON_FLAGS_LENGTH];
+        FrameEncoder.encodeOn(on, 0, 1, Constants.SENSOR_FLAG_DATA_BATCH
+                | Constants.SENSOR_FLAG_DATA_PACKED);
+        send(pair[0], on);
+        Thread.sleep(300);
+        send(pair[0], Constants.RAW_CMD_STOP);
+        assertTrue(offLatch.await(5, TimeUnit.SECONDS));
+
+        simulator.stop();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertTrue(simulator.getSamplesSent() > 0);
+        assertEquals(simulator.getSamplesSent(), dataCount.get());
+        assertEquals(0, batchCount.get());
+        assertTrue(packedCount.get() > 0);
+        assertTrue(timestampsOrdered);
+    }
+
+    @Test
+    public void oldFirmware_ignoresBatchFlag() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        SensorSimulator simulator = new SensorSimulator(pair[1]);
+        simulator.setSampleRateHz(1000);
+        simulator.start();
+        startHost(pair[0]);
+
+        byte[] on = new byte[FrameEncoder.ON_FLAGS_LENGTH];
+        FrameEncoder.encodeOn(on, 0, 1, Constants.SENSOR_FLAG_DATA_BATCH);
+        send(pair[0], on);
+        Thread.sleep(100);
+        send(pair[0], Constants.RAW_CMD_STOP);
+        assertTrue(offLatch.await(5, TimeUnit.SECONDS));
+
+        simulator.stop();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertEquals(0, batchCount.get());
+        assertEquals(simulator.getSamplesSent(), dataCount.get());
+    }
+
+    @Test
+    public void wrongChallengeResponse_fails() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        SensorSimulator simulator = new SensorSimulator(pair[1]);
+        simulator.start();
+        startHost(pair[0]);
+
+        send(pair[0], Constants.RAW_CMD_INFO);
+        assertTrue(challengeLatch.await(5, TimeUnit.SECONDS));
+
+        /** Echo the challenge without adding CHALLENGE_ADDATION */
+        byte[] cmd = new byte[Constants.PAYLOAD_OFFSET + challenge.length];
+        cmd[Constants.CMD_OFFSET] = Constants.TEMP_RAW_COMMAND_CHLGE_RESP;
+        cmd[Constants.SIZE_OFFSET] = (byte) challenge.length;
+        System.arraycopy(challenge, 0, cmd, Constants.PAYLOAD_OFFSET, challenge.length);
+        send(pair[0], cmd);
+
+        assertTrue(challengeResultLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(SensorSimulator.CHALLENGE_FAILED, challengeResult);
+        assertEquals(0, simulator.getChallengePassedCount());
+        simulator.stop();
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SessionLog unit test, which will execute on the development machine (host).
+ */
+public class SessionLogTest {
+    private static final int SEGMENT_SIZE = 8192;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long nextTimestamp;
+    private boolean ordered = true;
+    private long blockSamples;
+
+    /** Checks the blocks follow each other and hold the values of append() */
+    private final SessionLog.BlockVisitor checkBlockVisitor = new SessionLog.BlockVisitor() {
+        @Override
+        public void onBlock(long firstTimestampUs, long lastTimestampUs, int count, float min, float max) {
+            ordered &= firstTimestampUs == nextTimestamp
+                    && lastTimestampUs == firstTimestampUs + (count - 1) * 1000L;
+            ordered &= min >= valueOf(0) && max <= valueOf(99000) && min <= max;
+            nextTimestamp = lastTimestampUs + 1000;
+            blockSamples += count;
+        }
+    };
+
+    /** Checks the samples are the ones appended by append() */
+    private final TimeSeriesBuffer.Visitor checkVisitor = new TimeSeriesBuffer.Visitor() {
+        @Override
+        public void onSample(long sequence, long timestampUs, float value) {
+            ordered &= timestampUs == nextTimestamp && value == valueOf(timestampUs);
+            nextTimestamp = timestampUs + 1000;
+        }
+    };
+
+    private static float valueOf(long timestampUs) {
+        return 25f + (timestampUs / 1000 % 100) * 0.03f;
+    }
+
+    private void append(SessionLog log, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            long timestampUs = i * 1000L;
+            log.append(timestampUs, valueOf(timestampUs));
+        }
+    }
+
+    @Test
+    public void read_rangeAcrossSegments() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 20000);
+        assertTrue(log.getSegmentCount() > 1);
+        assertEquals(20000, log.getSampleCount());
+
+        /** The tail is still being collected, read() sees it anyway */
+        nextTimestamp = 0;
+        assertEquals(20000, log.read(Long.MIN_VALUE, Long.MAX_VALUE, checkVisitor));
+        assertTrue(ordered);
+
+        nextTimestamp = 12345000L;
+        assertEquals(101, log.read(12345000L, 12445000L, checkVisitor));
+        assertTrue(ordered);
+        assertEquals(0, log.read(30000000L, 40000000L, checkVisitor));
+        log.close();
+    }
+
+    @Test
+    public void readBlocks_summarizesFromHeaders() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 20000);
+
+        nextTimestamp = 0;
+        int blocks = log.readBlocks(Long.MIN_VALUE, Long.MAX_VALUE, checkBlockVisitor);
+        assertTrue(ordered);
+        assertEquals(20000, blockSamples);
+
+        /** A value changing at each sample still takes a few bytes with the headers */
+        log.flush();
+        long bytes = log.getWrittenBytes();
+        assertTrue("bytes/sample " + (double) bytes / 20000, bytes < 4 * 20000);
+
+        /** A range starts at the block holding fromUs */
+        blockSamples = 0;
+        int tail = log.readBlocks(15000000L, Long.MAX_VALUE, new SessionLog.BlockVisitor() {
+            @Override
+            public void onBlock(long firstTimestampUs, long lastTimestampUs, int count, float min, float max) {
+                ordered &= lastTimestampUs >= 15000000L;
+                blockSamples += count;
+            }
+        });
+        assertTrue(ordered);
+        assertTrue(tail < blocks && blockSamples >= 5000);
+        log.close();
+    }
+
+    @Test
+    public void reopen_recoversSamples() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 5000);
+        log.close();
+
+        log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(5000, log.getSampleCount());
+        assertEquals(0, log.getTruncatedBytes());
+        assertEquals(0, log.getFirstTimestamp());
+        assertEquals(4999000L, log.getLastTimestamp());
+
+        /** Appending goes on after the recovered tail */
+        log.append(5000000L, valueOf(5000000L));
+        nextTimestamp = 4990000L;
+        assertEquals(11, log.read(4990000L, Long.MAX_VALUE, checkVisitor));
+        assertTrue(ordered);
+        log.close();
+    }
+
+    @Test
+    public void append_olderTimestampKeepsOrder() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 1000);
+        log.close();
+
+        /** A clock gone back, e.g. another run, is stored at the last timestamp */
+        log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        log.append(5000L, 1f);
+        assertEquals(999000L, log.getLastTimestamp());
+        final long[] last = {Long.MIN_VALUE};
+        assertEquals(2, log.read(999000L, Long.MAX_VALUE, new TimeSeriesBuffer.Visitor() {
+            @Override
+            public void onSample(long sequence, long timestampUs, float value) {
+                ordered &= timestampUs >= last[0];
+                last[0] = timestampUs;
+            }
+        }));
+        assertTrue(ordered);
+        assertEquals(999000L, last[0]);
+        log.close();
+    }
+
+    @Test
+    public void maxSegments_deletesOldest() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        log.setMaxSegments(3);
+        append(log, 20000);
+        log.flush();
+        assertEquals(3, log.getSegmentCount());
+        assertTrue(log.getDeletedSegments() > 0);
+        assertEquals(3, folder.getRoot().listFiles().length);
+
+        /** The newest samples are kept and read from the first one left */
+        long kept = log.getSampleCount();
+        assertTrue(kept > 0 && kept < 20000);
+        nextTimestamp = log.getFirstTimestamp();
+        assertEquals(19999000L - nextTimestamp, (kept - 1) * 1000L);
+        assertEquals(kept, log.read(Long.MIN_VALUE, Long.MAX_VALUE, checkVisitor));
+        assertTrue(ordered);
+        log.close();
+
+        /** A lower limit applies to the segments recovered too */
+        log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(kept, log.getSampleCount());
+        log.setMaxSegments(1);
+        assertEquals(1, log.getSegmentCount());
+        assertEquals(1, folder.getRoot().listFiles().length);
+        log.close();
+    }
+
+    @Test
+    public void readBack_dropsSamplesBeforeTimeBase() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 20000);
+
+        /** The first 15 s were logged before the time base, e.g. before the last boot */
+        long timeBaseUs = 15000000L;
+        TimeSeriesBuffer readBack = log.readBack(10000000L, timeBaseUs, 100000);
+        assertEquals(5000, readBack.size());
+        assertEquals(0, readBack.getTimestamp(readBack.getFirstSequence()));
+        assertEquals(4999000L, readBack.getTimestamp(readBack.getEndSequence() - 1));
+
+        /** A span within the time base is unchanged */
+        readBack = log.readBack(2000000L, timeBaseUs, 100000);
+        assertEquals(2001, readBack.size());
+        assertEquals(2999000L, readBack.getTimestamp(readBack.getFirstSequence()));
+
+        /** All of the log is older than the time base */
+        assertNull(log.readBack(10000000L, 20000000L, 100000));
+        log.close();
+    }
+
+    @Test
+    public void tornTail_isCut() throws Exception {
+        SessionLog log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        append(log, 3000);
+        log.close();
+
+        /** Corrupt a byte in the middle of the last block of the last segment */
+        File[] files = folder.getRoot().listFiles();
+        java.util.Arrays.sort(files);
+        File last = files[files.length - 1];
+        RandomAccessFile file = new RandomAccessFile(last, "rw");
+        int offset = SessionLog.SEGMENT_HEADER_SIZE;
+        int lastBlock = offset;
+        while (true) {
+            file.seek(offset);
+            int length = Integer.reverseBytes(file.readInt());
+            if (length == 0) {
+                break;
+            }
+            lastBlock = offset;
+            offset += SessionLog.BLOCK_HEADER_SIZE + length;
+        }
+        file.seek(lastBlock + SessionLog.BLOCK_HEADER_SIZE + 1);
+        int b = file.read();
+        file.seek(lastBlock + SessionLog.BLOCK_HEADER_SIZE + 1);
+        file.write(b ^ 0x55);
+        file.close();
+
+        log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        assertTrue(log.getTruncatedBytes() > 0);
+        long kept = log.getSampleCount();
+        assertTrue(kept > 0 && kept < 3000);
+        nextTimestamp = 0;
+        assertEquals(kept, log.read(Long.MIN_VALUE, Long.MAX_VALUE, checkVisitor));
+        assertTrue(ordered);
+
+        /** The cut tail is reused by new blocks */
+        for (long i = kept; i < 3000; i++) {
+            log.append(i * 1000, valueOf(i * 1000));
+        }
+        log.close();
+        log = new SessionLog(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(3000, log.getSampleCount());
+        assertEquals(0, log.getTruncatedBytes());
+        log.close();
+    }
+}
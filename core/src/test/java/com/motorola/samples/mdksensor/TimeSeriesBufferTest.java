@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimeSeriesBuffer unit test, which will execute on the development machine
+ * (host).
+ */
+public class TimeSeriesBufferTest {
+    private long visited;
+    private long lastSequence = -1;
+
+    @Test
+    public void append_evictsOldest() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.append(i * 1000L, i / 2f);
+        }
+
+        assertEquals(4, buffer.size());
+        assertEquals(6, buffer.getFirstSequence());
+        assertEquals(10, buffer.getEndSequence());
+        assertEquals(6, buffer.getEvictedCount());
+        assertEquals(6000L, buffer.getTimestamp(6));
+        assertEquals(4.5f, buffer.getValue(9), 0);
+        assertFalse(buffer.isValid(5));
+        assertTrue(buffer.isValid(9));
+        assertFalse(buffer.isValid(10));
+    }
+
+    @Test
+    public void forEach_cutsToKeptRange() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(8);
+        for (int i = 0; i < 20; i++) {
+            buffer.append(i, i);
+        }
+
+        int count = buffer.forEach(0, 100, new TimeSeriesBuffer.Visitor() {
+            @Override
+            public void onSample(long sequence, long timestampUs, float value) {
+                assertEquals(lastSequence < 0 ? 12 : lastSequence + 1, sequence);
+                assertEquals(sequence, timestampUs);
+                assertEquals(sequence, value, 0);
+                lastSequence = sequence;
+                visited++;
+            }
+        });
+        assertEquals(8, count);
+        assertEquals(8, visited);
+        assertEquals(19, lastSequence);
+        assertEquals(0, buffer.forEach(0, 5, null));
+    }
+
+    @Test
+    public void clear_keepsSequence() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(8);
+        buffer.append(1, 1f);
+        buffer.append(2, 2f);
+        buffer.clear();
+
+        assertEquals(0, buffer.size());
+        assertFalse(buffer.isValid(1));
+        buffer.append(3, 3f);
+        assertEquals(1, buffer.size());
+        assertEquals(2, buffer.getFirstSequence());
+        assertEquals(3f, buffer.getValue(2), 0);
+    }
+
+    @Test
+    public void largeCapacity() {
+        TimeSeriesBuffer buffer = new TimeSeriesBuffer(1 << 21);
+        for (int i = 0; i < (1 << 22) + 3; i++) {
+            buffer.append(i, i);
+        }
+        assertEquals(1 << 21, buffer.size());
+        assertEquals((1 << 22) + 2L, buffer.getTimestamp(buffer.getEndSequence() - 1));
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2016 Motorola Mobility, LLC.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.motorola.samples.mdksensor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RawTransport unit test, runs the receive path on the development machine (host).
+ */
+public class TransportTest {
+    private static final int FRAMES = 10000;
+
+    /** Write DATA frames on one end, decode them from the other end */
+    private void transferFrames(RawTransport host, RawTransport device) throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+        FrameDecoder decoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                int value = (buffer[offset + 2] & 0xFF) | (buffer[offset + 3] & 0xFF) << 8;
+                assertEquals(received.getAndIncrement() & 0xFFFF, value);
+            }
+        });
+        TransportReader reader = new TransportReader("reader", host, decoder, 4096,
+                new TransportReader.Callback() {
+                    @Override
+                    public void onReaderStopped(TransportReader reader, IOException exception) {
+                        error[0] = exception;
+                        stopped.countDown();
+                    }
+                });
+        reader.start();
+
+        ByteBuffer[] batch = new ByteBuffer[1];
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] frame = {(byte) (Constants.TEMP_RAW_COMMAND_DATA
+                    | Constants.TEMP_RAW_COMMAND_RESP_MASK), (byte) Constants.CMD_DATA_SIZE,
+                    (byte) i, (byte) (i >> 8), 0x00, 0x00};
+            batch[0] = ByteBuffer.wrap(frame);
+            device.write(batch, 0, 1);
+        }
+        device.close();
+
+        assertTrue(stopped.await(10, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        assertEquals(FRAMES, received.get());
+        assertEquals(FRAMES * 6L, reader.getBytesRead());
+    }
+
+    @Test
+    public void loopback_transfersFrames() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair(256);
+        transferFrames(pair[0], pair[1]);
+    }
+
+    @Test
+    public void pipe_transfersFrames() throws Exception {
+        PipeTransport[] pair = PipeTransport.createPair();
+        transferFrames(pair[0], pair[1]);
+    }
+
+    @Test
+    public void pipe_closeWhileReading_endsWithoutError() throws Exception {
+        PipeTransport[] pair = PipeTransport.createPair();
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+        FrameDecoder decoder = new FrameDecoder(new FrameDecoder.Callback() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+            }
+        });
+        TransportReader reader = new TransportReader("reader", pair[0], decoder, 4096,
+                new TransportReader.Callback() {
+                    @Override
+                    public void onReaderStopped(TransportReader reader, IOException exception) {
+                        error[0] = exception;
+                        stopped.countDown();
+                    }
+                });
+        reader.start();
+
+        /** Let the reader block in read() before its own end is closed */
+        Thread.sleep(100);
+        pair[0].close();
+
+        assertTrue(stopped.await(10, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        pair[1].close();
+    }
+}